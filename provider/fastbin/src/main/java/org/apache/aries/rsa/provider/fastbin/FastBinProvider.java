@@ -82,6 +82,27 @@ public class FastBinProvider implements DistributionProvider {
      */
     public static final String TIMEOUT = "fastbin.timeout";
 
+    /**
+     * the timeout of async requests in milliseconds, after which their result fails; 0 disables it. Defaults to 1h
+     */
+    public static final String ASYNC_TIMEOUT = "fastbin.async.timeout";
+
+    /**
+     * the number of serial dispatch queues which the connections of the client and server are
+     * spread across, so that they are served in parallel. Defaults to the number of cores
+     */
+    public static final String DISPATCH_QUEUES = "fastbin.dispatch.queues";
+
+    /**
+     * the number of connections the client keeps open to each server when idle. Defaults to 1
+     */
+    public static final String POOL_MIN = "fastbin.pool.min";
+
+    /**
+     * the number of connections the client opens to each server at most while they are busy. Defaults to 8
+     */
+    public static final String POOL_MAX = "fastbin.pool.max";
+
 
     public static final int PROTOCOL_VERSION = 1;
     public static final String PROTOCOL_VERSION_PROPERTY = "fastbin.protocol.version";
@@ -89,7 +110,7 @@ public class FastBinProvider implements DistributionProvider {
 
     private ServerInvoker server;
     private ClientInvoker client;
-    private DispatchQueue queue;
+    private DispatchQueue[] queues;
     private ConcurrentHashMap<String, SerializationStrategy> serializationStrategies;
 
     private BundleContext bundleContext;
@@ -103,10 +124,17 @@ public class FastBinProvider implements DistributionProvider {
         config.putAll(dictionary);
 
         started.set(false);
-        this.queue = Dispatch.createQueue();
+        int queueCount = Integer.parseInt(config.getOrDefault(DISPATCH_QUEUES, System.getProperty(DISPATCH_QUEUES, String.valueOf(Runtime.getRuntime().availableProcessors()))).toString());
+        this.queues = new DispatchQueue[Math.max(1, queueCount)];
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = Dispatch.createQueue("fastbin-" + i);
+        }
         this.serializationStrategies = new ConcurrentHashMap<>();
         int port = Integer.parseInt(config.getOrDefault(PORT, System.getProperty(PORT,"4000")).toString());
         long timeout = Long.parseLong(config.getOrDefault(TIMEOUT, System.getProperty(TIMEOUT,String.valueOf(ClientInvokerImpl.DEFAULT_TIMEOUT))).toString());
+        long asyncTimeout = Long.parseLong(config.getOrDefault(ASYNC_TIMEOUT, System.getProperty(ASYNC_TIMEOUT, String.valueOf(ClientInvokerImpl.DEFAULT_ASYNC_TIMEOUT))).toString());
+        int poolMin = Integer.parseInt(config.getOrDefault(POOL_MIN, System.getProperty(POOL_MIN, String.valueOf(ClientInvokerImpl.DEFAULT_MIN_POOL_SIZE))).toString());
+        int poolMax = Integer.parseInt(config.getOrDefault(POOL_MAX, System.getProperty(POOL_MAX, String.valueOf(ClientInvokerImpl.DEFAULT_MAX_POOL_SIZE))).toString());
         String publicHost = (String)config.getOrDefault(SERVER_ADDRESS, System.getProperty(SERVER_ADDRESS, null));
         try {
             if(publicHost==null)
@@ -120,8 +148,10 @@ public class FastBinProvider implements DistributionProvider {
             {
                 uri += "?"+TcpTransportServer.BIND_ADDRESS_QUERY_PARAM+"="+bindAddress;
             }
-            server = new ServerInvokerImpl(uri, queue, serializationStrategies);
-            client = new ClientInvokerImpl(queue, timeout, serializationStrategies);
+            server = new ServerInvokerImpl(uri, queues, serializationStrategies);
+            ClientInvokerImpl clientInvoker = new ClientInvokerImpl(queues, timeout, poolMin, poolMax, serializationStrategies);
+            clientInvoker.setAsyncTimeout(asyncTimeout);
+            client = clientInvoker;
             client.start();
         } catch (Exception e) {
             LOG.error("Failed to start the tcp client",e);
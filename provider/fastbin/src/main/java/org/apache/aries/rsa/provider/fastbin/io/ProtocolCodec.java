@@ -92,4 +92,9 @@ public interface ProtocolCodec {
      */
     public long getWriteCounter();
 
+    /**
+     * @return The number of bytes accepted but not written yet.
+     */
+    int getWriteBacklog();
+
 }
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.fastbin.tcp;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.fusesource.hawtbuf.Buffer;
+import org.fusesource.hawtbuf.DataByteArrayOutputStream;
+
+/**
+ * A lock-free pool of byte arrays in power of two size classes from 256 bytes to 256 KB,
+ * which requests and responses are encoded into. The codec returns an array to the pool
+ * once it has written the {@link PooledBuffer} on it to the channel. Larger arrays are
+ * neither pooled nor kept.
+ */
+final class BufferPool {
+
+    static final BufferPool INSTANCE = new BufferPool();
+
+    private static final int MIN_SHIFT = 8;
+    private static final int MAX_SHIFT = 18;
+    private static final int SLOTS = 16;
+
+    private final AtomicReferenceArray<byte[]>[] classes;
+
+    @SuppressWarnings("unchecked")
+    BufferPool() {
+        classes = new AtomicReferenceArray[MAX_SHIFT - MIN_SHIFT + 1];
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = new AtomicReferenceArray<>(SLOTS);
+        }
+    }
+
+    /**
+     * Returns an array of at least the given size, which is a pooled one if there is any.
+     */
+    byte[] acquire(int size) {
+        int shift = size <= 1 << MIN_SHIFT ? MIN_SHIFT : 32 - Integer.numberOfLeadingZeros(size - 1);
+        if (shift > MAX_SHIFT) {
+            return new byte[size];
+        }
+        AtomicReferenceArray<byte[]> slots = classes[shift - MIN_SHIFT];
+        for (int i = 0; i < SLOTS; i++) {
+            byte[] buf = slots.get(i);
+            if (buf != null && slots.compareAndSet(i, buf, null)) {
+                return buf;
+            }
+        }
+        return new byte[1 << shift];
+    }
+
+    /**
+     * Returns an array to the pool, unless it is not of a size class or its class is full.
+     * The array must not be used anymore.
+     */
+    void release(byte[] buf) {
+        int length = buf.length;
+        if (Integer.bitCount(length) != 1 || length < 1 << MIN_SHIFT || length > 1 << MAX_SHIFT) {
+            return;
+        }
+        AtomicReferenceArray<byte[]> slots = classes[Integer.numberOfTrailingZeros(length) - MIN_SHIFT];
+        for (int i = 0; i < SLOTS; i++) {
+            if (slots.get(i) == null && slots.compareAndSet(i, null, buf)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * An output stream which writes into pooled arrays.
+     */
+    static class PooledOutputStream extends DataByteArrayOutputStream {
+        private final BufferPool pool;
+
+        PooledOutputStream(BufferPool pool, int size) {
+            super(pool.acquire(size));
+            this.pool = pool;
+        }
+
+        @Override
+        protected void resize(int newSize) {
+            byte[] next = pool.acquire(Math.max(buf.length << 1, newSize));
+            System.arraycopy(buf, 0, next, 0, buf.length);
+            pool.release(buf);
+            buf = next;
+        }
+
+        /**
+         * Returns the written data, whose array goes back to the pool once the buffer is sent.
+         */
+        @Override
+        public PooledBuffer toBuffer() {
+            return new PooledBuffer(pool, buf, pos);
+        }
+    }
+
+    /**
+     * A buffer whose array is released to its pool after it was written.
+     */
+    static class PooledBuffer extends Buffer {
+        private final BufferPool pool;
+
+        PooledBuffer(BufferPool pool, byte[] data, int length) {
+            super(data, 0, length);
+            this.pool = pool;
+        }
+
+        void release() {
+            pool.release(data);
+        }
+    }
+}
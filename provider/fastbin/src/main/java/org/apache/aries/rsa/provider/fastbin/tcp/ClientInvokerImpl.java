@@ -24,9 +24,10 @@ import java.lang.reflect.Method;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -52,6 +53,19 @@ public class ClientInvokerImpl implements ClientInvoker, Dispatched {
 
     public static final long DEFAULT_TIMEOUT = TimeUnit.SECONDS.toMillis(20);
 
+    public static final long DEFAULT_ASYNC_TIMEOUT = 0;
+
+    public static final int DEFAULT_MIN_POOL_SIZE = 1;
+    public static final int DEFAULT_MAX_POOL_SIZE = 8;
+
+    /**
+     * The time a connection above the minimum pool size stays idle before it is closed.
+     */
+    public static final long POOL_EVICTION_DELAY = TimeUnit.MINUTES.toMillis(1);
+
+    private static final long TIMER_TICK_MILLIS = 100;
+    private static final int TIMER_TICKS_PER_WHEEL = 512;
+
     protected static final Logger LOGGER = LoggerFactory.getLogger(ClientInvokerImpl.class);
 
     @SuppressWarnings("rawtypes")
@@ -69,11 +83,11 @@ public class ClientInvokerImpl implements ClientInvoker, Dispatched {
     }
 
     protected final AtomicLong correlationGenerator = new AtomicLong();
-    protected final DispatchQueue queue;
-    protected final Map<String, TransportPool> transports = new HashMap<>();
+    protected final Shard[] shards;
     protected final AtomicBoolean running = new AtomicBoolean(false);
-    protected final Map<Long, ResponseFuture> requests = new HashMap<>();
     protected final long timeout;
+    protected volatile long asyncTimeout = DEFAULT_ASYNC_TIMEOUT;
+    protected volatile TimerWheel timer;
     protected final Map<String, SerializationStrategy> serializationStrategies;
     protected final boolean isTracing;
 
@@ -82,14 +96,69 @@ public class ClientInvokerImpl implements ClientInvoker, Dispatched {
     }
 
     public ClientInvokerImpl(DispatchQueue queue, long timeout, Map<String, SerializationStrategy> serializationStrategies) {
-        this.queue = queue;
+        this(new DispatchQueue[] {queue}, timeout, serializationStrategies);
+    }
+
+    /**
+     * Creates a client which spreads its requests across the given serial queues.
+     * Each queue has its own transport pools, so the requests of different
+     * queues are sent and their responses are handled in parallel.
+     */
+    public ClientInvokerImpl(DispatchQueue[] queues, long timeout, Map<String, SerializationStrategy> serializationStrategies) {
+        this(queues, timeout, DEFAULT_MIN_POOL_SIZE, DEFAULT_MAX_POOL_SIZE, serializationStrategies);
+    }
+
+    /**
+     * Creates a client which keeps between the given minimum and maximum number of
+     * connections to each server, split across the queues. Only as many queues as
+     * the maximum number of connections are used, so that each has at least one,
+     * and each keeps at least one connection open unless the minimum is 0.
+     */
+    public ClientInvokerImpl(DispatchQueue[] queues, long timeout, int minPoolSize, int maxPoolSize, Map<String, SerializationStrategy> serializationStrategies) {
+        this.shards = new Shard[Math.max(1, Math.min(queues.length, maxPoolSize))];
+        for (int i = 0; i < shards.length; i++) {
+            int min = minPoolSize > 0 ? Math.max(1, split(minPoolSize, i)) : 0;
+            int max = Math.max(1, split(maxPoolSize, i));
+            shards[i] = new Shard(queues[i], Math.min(min, max), max);
+        }
         this.timeout = timeout;
         this.serializationStrategies = serializationStrategies;
         this.isTracing = LOGGER.isTraceEnabled();
     }
 
+    /**
+     * Returns the share of the given total of the shard with the given index.
+     */
+    private int split(int total, int shard) {
+        return total / shards.length + (shard < total % shards.length ? 1 : 0);
+    }
+
+    /**
+     * Sets the time after which async requests without a response are failed; 0 never fails them.
+     */
+    public void setAsyncTimeout(long asyncTimeout) {
+        this.asyncTimeout = asyncTimeout;
+    }
+
     public DispatchQueue queue() {
-        return queue;
+        return shards[0].queue;
+    }
+
+    /**
+     * Returns the shard of a request, whose queue registers it and handles its response.
+     */
+    protected Shard shard(long correlation) {
+        return shards[(int)(correlation % shards.length)];
+    }
+
+    /**
+     * Returns a new correlation id of a request of the calling thread. Each thread is pinned
+     * to a shard, which the id encodes, so that the requests of a sequential caller are
+     * sent on the same queue and transport pool.
+     */
+    protected long nextCorrelation() {
+        int shard = (int)(Thread.currentThread().getId() % shards.length);
+        return correlationGenerator.incrementAndGet() * shards.length + shard;
     }
 
     public void start() throws Exception {
@@ -97,6 +166,9 @@ public class ClientInvokerImpl implements ClientInvoker, Dispatched {
     }
 
     public void start(Runnable onComplete) throws Exception {
+        if (timer == null) {
+            timer = new TimerWheel("fastbin-client-timer", TIMER_TICK_MILLIS, TIMER_TICKS_PER_WHEEL);
+        }
         running.set(true);
         if (onComplete != null) {
             onComplete.run();
@@ -109,23 +181,24 @@ public class ClientInvokerImpl implements ClientInvoker, Dispatched {
 
     public void stop(final Runnable onComplete) {
         if (running.compareAndSet(true, false)) {
-            queue().execute(new Runnable() {
+            TimerWheel timer = this.timer;
+            if (timer != null) {
+                timer.stop();
+                this.timer = null;
+            }
+            final AtomicInteger latch = new AtomicInteger(shards.length);
+            final Runnable countDown = new Runnable() {
                 public void run() {
-                    final AtomicInteger latch = new AtomicInteger(transports.size());
-                    final Runnable countDown = new Runnable() {
-                        public void run() {
-                            if (latch.decrementAndGet() == 0) {
-                                if (onComplete != null) {
-                                    onComplete.run();
-                                }
-                            }
+                    if (latch.decrementAndGet() == 0) {
+                        if (onComplete != null) {
+                            onComplete.run();
                         }
-                    };
-                    for (TransportPool pool : transports.values()) {
-                        pool.stop(countDown);
                     }
                 }
-            });
+            };
+            for (Shard shard : shards) {
+                shard.stop(countDown);
+            }
         } else {
             if (onComplete != null) {
                 onComplete.run();
@@ -143,9 +216,10 @@ public class ClientInvokerImpl implements ClientInvoker, Dispatched {
             bais.readInt();
             long correlation = bais.readVarLong();
             pool.onDone(correlation);
-            ResponseFuture response = requests.remove(correlation);
-            if( response!=null ) {
-                response.set(bais);
+            PendingRequest request = shard(correlation).requests.remove(correlation);
+            if( request!=null ) {
+                request.cancelTimeout();
+                request.future.set(bais);
             }
         } catch (Exception e) {
             LOGGER.info("Error while reading response", e);
@@ -153,63 +227,103 @@ public class ClientInvokerImpl implements ClientInvoker, Dispatched {
     }
 
     protected void onFailure(Object id, Throwable throwable) {
-        ResponseFuture response = requests.remove(id);
-        if( response!=null ) {
-            response.fail(throwable);
+        PendingRequest request = shard((Long)id).requests.remove(id);
+        if( request!=null ) {
+            request.cancelTimeout();
+            request.future.fail(throwable);
+        }
+    }
+
+    /**
+     * Fails a request which got no response in time, and forgets it
+     * so that neither the correlation table nor its transport keep it.
+     */
+    protected void onTimeout(final long correlation, final long timeout) {
+        final Shard shard = shard(correlation);
+        final PendingRequest request = shard.requests.remove(correlation);
+        if (request == null) {
+            return;
         }
+        request.future.fail(new TimeoutException("No response within " + timeout + " ms"));
+        shard.queue.execute(new Runnable() {
+            public void run() {
+                TransportPool pool = shard.transports.get(request.address);
+                if (pool != null) {
+                    pool.onDone(correlation);
+                }
+            }
+        });
     }
 
-    static final WeakHashMap<Method, MethodData> method_cache = new WeakHashMap<>();
+    /**
+     * The metadata of the methods declared by each interface, computed once per class
+     * so that calls look it up without locking.
+     */
+    private final ClassValue<Map<Method, MethodData>> interfaceMethods = new ClassValue<Map<Method, MethodData>>() {
+        @Override
+        protected Map<Method, MethodData> computeValue(Class<?> type) {
+            Map<Method, MethodData> rc = new HashMap<>();
+            for (Method method : type.getDeclaredMethods()) {
+                rc.put(method, createMethodData(method));
+            }
+            return rc;
+        }
+    };
 
     static class MethodData {
-        private final SerializationStrategy serializationStrategy;
+        private final String serialization;
+        private volatile SerializationStrategy serializationStrategy;
         final Buffer signature;
         final InvocationStrategy invocationStrategy;
+        int lastRequestSize = 250;
 
-        MethodData(InvocationStrategy invocationStrategy, SerializationStrategy serializationStrategy, Buffer signature) {
+        MethodData(InvocationStrategy invocationStrategy, String serialization, SerializationStrategy serializationStrategy, Buffer signature) {
             this.invocationStrategy = invocationStrategy;
+            this.serialization = serialization;
             this.serializationStrategy = serializationStrategy;
             this.signature = signature;
         }
     }
 
-    private MethodData getMethodData(Method method) throws IOException {
-        MethodData rc;
-        synchronized (method_cache) {
-            rc = method_cache.get(method);
-        }
-        if( rc==null ) {
-            StringBuilder sb = new StringBuilder();
-            sb.append(method.getName());
-            sb.append(",");
-            Class<?>[] types = method.getParameterTypes();
-            for(int i = 0; i < types.length; i++) {
-                if( i != 0 ) {
-                    sb.append(",");
-                }
-                sb.append(encodeClassName(types[i]));
-            }
-            Buffer signature = new UTF8Buffer(sb.toString()).buffer();
-
-            Serialization annotation = method.getAnnotation(Serialization.class);
-            SerializationStrategy serializationStrategy;
-            if( annotation!=null ) {
-                serializationStrategy = serializationStrategies.get(annotation.value());
-                if( serializationStrategy==null ) {
-                    throw new RuntimeException("Could not find the serialization strategy named: "+annotation.value());
-                }
-            } else {
-                serializationStrategy = ObjectSerializationStrategy.INSTANCE;
+    private MethodData getMethodData(Method method) {
+        MethodData rc = interfaceMethods.get(method.getDeclaringClass()).get(method);
+        if( rc.serializationStrategy==null ) {
+            // the strategy may have been registered since the metadata was computed
+            SerializationStrategy serializationStrategy = serializationStrategies.get(rc.serialization);
+            if( serializationStrategy==null ) {
+                throw new RuntimeException("Could not find the serialization strategy named: "+rc.serialization);
             }
+            rc.serializationStrategy = serializationStrategy;
+        }
+        return rc;
+    }
 
-            final InvocationStrategy strategy = InvocationType.forMethod(method);
-
-            rc = new MethodData(strategy, serializationStrategy, signature);
-            synchronized (method_cache) {
-                method_cache.put(method, rc);
+    private MethodData createMethodData(Method method) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(method.getName());
+        sb.append(",");
+        Class<?>[] types = method.getParameterTypes();
+        for(int i = 0; i < types.length; i++) {
+            if( i != 0 ) {
+                sb.append(",");
             }
+            sb.append(encodeClassName(types[i]));
         }
-        return rc;
+        Buffer signature = new UTF8Buffer(sb.toString()).buffer();
+
+        Serialization annotation = method.getAnnotation(Serialization.class);
+        String serialization = null;
+        SerializationStrategy serializationStrategy;
+        if( annotation!=null ) {
+            serialization = annotation.value();
+            serializationStrategy = serializationStrategies.get(serialization);
+        } else {
+            serializationStrategy = ObjectSerializationStrategy.INSTANCE;
+        }
+
+        final InvocationStrategy strategy = InvocationType.forMethod(method);
+
+        return new MethodData(strategy, serialization, serializationStrategy, signature);
     }
 
     String encodeClassName(Class<?> type) {
@@ -228,19 +342,19 @@ public class ClientInvokerImpl implements ClientInvoker, Dispatched {
             throw new IllegalStateException("DOSGi Client stopped");
         }
 
-        final long correlation = correlationGenerator.incrementAndGet();
+        final long correlation = nextCorrelation();
 
         // Encode the request before we try to pass it onto
         // IO layers so that #1 we can report encoding error back to the caller
         // and #2 reduce CPU load done in the execution queue since it's
         // serially executed.
 
-        DataByteArrayOutputStream baos = new DataByteArrayOutputStream((int) (handler.lastRequestSize * 1.10));
+        MethodData methodData = getMethodData(method);
+
+        DataByteArrayOutputStream baos = new BufferPool.PooledOutputStream(BufferPool.INSTANCE, (int) (methodData.lastRequestSize * 1.10));
         baos.writeInt(0); // we don't know the size yet...
         baos.writeVarLong(correlation);
         writeBuffer(baos, service);
-
-        MethodData methodData = getMethodData(method);
         writeBuffer(baos, methodData.signature);
 
         final ResponseFuture future = methodData.invocationStrategy.request(methodData.serializationStrategy.forProtocolVersion(handler.protocolVersion), classLoader, method, args, baos, handler.protocolVersion);
@@ -252,22 +366,34 @@ public class ClientInvokerImpl implements ClientInvoker, Dispatched {
         BufferEditor editor = command.buffer().bigEndianEditor();
         final int commandSize = command.length;
         editor.writeInt(commandSize);
-        handler.lastRequestSize = command.length;
-
-        queue().execute(new Runnable() {
+        methodData.lastRequestSize = command.length;
+
+        final Shard shard = shard(correlation);
+        PendingRequest request = new PendingRequest(future, address);
+        shard.requests.put(correlation, request);
+        TimerWheel timer = this.timer;
+        // async requests may take much longer, so they are only timed out if configured
+        final long requestTimeout = methodData.invocationStrategy instanceof BlockingInvocationStrategy ? timeout : asyncTimeout;
+        if (timer != null && requestTimeout > 0) {
+            request.timeout = timer.schedule(new Runnable() {
+                public void run() {
+                    onTimeout(correlation, requestTimeout);
+                }
+            }, requestTimeout, TimeUnit.MILLISECONDS);
+        }
+        shard.queue.execute(new Runnable() {
             public void run() {
                 try {
-                    TransportPool pool = transports.get(address);
+                    TransportPool pool = shard.transports.get(address);
                     if (pool == null) {
-                        pool = new InvokerTransportPool(address, queue());
-                        transports.put(address, pool);
+                        pool = new InvokerTransportPool(address, shard.queue, shard.minPoolSize, shard.maxPoolSize);
+                        shard.transports.put(address, pool);
                         pool.start();
                     }
-                    requests.put(correlation, future);
                     pool.offer(command, correlation);
                 } catch (Exception e) {
                     LOGGER.info("Error while sending request", e);
-                    future.fail(e);
+                    onFailure(correlation, e);
                 }
             }
         });
@@ -307,7 +433,6 @@ public class ClientInvokerImpl implements ClientInvoker, Dispatched {
         final String address;
         final UTF8Buffer service;
         final ClassLoader classLoader;
-        int lastRequestSize = 250;
 
         public ProxyInvocationHandler(String address, String service, ClassLoader classLoader, int protocolVersion) {
             this.address = address;
@@ -354,16 +479,83 @@ public class ClientInvokerImpl implements ClientInvoker, Dispatched {
 
     }
 
+    /**
+     * A request waiting for its response, and its timeout.
+     */
+    protected static class PendingRequest {
+        final ResponseFuture future;
+        final String address;
+        volatile TimerWheel.Timeout timeout;
+
+        PendingRequest(ResponseFuture future, String address) {
+            this.future = future;
+            this.address = address;
+        }
+
+        void cancelTimeout() {
+            TimerWheel.Timeout t = timeout;
+            if (t != null) {
+                t.cancel();
+            }
+        }
+    }
+
+    /**
+     * A serial queue together with the transport pools which are only accessed on it,
+     * and the pending requests they send. The pools of a shard only send the requests of that shard.
+     */
+    protected static class Shard {
+        final DispatchQueue queue;
+        final int minPoolSize;
+        final int maxPoolSize;
+        final Map<String, TransportPool> transports = new HashMap<>();
+        final Map<Long, PendingRequest> requests = new ConcurrentHashMap<>();
+
+        Shard(DispatchQueue queue, int minPoolSize, int maxPoolSize) {
+            this.queue = queue;
+            this.minPoolSize = minPoolSize;
+            this.maxPoolSize = maxPoolSize;
+        }
+
+        void stop(final Runnable onComplete) {
+            queue.execute(new Runnable() {
+                public void run() {
+                    if (transports.isEmpty()) {
+                        onComplete.run();
+                        return;
+                    }
+                    final AtomicInteger latch = new AtomicInteger(transports.size());
+                    final Runnable countDown = new Runnable() {
+                        public void run() {
+                            if (latch.decrementAndGet() == 0) {
+                                onComplete.run();
+                            }
+                        }
+                    };
+                    for (TransportPool pool : transports.values()) {
+                        pool.stop(countDown);
+                    }
+                }
+            });
+        }
+    }
+
     protected class InvokerTransportPool extends TransportPool {
 
         public InvokerTransportPool(String uri, DispatchQueue queue) {
+            this(uri, queue, TransportPool.DEFAULT_POOL_SIZE);
+        }
+
+        public InvokerTransportPool(String uri, DispatchQueue queue, int poolSize) {
+            this(uri, queue, poolSize, poolSize);
+        }
+
+        public InvokerTransportPool(String uri, DispatchQueue queue, int minPoolSize, int maxPoolSize) {
             /*
-             * the evict time needs to be 0. Otherwise, the client will
-             * evict transport objects which breaks the connection for
-             * long-running async calls.
-             * Since there is limit of 2 transports per uri it shouldn't be that many objects
+             * only transports without in-flight requests are evicted, so that
+             * the connections of long-running async calls are not broken.
              */
-            super(uri, queue, TransportPool.DEFAULT_POOL_SIZE, 0);
+            super(uri, queue, minPoolSize, maxPoolSize, POOL_EVICTION_DELAY);
         }
 
         @Override
@@ -385,6 +577,11 @@ public class ClientInvokerImpl implements ClientInvoker, Dispatched {
         protected void onFailure(Object id, Throwable throwable) {
             ClientInvokerImpl.this.onFailure(id, throwable);
         }
+
+        @Override
+        protected boolean isCancelled(Object id) {
+            return !shard((Long)id).requests.containsKey(id);
+        }
     }
 
 }
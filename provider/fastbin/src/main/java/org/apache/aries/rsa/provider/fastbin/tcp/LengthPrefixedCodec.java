@@ -26,7 +26,7 @@ import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.WritableByteChannel;
-import java.util.LinkedList;
+import java.util.ArrayDeque;
 import java.util.Queue;
 
 import org.apache.aries.rsa.provider.fastbin.io.ProtocolCodec;
@@ -40,7 +40,9 @@ public class LengthPrefixedCodec implements ProtocolCodec {
     final int write_buffer_size = 1024 * 64;
     long write_counter = 0L;
     WritableByteChannel write_channel;
-    final Queue<ByteBuffer> next_write_buffers = new LinkedList<>();
+    final Queue<ByteBuffer> next_write_buffers = new ArrayDeque<>();
+    // the buffers of next_write_buffers, released to their pool once written
+    final Queue<Buffer> next_write_sources = new ArrayDeque<>();
     int next_write_size = 0;
 
     public boolean full() {
@@ -80,6 +82,7 @@ public class LengthPrefixedCodec implements ProtocolCodec {
             Buffer buffer = (Buffer) value;
             next_write_size += buffer.length;
             next_write_buffers.add(buffer.toByteBuffer());
+            next_write_sources.add(buffer);
             return wasEmpty ? BufferState.WAS_EMPTY : BufferState.NOT_EMPTY;
         }
     }
@@ -90,6 +93,10 @@ public class LengthPrefixedCodec implements ProtocolCodec {
             final ByteBuffer nextBuffer = next_write_buffers.peek();
             if (nextBuffer.remaining() < 1) {
                 next_write_buffers.remove();
+                Buffer source = next_write_sources.remove();
+                if (source instanceof BufferPool.PooledBuffer) {
+                    ((BufferPool.PooledBuffer) source).release();
+                }
                 continue;
             }
             int bytesWritten = write_channel.write(nextBuffer);
@@ -113,10 +120,16 @@ public class LengthPrefixedCodec implements ProtocolCodec {
         return write_counter;
     }
 
+    public int getWriteBacklog() {
+        return next_write_size;
+    }
+
     long read_counter = 0L;
     int read_buffer_size = 1024 * 64;
     ReadableByteChannel read_channel = null;
-    ByteBuffer read_buffer = ByteBuffer.allocate(4);
+    // reused for the size field of each frame
+    final ByteBuffer read_header = ByteBuffer.allocate(4);
+    ByteBuffer read_buffer = read_header;
 
     public void setReadableByteChannel(ReadableByteChannel channel) {
         read_channel = channel;
@@ -155,8 +168,8 @@ public class LengthPrefixedCodec implements ProtocolCodec {
                     }
                     if( size == 4 ) {
                         // weird... empty frame... guess it could happen.
-                        Buffer rc = new Buffer(read_buffer);
-                        read_buffer = ByteBuffer.allocate(4);
+                        Buffer rc = new Buffer(read_buffer).deepCopy();
+                        read_header.clear();
                         return rc;
                     } else {
                         // Resize to the right size... this resumes the reads
@@ -167,7 +180,8 @@ public class LengthPrefixedCodec implements ProtocolCodec {
                 } else {
                     // finish loading the rest of the buffer
                     Buffer rc = new Buffer(read_buffer);
-                    read_buffer = ByteBuffer.allocate(4);
+                    read_header.clear();
+                    read_buffer = read_header;
                     return rc;
                 }
             }
@@ -25,9 +25,11 @@ import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.aries.rsa.provider.fastbin.FastBinProvider;
 import org.apache.aries.rsa.provider.fastbin.api.Dispatched;
@@ -69,9 +71,11 @@ public class ServerInvokerImpl implements ServerInvoker, Dispatched {
 
     protected final ExecutorService blockingExecutor = Executors.newFixedThreadPool(8);
     protected final DispatchQueue queue;
+    protected final DispatchQueue[] queues;
+    private final AtomicInteger nextQueue = new AtomicInteger();
     private final Map<String, SerializationStrategy> serializationStrategies;
     protected final TransportServer server;
-    protected final Map<UTF8Buffer, ServiceFactoryHolder> holders = new HashMap<>();
+    protected final Map<UTF8Buffer, ServiceFactoryHolder> holders = new ConcurrentHashMap<>();
     private StreamProviderImpl streamProvider;
 
     static class MethodData {
@@ -79,6 +83,7 @@ public class ServerInvokerImpl implements ServerInvoker, Dispatched {
         private final SerializationStrategy serializationStrategy;
         final InvocationStrategy invocationStrategy;
         final Method method;
+        int lastResponseSize = 250;
 
         MethodData(InvocationStrategy invocationStrategy, SerializationStrategy serializationStrategy, Method method) {
             this.invocationStrategy = invocationStrategy;
@@ -92,7 +97,7 @@ public class ServerInvokerImpl implements ServerInvoker, Dispatched {
         private final ServiceFactory factory;
         private final ClassLoader loader;
         private final Class clazz;
-        private HashMap<Buffer, MethodData> method_cache = new HashMap<>();
+        private Map<Buffer, MethodData> method_cache = new ConcurrentHashMap<>();
 
         public ServiceFactoryHolder(ServiceFactory factory, ClassLoader loader) {
             this.factory = factory;
@@ -148,7 +153,16 @@ public class ServerInvokerImpl implements ServerInvoker, Dispatched {
     }
 
     public ServerInvokerImpl(String address, DispatchQueue queue, Map<String, SerializationStrategy> serializationStrategies) throws Exception {
-        this.queue = queue;
+        this(address, new DispatchQueue[] {queue}, serializationStrategies);
+    }
+
+    /**
+     * Creates a server which accepts connections on the first of the given serial queues
+     * and spreads the accepted connections across all of them.
+     */
+    public ServerInvokerImpl(String address, DispatchQueue[] queues, Map<String, SerializationStrategy> serializationStrategies) throws Exception {
+        this.queue = queues[0];
+        this.queues = queues;
         this.serializationStrategies = serializationStrategies;
         this.server = new TcpTransportFactory().bind(address);
         this.server.setDispatchQueue(queue);
@@ -173,21 +187,14 @@ public class ServerInvokerImpl implements ServerInvoker, Dispatched {
     }
 
     public void registerService(final String id, final ServiceFactory service, final ClassLoader classLoader) {
-        queue().execute(new Runnable() {
-            public void run() {
-                LOGGER.debug("Registering service "+id);
-                holders.put(new UTF8Buffer(id), new ServiceFactoryHolder(service, classLoader));
-            }
-        });
+        // the holders are read by the connections on all queues
+        LOGGER.debug("Registering service "+id);
+        holders.put(new UTF8Buffer(id), new ServiceFactoryHolder(service, classLoader));
     }
 
     public void unregisterService(final String id) {
-        queue().execute(new Runnable() {
-            public void run() {
-                LOGGER.debug("Deregistering service "+id);
-                holders.remove(new UTF8Buffer(id));
-            }
-        });
+        LOGGER.debug("Deregistering service "+id);
+        holders.remove(new UTF8Buffer(id));
     }
 
     public void start() throws Exception {
@@ -286,7 +293,7 @@ public class ServerInvokerImpl implements ServerInvoker, Dispatched {
 
         public void onAccept(TransportServer transportServer, TcpTransport transport) {
             transport.setProtocolCodec(new LengthPrefixedCodec());
-            transport.setDispatchQueue(queue());
+            transport.setDispatchQueue(queues[(nextQueue.getAndIncrement() & Integer.MAX_VALUE) % queues.length]);
             transport.setTransportListener(new InvokerTransportListener());
             transport.start();
         }
@@ -342,7 +349,7 @@ public class ServerInvokerImpl implements ServerInvoker, Dispatched {
 
         public void run() {
 
-            final DataByteArrayOutputStream baos = new DataByteArrayOutputStream();
+            final DataByteArrayOutputStream baos = new BufferPool.PooledOutputStream(BufferPool.INSTANCE, (int) (methodData.lastResponseSize * 1.10));
             try {
                 baos.writeInt(0); // make space for the size field.
                 baos.writeVarLong(correlation);
@@ -364,8 +371,9 @@ public class ServerInvokerImpl implements ServerInvoker, Dispatched {
                     // Update the size field.
                     BufferEditor editor = command.buffer().bigEndianEditor();
                     editor.writeInt(command.length);
+                    methodData.lastResponseSize = command.length;
 
-                    queue().execute(new Runnable() {
+                    transport.queue().execute(new Runnable() {
                         public void run() {
                             transport.offer(command);
                         }
@@ -42,6 +42,10 @@ public abstract class TransportPool implements Service {
 
     public static final int DEFAULT_POOL_SIZE = 2;
 
+    public static final int DEFAULT_GROW_THRESHOLD = 32;
+
+    public static final int DEFAULT_BACKLOG_THRESHOLD = 64 * 1024;
+
     public static final long DEFAULT_EVICTION_DELAY = TimeUnit.MINUTES.toMillis(5);
 
     protected final String uri;
@@ -50,7 +54,23 @@ public abstract class TransportPool implements Service {
     protected final Map<Transport, TransportState> transports = new HashMap<>();
     protected AtomicBoolean running = new AtomicBoolean(false);
 
+    /**
+     * The maximum number of transports.
+     */
     protected int poolSize;
+    /**
+     * The number of transports which are kept when idle.
+     */
+    protected int minPoolSize;
+    /**
+     * The number of in-flight requests on the least loaded transport from which
+     * on another transport is started.
+     */
+    protected int growThreshold = DEFAULT_GROW_THRESHOLD;
+    /**
+     * The number of bytes waiting to be written from which on a transport is backed up.
+     */
+    protected int backlogThreshold = DEFAULT_BACKLOG_THRESHOLD;
     protected long evictionDelay;
 
     public TransportPool(String uri, DispatchQueue queue) {
@@ -58,9 +78,19 @@ public abstract class TransportPool implements Service {
     }
 
     public TransportPool(String uri, DispatchQueue queue, int poolSize, long evictionDelay) {
+        this(uri, queue, 0, poolSize, evictionDelay);
+    }
+
+    /**
+     * Creates a pool which grows up to the maximum size while its transports are busy, and evicts
+     * transports which stayed idle for the eviction delay until the minimum size is left.
+     * An eviction delay of 0 never evicts transports.
+     */
+    public TransportPool(String uri, DispatchQueue queue, int minPoolSize, int poolSize, long evictionDelay) {
         this.uri = uri;
         this.queue = queue;
-        this.poolSize = poolSize;
+        this.minPoolSize = minPoolSize;
+        this.poolSize = Math.max(minPoolSize, poolSize);
         this.evictionDelay = evictionDelay;
     }
 
@@ -72,6 +102,14 @@ public abstract class TransportPool implements Service {
 
     protected abstract void onFailure(Object id, Throwable throwable);
 
+    /**
+     * Returns whether nobody waits for the response to a pending request anymore,
+     * so that it is not sent.
+     */
+    protected boolean isCancelled(Object id) {
+        return false;
+    }
+
     protected void onDone(Object id) {
         for (TransportState state : transports.values()) {
             if (state.inflight.remove(id)) {
@@ -104,20 +142,43 @@ public abstract class TransportPool implements Service {
         return transport.offer(command);
     }
 
+    /**
+     * Returns the transport with the fewest in-flight requests which can take another one,
+     * preferring those whose writes are not backed up, or null if all of them are full or
+     * still connecting. Starts another transport if there is none left, or if even the chosen
+     * one is backed up or reached the grow threshold, and none is connecting.
+     */
     protected Transport getIdleTransport() {
+        Transport idle = null;
+        int inflight = Integer.MAX_VALUE;
+        boolean backedUp = true;
+        boolean connecting = false;
         for (Map.Entry<Transport, TransportState> entry : transports.entrySet()) {
-            if (entry.getValue().time > 0) {
-                return entry.getKey();
+            TransportState state = entry.getValue();
+            if (!state.connected) {
+                connecting = true;
+            } else if (state.time > 0) {
+                boolean b = isBackedUp(entry.getKey());
+                if ((backedUp && !b) || (backedUp == b && state.inflight.size() < inflight)) {
+                    idle = entry.getKey();
+                    inflight = state.inflight.size();
+                    backedUp = b;
+                }
             }
         }
-        if (transports.size() < poolSize) {
+        if ((idle == null || backedUp || inflight >= growThreshold) && !connecting && transports.size() < poolSize) {
             try {
                 startNewTransport();
             } catch (Exception e) {
                 LOGGER.info("Unable to start new transport for uri {}", this.uri, e);
             }
         }
-        return null;
+        return idle;
+    }
+
+    protected boolean isBackedUp(Transport transport) {
+        ProtocolCodec codec = transport.getProtocolCodec();
+        return codec != null && codec.getWriteBacklog() >= backlogThreshold;
     }
 
     public void start() throws Exception {
@@ -187,6 +248,7 @@ public abstract class TransportPool implements Service {
 
     protected static class TransportState {
         long time;
+        boolean connected;
         final Set<Object> inflight;
 
         public TransportState() {
@@ -204,6 +266,9 @@ public abstract class TransportPool implements Service {
         public void onRefill(final Transport transport) {
             while (pending.size() > 0 && !transport.full()) {
                 Pair pair = pending.removeFirst();
+                if (isCancelled(pair.id)) {
+                    continue;
+                }
                 boolean accepted = doOffer(transport, pair.command, pair.id);
                 assert accepted: "Should have been accepted since the transport was not full";
             }
@@ -217,7 +282,8 @@ public abstract class TransportPool implements Service {
                     queue.executeAfter(evictionDelay, TimeUnit.MILLISECONDS, new Runnable() {
                         public void run() {
                             TransportState state = transports.get(transport);
-                            if (state != null && state.time == time) {
+                            if (state != null && state.time == time && state.inflight.isEmpty()
+                                    && transports.size() > minPoolSize) {
                                 transports.remove(transport);
                                 transport.stop();
                             }
@@ -248,6 +314,10 @@ public abstract class TransportPool implements Service {
         }
 
         public void onTransportConnected(Transport transport) {
+            TransportState state = transports.get(transport);
+            if (state != null) {
+                state.connected = true;
+            }
             transport.resumeRead();
             onRefill(transport);
         }
@@ -111,6 +111,55 @@ public class InvocationTest {
         }
     }
 
+    @Test(timeout=30*1000)
+    public void testInvokeSharded() throws Exception {
+
+        DispatchQueue[] queues = new DispatchQueue[4];
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = Dispatch.createQueue("shard-" + i);
+        }
+        HashMap<String, SerializationStrategy> map = new HashMap<>();
+        map.put("protobuf", new ProtobufSerializationStrategy());
+
+        ServerInvokerImpl server = new ServerInvokerImpl("tcp://localhost:0", queues, map);
+        server.start();
+
+        ClientInvokerImpl client = new ClientInvokerImpl(queues, ClientInvokerImpl.DEFAULT_TIMEOUT, map);
+        client.start();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            server.registerService("service-id", new ServerInvoker.ServiceFactory() {
+                public Object get() {
+                    return new HelloImpl();
+                }
+                public void unget() {
+                }
+            }, HelloImpl.class.getClassLoader());
+
+            InvocationHandler handler = client.getProxy(server.getConnectAddress(), "service-id", HelloImpl.class.getClassLoader(),FastBinProvider.PROTOCOL_VERSION);
+            final Hello hello = (Hello) Proxy.newProxyInstance(HelloImpl.class.getClassLoader(), new Class[] { Hello.class }, handler);
+
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                final String name = "Fabric" + i;
+                results.add(executor.submit(() -> hello.hello(name)));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals("Hello Fabric" + i + "!", results.get(i).get(10, TimeUnit.SECONDS));
+            }
+
+            AsyncCallbackFuture<StringValue.Getter> future = new AsyncCallbackFuture<>();
+            hello.protobuf(stringValue("Hiram Async"), future);
+            assertEquals("Hello Hiram Async!", future.get(2, TimeUnit.SECONDS).getValue());
+        }
+        finally {
+            executor.shutdown();
+            server.stop();
+            client.stop();
+        }
+    }
+
     /**
      * tests that requests to an unknown ID throw an exception instead of deadlocking the request
      * @throws Exception
@@ -0,0 +1,70 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.fastbin.tcp;
+
+import org.apache.aries.rsa.provider.fastbin.tcp.BufferPool.PooledBuffer;
+import org.apache.aries.rsa.provider.fastbin.tcp.BufferPool.PooledOutputStream;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BufferPoolTest {
+
+    @Test
+    public void testSizeClasses() {
+        BufferPool pool = new BufferPool();
+        assertEquals(256, pool.acquire(1).length);
+        assertEquals(1024, pool.acquire(1000).length);
+        assertEquals(1024, pool.acquire(1024).length);
+        // too large to be pooled
+        assertEquals(300000, pool.acquire(300000).length);
+    }
+
+    @Test
+    public void testReuse() {
+        BufferPool pool = new BufferPool();
+        byte[] buf = pool.acquire(1000);
+        pool.release(buf);
+        assertSame(buf, pool.acquire(600));
+        assertNotSame(buf, pool.acquire(600));
+        // arrays which are not of a size class are dropped
+        byte[] odd = new byte[1000];
+        pool.release(odd);
+        assertNotSame(odd, pool.acquire(1000));
+    }
+
+    @Test
+    public void testOutputStream() throws Exception {
+        BufferPool pool = new BufferPool();
+        PooledOutputStream out = new PooledOutputStream(pool, 256);
+        byte[] first = out.getData();
+        for (int i = 0; i < 1000; i++) {
+            out.writeInt(i);
+        }
+        // the outgrown arrays go back to the pool
+        assertSame(first, pool.acquire(256));
+
+        PooledBuffer buffer = out.toBuffer();
+        assertEquals(4000, buffer.length());
+        assertEquals(4096, buffer.data.length);
+        assertEquals(0, buffer.bigEndianEditor().readInt());
+        buffer.release();
+        assertSame(buffer.data, pool.acquire(4000));
+    }
+}
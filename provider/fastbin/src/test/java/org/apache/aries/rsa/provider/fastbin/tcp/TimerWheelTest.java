@@ -0,0 +1,200 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.fastbin.tcp;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.apache.aries.rsa.provider.fastbin.FastBinProvider;
+import org.apache.aries.rsa.provider.fastbin.api.SerializationStrategy;
+import org.apache.aries.rsa.provider.fastbin.io.ServerInvoker;
+import org.fusesource.hawtdispatch.Dispatch;
+import org.fusesource.hawtdispatch.DispatchQueue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.osgi.framework.ServiceException;
+
+import static org.junit.Assert.*;
+
+public class TimerWheelTest {
+
+    private TimerWheel timer;
+
+    @Before
+    public void setUp() {
+        timer = new TimerWheel("test-timer", 10, 8);
+    }
+
+    @After
+    public void tearDown() {
+        timer.stop();
+    }
+
+    @Test(timeout=5000)
+    public void testExpire() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(2);
+        long start = System.nanoTime();
+        timer.schedule(new Runnable() {
+            public void run() {
+                latch.countDown();
+            }
+        }, 50, TimeUnit.MILLISECONDS);
+        // spans more than one round of the wheel
+        timer.schedule(new Runnable() {
+            public void run() {
+                latch.countDown();
+            }
+        }, 250, TimeUnit.MILLISECONDS);
+        latch.await();
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(250));
+    }
+
+    @Test(timeout=5000)
+    public void testCancel() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        TimerWheel.Timeout timeout = timer.schedule(new Runnable() {
+            public void run() {
+                runs.incrementAndGet();
+            }
+        }, 50, TimeUnit.MILLISECONDS);
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        Thread.sleep(150);
+        assertEquals(0, runs.get());
+    }
+
+    @Test(timeout=10000)
+    public void testExpireRequest() throws Exception {
+        DispatchQueue queue = Dispatch.createQueue();
+        HashMap<String, SerializationStrategy> map = new HashMap<>();
+
+        ServerInvokerImpl server = new ServerInvokerImpl("tcp://localhost:0", queue, map);
+        server.start();
+
+        ClientInvokerImpl client = new ClientInvokerImpl(queue, 200, map);
+        client.setAsyncTimeout(200);
+        client.start();
+
+        try {
+            server.registerService("service-id", new ServerInvoker.ServiceFactory() {
+                public Object get() {
+                    return new SleepImpl();
+                }
+                public void unget() {
+                }
+            }, SleepImpl.class.getClassLoader());
+
+            InvocationHandler handler = client.getProxy(server.getConnectAddress(), "service-id", SleepImpl.class.getClassLoader(), FastBinProvider.PROTOCOL_VERSION);
+            Sleep sleep = (Sleep) Proxy.newProxyInstance(SleepImpl.class.getClassLoader(), new Class[] { Sleep.class }, handler);
+
+            assertEquals(0, sleep.sleep(0));
+            try {
+                sleep.sleep(2000);
+                fail("Expected a timeout");
+            } catch (ServiceException e) {
+                // expected
+            }
+            // the timer forgets the request within a tick of its timeout
+            Thread.sleep(300);
+            for (ClientInvokerImpl.Shard shard : client.shards) {
+                assertTrue(shard.requests.isEmpty());
+            }
+
+            Future<Long> result = sleep.sleepAsync(2000);
+            try {
+                result.get(1, TimeUnit.SECONDS);
+                fail("Expected a timeout");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof TimeoutException);
+            }
+            for (ClientInvokerImpl.Shard shard : client.shards) {
+                assertTrue(shard.requests.isEmpty());
+            }
+        } finally {
+            server.stop();
+            client.stop();
+        }
+    }
+
+    @Test(timeout=10000)
+    public void testAsyncRequestsAreNotTimedOutByDefault() throws Exception {
+        DispatchQueue queue = Dispatch.createQueue();
+        HashMap<String, SerializationStrategy> map = new HashMap<>();
+
+        ServerInvokerImpl server = new ServerInvokerImpl("tcp://localhost:0", queue, map);
+        server.start();
+
+        ClientInvokerImpl client = new ClientInvokerImpl(queue, 200, map);
+        client.start();
+
+        try {
+            server.registerService("service-id", new ServerInvoker.ServiceFactory() {
+                public Object get() {
+                    return new SleepImpl();
+                }
+                public void unget() {
+                }
+            }, SleepImpl.class.getClassLoader());
+
+            InvocationHandler handler = client.getProxy(server.getConnectAddress(), "service-id", SleepImpl.class.getClassLoader(), FastBinProvider.PROTOCOL_VERSION);
+            Sleep sleep = (Sleep) Proxy.newProxyInstance(SleepImpl.class.getClassLoader(), new Class[] { Sleep.class }, handler);
+
+            // longer than the timeout of sync requests
+            assertEquals(500L, sleep.sleepAsync(500).get(5, TimeUnit.SECONDS).longValue());
+        } finally {
+            server.stop();
+            client.stop();
+        }
+    }
+
+    public interface Sleep {
+        long sleep(long millis);
+
+        CompletableFuture<Long> sleepAsync(long millis);
+    }
+
+    public static class SleepImpl implements Sleep {
+        public long sleep(long millis) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return millis;
+        }
+
+        public CompletableFuture<Long> sleepAsync(final long millis) {
+            return CompletableFuture.supplyAsync(new Supplier<Long>() {
+                public Long get() {
+                    return sleep(millis);
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.fastbin.tcp;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.aries.rsa.provider.fastbin.FastBinProvider;
+import org.apache.aries.rsa.provider.fastbin.api.SerializationStrategy;
+import org.apache.aries.rsa.provider.fastbin.io.ServerInvoker;
+import org.apache.aries.rsa.provider.fastbin.tcp.TimerWheelTest.Sleep;
+import org.apache.aries.rsa.provider.fastbin.tcp.TimerWheelTest.SleepImpl;
+import org.fusesource.hawtdispatch.Dispatch;
+import org.fusesource.hawtdispatch.DispatchQueue;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TransportPoolTest {
+
+    @Test
+    public void testShardsSplitPoolSize() {
+        DispatchQueue[] queues = new DispatchQueue[16];
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = Dispatch.createQueue("shard-" + i);
+        }
+        ClientInvokerImpl client = new ClientInvokerImpl(queues, 10000, 1, 6, new HashMap<String, SerializationStrategy>());
+        assertEquals(6, client.shards.length);
+        int min = 0;
+        int max = 0;
+        for (ClientInvokerImpl.Shard shard : client.shards) {
+            assertEquals(1, shard.minPoolSize);
+            assertEquals(1, shard.maxPoolSize);
+            min += shard.minPoolSize;
+            max += shard.maxPoolSize;
+        }
+        assertEquals(6, min);
+        assertEquals(6, max);
+
+        client = new ClientInvokerImpl(Arrays.copyOf(queues, 3), 10000, 1, 8, new HashMap<String, SerializationStrategy>());
+        assertEquals(3, client.shards[0].maxPoolSize);
+        assertEquals(3, client.shards[1].maxPoolSize);
+        assertEquals(2, client.shards[2].maxPoolSize);
+    }
+
+    @Test(timeout=30*1000)
+    public void testGrowWhenBusy() throws Exception {
+        DispatchQueue queue = Dispatch.createQueue();
+        HashMap<String, SerializationStrategy> map = new HashMap<>();
+
+        ServerInvokerImpl server = new ServerInvokerImpl("tcp://localhost:0", queue, map);
+        server.start();
+
+        ClientInvokerImpl client = new ClientInvokerImpl(new DispatchQueue[] {queue}, 10000, 1, 3, map);
+        client.start();
+
+        ExecutorService executor = Executors.newFixedThreadPool(100);
+        try {
+            server.registerService("service-id", new ServerInvoker.ServiceFactory() {
+                public Object get() {
+                    return new SleepImpl();
+                }
+                public void unget() {
+                }
+            }, SleepImpl.class.getClassLoader());
+
+            InvocationHandler handler = client.getProxy(server.getConnectAddress(), "service-id", SleepImpl.class.getClassLoader(), FastBinProvider.PROTOCOL_VERSION);
+            final Sleep sleep = (Sleep) Proxy.newProxyInstance(SleepImpl.class.getClassLoader(), new Class[] { Sleep.class }, handler);
+
+            // a single caller is served by a single connection
+            assertEquals(0, sleep.sleep(0));
+            assertEquals(1, transportCount(client, server));
+
+            List<Future<Long>> results = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                results.add(executor.submit(new Callable<Long>() {
+                    public Long call() {
+                        return sleep.sleep(500);
+                    }
+                }));
+            }
+            for (Future<Long> result : results) {
+                assertEquals(500L, result.get(10, TimeUnit.SECONDS).longValue());
+            }
+            // grows one transport at a time, up to the maximum
+            int count = transportCount(client, server);
+            assertTrue(count > 1 && count <= 3);
+        } finally {
+            executor.shutdownNow();
+            server.stop();
+            client.stop();
+        }
+    }
+
+    @Test(timeout=30*1000)
+    public void testMoreQueuesThanConnections() throws Exception {
+        DispatchQueue[] queues = new DispatchQueue[16];
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = Dispatch.createQueue("shard-" + i);
+        }
+        HashMap<String, SerializationStrategy> map = new HashMap<>();
+
+        ServerInvokerImpl server = new ServerInvokerImpl("tcp://localhost:0", queues, map);
+        server.start();
+
+        ClientInvokerImpl client = new ClientInvokerImpl(queues, 10000, 1, 4, map);
+        client.start();
+
+        ExecutorService executor = Executors.newFixedThreadPool(50);
+        try {
+            server.registerService("service-id", new ServerInvoker.ServiceFactory() {
+                public Object get() {
+                    return new SleepImpl();
+                }
+                public void unget() {
+                }
+            }, SleepImpl.class.getClassLoader());
+
+            InvocationHandler handler = client.getProxy(server.getConnectAddress(), "service-id", SleepImpl.class.getClassLoader(), FastBinProvider.PROTOCOL_VERSION);
+            final Sleep sleep = (Sleep) Proxy.newProxyInstance(SleepImpl.class.getClassLoader(), new Class[] { Sleep.class }, handler);
+
+            // a sequential caller stays on the shard of its thread
+            for (int i = 0; i < 10; i++) {
+                assertEquals(0, sleep.sleep(0));
+            }
+            int count = 0;
+            for (ClientInvokerImpl.Shard shard : client.shards) {
+                count += transportCount(shard, server);
+            }
+            assertEquals(1, count);
+
+            List<Future<Long>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                results.add(executor.submit(new Callable<Long>() {
+                    public Long call() {
+                        return sleep.sleep(100);
+                    }
+                }));
+            }
+            for (Future<Long> result : results) {
+                assertEquals(100L, result.get(10, TimeUnit.SECONDS).longValue());
+            }
+            count = 0;
+            for (ClientInvokerImpl.Shard shard : client.shards) {
+                count += transportCount(shard, server);
+            }
+            assertEquals(4, count);
+        } finally {
+            executor.shutdownNow();
+            server.stop();
+            client.stop();
+        }
+    }
+
+    private static int transportCount(ClientInvokerImpl client, ServerInvokerImpl server) throws Exception {
+        return transportCount(client.shards[0], server);
+    }
+
+    private static int transportCount(final ClientInvokerImpl.Shard shard, final ServerInvokerImpl server) throws Exception {
+        final int[] count = new int[1];
+        final CountDownLatch latch = new CountDownLatch(1);
+        shard.queue.execute(new Runnable() {
+            public void run() {
+                TransportPool pool = shard.transports.get(server.getConnectAddress());
+                count[0] = pool == null ? 0 : pool.transports.size();
+                latch.countDown();
+            }
+        });
+        latch.await();
+        return count[0];
+    }
+}
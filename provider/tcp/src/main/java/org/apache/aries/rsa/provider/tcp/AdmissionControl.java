@@ -0,0 +1,247 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the number of concurrent invocations of an exported service
+ * and the number of requests waiting for one of them.
+ * <p>
+ * Requests beyond both limits are rejected right away, so that the server
+ * can reply that it is overloaded instead of queueing them without bounds.
+ * A limit of zero concurrent invocations means there are no limits at all.
+ */
+class AdmissionControl {
+    private final Logger log = LoggerFactory.getLogger(AdmissionControl.class);
+
+    private final int maxConcurrent;
+    private final int maxQueued;
+    private final Executor executor;
+    private final Deque<Queued> queue = new ArrayDeque<>();
+    private int active;
+    private int waiting; // blocked in acquire
+    private long rejected;
+
+    /**
+     * @param maxConcurrent the maximum number of concurrent invocations, or zero for no limits
+     * @param maxQueued the maximum number of requests waiting for an invocation slot
+     * @param executor the executor running the invocations
+     */
+    AdmissionControl(int maxConcurrent, int maxQueued, Executor executor) {
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueued = Math.max(0, maxQueued);
+        this.executor = executor;
+    }
+
+    /**
+     * Runs the task on the executor once an invocation slot is free.
+     * The task is passed a callback which frees the slot, so that it can be
+     * freed as soon as the invocation is complete, before its response is sent.
+     * Otherwise the slot is freed when the task returns.
+     *
+     * @param task the task invoking the service
+     * @return false if the task is rejected because the limits are reached
+     * @throws RejectedExecutionException if the executor rejects the task
+     */
+    boolean execute(Consumer<Runnable> task) {
+        return execute(task, () -> { });
+    }
+
+    /**
+     * Runs the task as above. If the task has to wait for a slot and the executor
+     * rejects it once the slot is free, e.g. because its threads are all busy or it
+     * was shut down, the slot is freed and the task is dropped after running onRejected.
+     *
+     * @param task the task invoking the service
+     * @param onRejected replies to the call of a queued task which the executor rejected
+     * @return false if the task is rejected because the limits are reached
+     * @throws RejectedExecutionException if the executor rejects the task
+     */
+    boolean execute(Consumer<Runnable> task, Runnable onRejected) {
+        if (maxConcurrent <= 0) {
+            try {
+                executor.execute(() -> task.accept(() -> { }));
+            } catch (RejectedExecutionException e) {
+                countRejected();
+                throw e;
+            }
+            return true;
+        }
+        synchronized (this) {
+            if (active >= maxConcurrent) {
+                if (queue.size() + waiting >= maxQueued) {
+                    rejected++;
+                    return false;
+                }
+                queue.add(new Queued(task, onRejected));
+                return true;
+            }
+            active++;
+        }
+        try {
+            executor.execute(() -> run(task));
+        } catch (RejectedExecutionException e) {
+            countRejected();
+            release();
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Waits for a free invocation slot in the calling thread, which must call
+     * {@link #release()} once the invocation is complete.
+     *
+     * @return false if the call is rejected because the limits are reached
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean acquire() throws InterruptedException {
+        if (maxConcurrent <= 0) {
+            return true;
+        }
+        synchronized (this) {
+            if (active < maxConcurrent) {
+                active++;
+                return true;
+            }
+            if (queue.size() + waiting >= maxQueued) {
+                rejected++;
+                return false;
+            }
+            waiting++;
+            try {
+                while (active >= maxConcurrent) {
+                    wait();
+                }
+                active++;
+                return true;
+            } finally {
+                waiting--;
+            }
+        }
+    }
+
+    /**
+     * Frees an invocation slot acquired by {@link #acquire()}.
+     */
+    void release() {
+        Queued next = releaseSlot();
+        while (next != null) {
+            Consumer<Runnable> task = next.task;
+            try {
+                executor.execute(() -> run(task));
+                return;
+            } catch (RejectedExecutionException e) {
+                rejected(next);
+                next = releaseSlot(); // the next queued task takes over the slot, if any
+            }
+        }
+    }
+
+    private void rejected(Queued queued) {
+        countRejected();
+        try {
+            queued.onRejected.run();
+        } catch (RuntimeException e) {
+            log.warn("Error rejecting service call", e);
+        }
+    }
+
+    /**
+     * Runs the task and then the queued ones, as long as there are any
+     * and the slot has not been freed by the task itself.
+     */
+    private void run(Consumer<Runnable> task) {
+        Consumer<Runnable> next = task;
+        while (next != null) {
+            AtomicBoolean released = new AtomicBoolean();
+            try {
+                next.accept(() -> {
+                    if (released.compareAndSet(false, true)) {
+                        release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                log.warn("Error processing service call", e);
+            }
+            Queued queued = released.compareAndSet(false, true) ? releaseSlot() : null;
+            next = queued != null ? queued.task : null;
+        }
+    }
+
+    /**
+     * Frees the slot of a completed invocation, or passes it on.
+     *
+     * @return a queued task which takes over the slot, or null
+     */
+    private synchronized Queued releaseSlot() {
+        if (maxConcurrent <= 0) {
+            return null;
+        }
+        if (waiting > 0) {
+            active--;
+            notify(); // blocked threads go first as they hold a thread already
+            return null;
+        }
+        Queued next = queue.poll();
+        if (next == null) {
+            active--;
+        }
+        return next;
+    }
+
+    synchronized int getActiveCount() {
+        return active;
+    }
+
+    synchronized int getQueuedCount() {
+        return queue.size() + waiting;
+    }
+
+    private synchronized void countRejected() {
+        rejected++;
+    }
+
+    /**
+     * Returns the number of calls rejected, either because the limits were reached
+     * or because the executor rejected them.
+     */
+    synchronized long getRejectedCount() {
+        return rejected;
+    }
+
+    private static final class Queued {
+        final Consumer<Runnable> task;
+        final Runnable onRejected;
+
+        Queued(Consumer<Runnable> task, Runnable onRejected) {
+            this.task = task;
+            this.onRejected = onRejected;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import java.io.Closeable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs the asynchronous calls of an imported endpoint.
+ * <p>
+ * The number of pending calls (running or queued) can be limited, in which case
+ * a call must be admitted by {@link #tryAcquire()} before it is started and
+ * {@link #release()}d once it is complete. Calls exceeding the limit are
+ * rejected and counted instead of queueing up without bounds.
+ */
+class AsyncExecutor implements Executor, Closeable {
+    private final ExecutorService delegate;
+    private final boolean owned;
+    private final Semaphore permits;
+    private final int maxPending;
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Creates an executor with its own pool of named threads.
+     *
+     * @param name the name prefix of the threads
+     * @param threads the number of threads
+     * @param queueSize the number of calls which may wait for a thread
+     */
+    AsyncExecutor(String name, int threads, int queueSize) {
+        this(createPool(name, threads), true, threads + queueSize);
+    }
+
+    /**
+     * Creates an executor running its calls on a shared executor.
+     *
+     * @param delegate the executor running the calls, which is not shut down by {@link #close()}
+     * @param maxPending the maximum number of pending calls, or zero for no limit
+     */
+    AsyncExecutor(ExecutorService delegate, int maxPending) {
+        this(delegate, false, maxPending);
+    }
+
+    private AsyncExecutor(ExecutorService delegate, boolean owned, int maxPending) {
+        this.delegate = delegate;
+        this.owned = owned;
+        this.maxPending = maxPending;
+        this.permits = maxPending > 0 ? new Semaphore(maxPending) : null;
+    }
+
+    private static ExecutorService createPool(String name, int threads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads,
+            60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), factory);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * Admits a new call if the limit of pending calls is not reached.
+     *
+     * @return true if the call may be started, false if it is rejected
+     */
+    boolean tryAcquire() {
+        if (permits == null || permits.tryAcquire()) {
+            return true;
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Releases the admission of a completed call.
+     */
+    void release() {
+        if (permits != null) {
+            permits.release();
+        }
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        delegate.execute(command);
+    }
+
+    int getMaxPending() {
+        return maxPending;
+    }
+
+    int getPendingCount() {
+        return permits == null ? 0 : maxPending - permits.availablePermits();
+    }
+
+    long getRejectedCount() {
+        return rejected.get();
+    }
+
+    @Override
+    public void close() {
+        if (owned) {
+            delegate.shutdown();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import java.io.Serializable;
+
+/**
+ * Replaces a byte array or ByteBuffer argument or result in a serialized call.
+ * Its bytes follow the serialized call as an attachment, see {@link Attachments}.
+ */
+final class AttachmentMarker implements Serializable {
+    private static final long serialVersionUID = -4630262453151956417L;
+
+    private final int length;
+    private final boolean buffer;
+
+    /**
+     * @param length the number of bytes of the attachment
+     * @param buffer whether it replaces a ByteBuffer, which is received as a direct ByteBuffer,
+     *        instead of a byte array
+     */
+    AttachmentMarker(int length, boolean buffer) {
+        this.length = length;
+        this.buffer = buffer;
+    }
+
+    int getLength() {
+        return length;
+    }
+
+    boolean isBuffer() {
+        return buffer;
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The attachments of a call, which carry its large byte array and all of its ByteBuffer
+ * arguments or results as raw bytes after the serialized call instead of serializing them.
+ * <p>
+ * Each of them is replaced in the serialized call by an {@link AttachmentMarker}
+ * with its length, and they follow the (possibly compressed) call in the order of
+ * their markers. The sender writes them from the exported arrays and buffers
+ * after the call, and the receiver finds them at the end of the payload and copies
+ * each into an array of its size, or returns a ByteBuffer slice of the payload
+ * if a ByteBuffer was sent. Attachments are never compressed.
+ */
+final class Attachments {
+    static final int THRESHOLD = 1024; // smaller byte arrays are cheaper to serialize
+
+    private final List<ByteBuffer> parts = new ArrayList<>();
+    private long size;
+
+    static boolean isAttachable(Object value) {
+        return value instanceof byte[] && ((byte[])value).length >= THRESHOLD || value instanceof ByteBuffer;
+    }
+
+    static boolean hasAttachable(Object[] values) {
+        if (values != null) {
+            for (Object value : values) {
+                if (isAttachable(value)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    static boolean hasMarkers(Object[] values) {
+        if (values != null) {
+            for (Object value : values) {
+                if (value instanceof AttachmentMarker) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a copy of the given values whose attachable ones are replaced by markers.
+     */
+    Object[] export(Object[] values) {
+        Object[] exported = values.clone();
+        for (int i = 0; i < exported.length; i++) {
+            exported[i] = export(exported[i]);
+        }
+        return exported;
+    }
+
+    /**
+     * Returns a marker for the given value if it is attachable, or else the value itself.
+     * A ByteBuffer is sent from its position to its limit, which are left as they are.
+     */
+    Object export(Object value) {
+        if (!isAttachable(value)) {
+            return value;
+        }
+        boolean buffer = value instanceof ByteBuffer;
+        ByteBuffer part = buffer ? ((ByteBuffer)value).duplicate() : ByteBuffer.wrap((byte[])value);
+        parts.add(part);
+        size += part.remaining();
+        return new AttachmentMarker(part.remaining(), buffer);
+    }
+
+    /**
+     * Returns a frame whose payload is followed by the attachments, which are written
+     * from the exported arrays and buffers instead of being copied into the payload.
+     */
+    Frame frame(byte type, byte flags, long id, byte[] payload) throws IOException {
+        if (payload.length + size > Frame.MAX_PAYLOAD) {
+            throw new IOException("Attachments exceed the maximum payload of " + Frame.MAX_PAYLOAD + " bytes");
+        }
+        return new Frame(type, flags, id, payload, parts.toArray(new ByteBuffer[0]));
+    }
+
+    /**
+     * Replaces the markers among the given values by their attachments,
+     * which end the given payload.
+     *
+     * @throws StreamCorruptedException if the payload is too short for the markers
+     */
+    static void resolve(Object[] values, byte[] payload) throws StreamCorruptedException {
+        long size = 0;
+        for (Object value : values) {
+            if (value instanceof AttachmentMarker) {
+                int length = ((AttachmentMarker)value).getLength();
+                if (length < 0) {
+                    throw new StreamCorruptedException("invalid attachment length " + length);
+                }
+                size += length;
+            }
+        }
+        if (size > payload.length) {
+            throw new StreamCorruptedException("attachments exceed the payload");
+        }
+        int offset = payload.length - (int)size;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] instanceof AttachmentMarker) {
+                AttachmentMarker marker = (AttachmentMarker)values[i];
+                values[i] = read(marker, payload, offset);
+                offset += marker.getLength();
+            }
+        }
+    }
+
+    private static Object read(AttachmentMarker marker, byte[] payload, int offset) {
+        if (!marker.isBuffer()) {
+            return Arrays.copyOfRange(payload, offset, offset + marker.getLength());
+        }
+        return ByteBuffer.wrap(payload, offset, marker.getLength()).slice();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the responses to the requests of a {@link Frame#BATCH} frame,
+ * which the server handles like single requests, and sends them
+ * in one batch frame once all of the requests are done.
+ */
+final class BatchChannel implements FrameChannel {
+    private final FrameChannel connection;
+    private final List<Frame> responses;
+    private int remaining;
+
+    BatchChannel(FrameChannel connection, int size) {
+        this.connection = connection;
+        this.responses = new ArrayList<>(size);
+        this.remaining = size;
+    }
+
+    @Override
+    public void send(Frame response) throws IOException {
+        complete(response);
+    }
+
+    @Override
+    public void skip(Frame request) throws IOException {
+        complete(null);
+    }
+
+    @Override
+    public FrameChannel connection() {
+        return connection.connection();
+    }
+
+    private void complete(Frame response) throws IOException {
+        List<Frame> done;
+        synchronized (this) {
+            if (response != null) {
+                responses.add(response);
+            }
+            if (--remaining > 0) {
+                return;
+            }
+            done = responses;
+        }
+        if (done.size() == 1) {
+            connection.send(done.get(0));
+        } else if (!done.isEmpty()) {
+            connection.send(Frame.batch(done));
+        }
+    }
+}
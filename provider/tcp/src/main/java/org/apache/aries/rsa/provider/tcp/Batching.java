@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+/**
+ * Collects the calls of a client into batch frames, so that chatty clients
+ * making many small calls share round trips. Queued calls are sent once
+ * the batch is full or the first of them has waited for the batch window.
+ */
+final class Batching {
+    static final Batching NONE = new Batching(1, 0);
+
+    private final int size;
+    private final long windowMicros;
+
+    /**
+     * @param size the maximum number of calls per batch
+     * @param windowMicros the maximum time a call waits for the batch to fill up
+     */
+    Batching(int size, long windowMicros) {
+        this.size = Math.max(1, size);
+        this.windowMicros = Math.max(0, windowMicros);
+    }
+
+    boolean isEnabled() {
+        return size > 1;
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    long getWindowMicros() {
+        return windowMicros;
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.aries.rsa.provider.tcp.metrics.MethodStats;
+
+/**
+ * Records the calls of an endpoint per method, without locking,
+ * so that concurrent calls don't contend on the metrics.
+ */
+final class CallMetrics {
+    static final int BUCKETS = 32; // the last one counts all calls from 2^30 µs, about 18 minutes
+
+    private final Map<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+
+    /**
+     * Records a call.
+     *
+     * @param method the method key or name
+     * @param nanos the duration of the call
+     * @param error whether the call failed
+     * @param bytesIn the number of bytes received, or zero if unknown
+     * @param bytesOut the number of bytes sent, or zero if unknown
+     */
+    void record(String method, long nanos, boolean error, long bytesIn, long bytesOut) {
+        get(method).record(TimeUnit.NANOSECONDS.toMicros(nanos), error, bytesIn, bytesOut);
+    }
+
+    /**
+     * Adds the bytes of a call which is recorded separately, e.g. where its frames
+     * are encoded and decoded apart from timing the call.
+     */
+    void addBytes(String method, long bytesIn, long bytesOut) {
+        get(method).addBytes(bytesIn, bytesOut);
+    }
+
+    private MethodMetrics get(String method) {
+        MethodMetrics metrics = methods.get(method);
+        if (metrics == null) {
+            metrics = methods.computeIfAbsent(method, m -> new MethodMetrics());
+        }
+        return metrics;
+    }
+
+    List<MethodStats> snapshot() {
+        List<MethodStats> stats = new ArrayList<>();
+        methods.forEach((method, metrics) -> stats.add(metrics.snapshot(method)));
+        return stats;
+    }
+
+    static int bucket(long micros) {
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    private static final class MethodMetrics {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder bytesIn = new LongAdder();
+        private final LongAdder bytesOut = new LongAdder();
+        private final LongAdder totalLatency = new LongAdder();
+        private final LongAccumulator maxLatency = new LongAccumulator(Math::max, 0);
+        private final LongAdder[] histogram = new LongAdder[BUCKETS];
+
+        MethodMetrics() {
+            for (int i = 0; i < BUCKETS; i++) {
+                histogram[i] = new LongAdder();
+            }
+        }
+
+        void record(long micros, boolean error, long in, long out) {
+            calls.increment();
+            if (error) {
+                errors.increment();
+            }
+            addBytes(in, out);
+            totalLatency.add(micros);
+            maxLatency.accumulate(micros);
+            histogram[bucket(micros)].increment();
+        }
+
+        void addBytes(long in, long out) {
+            if (in > 0) {
+                bytesIn.add(in);
+            }
+            if (out > 0) {
+                bytesOut.add(out);
+            }
+        }
+
+        MethodStats snapshot(String method) {
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = histogram[i].sum();
+            }
+            return new MethodStats(method, calls.sum(), errors.sum(), bytesIn.sum(), bytesOut.sum(),
+                totalLatency.sum(), maxLatency.get(), counts);
+        }
+    }
+}
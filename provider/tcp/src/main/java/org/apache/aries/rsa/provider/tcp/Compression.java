@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflates frame payloads which reach a size threshold, so that small calls
+ * don't pay for compression while large ones save bandwidth.
+ * Compression is enabled by the {@link #INTENT} of an endpoint.
+ */
+final class Compression {
+    static final String INTENT = "aries.compression";
+    static final Compression NONE = new Compression(Integer.MAX_VALUE, Deflater.NO_COMPRESSION);
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final int threshold;
+    private final int level;
+
+    /**
+     * @param threshold the minimum number of bytes to compress
+     * @param level the {@link Deflater} compression level
+     */
+    Compression(int threshold, int level) {
+        this.threshold = Math.max(0, threshold);
+        this.level = level;
+    }
+
+    boolean isEnabled() {
+        return this != NONE;
+    }
+
+    int getThreshold() {
+        return threshold;
+    }
+
+    int getLevel() {
+        return level;
+    }
+
+    /**
+     * Writes the data, deflated if it reaches the threshold and deflating makes it smaller.
+     *
+     * @return whether the data was deflated
+     */
+    boolean write(byte[] data, int off, int len, OutputStream out) throws IOException {
+        if (!isEnabled() || len < threshold) {
+            out.write(data, off, len);
+            return false;
+        }
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(data, off, len);
+            deflater.finish();
+            byte[] buf = new byte[len];
+            int size = 0;
+            while (!deflater.finished() && size < len) {
+                size += deflater.deflate(buf, size, len - size);
+            }
+            if (!deflater.finished() || size >= len) {
+                out.write(data, off, len); // incompressible, e.g. already compressed data
+                return false;
+            }
+            out.write(buf, 0, size);
+        } finally {
+            deflater.end();
+        }
+        return true;
+    }
+
+    /**
+     * Inflates deflated data, which may not exceed the maximum frame payload size.
+     */
+    static byte[] inflate(byte[] data, int off, int len) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, off, len);
+            byte[] result = new byte[Math.max(BUFFER_SIZE, Math.min(len * 4, Frame.MAX_PAYLOAD))];
+            int size = 0;
+            while (!inflater.finished()) {
+                if (size == result.length) {
+                    if (size == Frame.MAX_PAYLOAD) {
+                        throw new StreamCorruptedException("inflated payload exceeds " + Frame.MAX_PAYLOAD + " bytes");
+                    }
+                    result = Arrays.copyOf(result, (int)Math.min(2L * size, Frame.MAX_PAYLOAD));
+                }
+                int count = inflater.inflate(result, size, result.length - size);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new StreamCorruptedException("truncated compressed payload");
+                }
+                size += count;
+            }
+            return size == result.length ? result : Arrays.copyOf(result, size);
+        } catch (DataFormatException e) {
+            throw new StreamCorruptedException("invalid compressed payload: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -18,10 +18,16 @@
  */
 package org.apache.aries.rsa.provider.tcp;
 
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.zip.Deflater;
 
+import org.apache.aries.rsa.util.StringPlus;
+
+import org.apache.aries.rsa.provider.tcp.ser.JavaSerializer;
 import org.osgi.service.remoteserviceadmin.EndpointDescription;
+import org.osgi.service.remoteserviceadmin.RemoteConstants;
 
 /**
  * A convenience class for extracting endpoint configuration properties
@@ -33,10 +39,40 @@ public class EndpointPropertiesParser {
     static final String ID_KEY = "aries.rsa.id";
     static final String THREADS_KEY = "aries.rsa.numThreads";
     static final String TIMEOUT_KEY = "osgi.basic.timeout";
+    static final String CONNECTIONS_KEY = "aries.rsa.connections";
+    static final String IO_THREADS_KEY = "aries.rsa.ioThreads";
+    static final String VIRTUAL_THREADS_KEY = "aries.rsa.virtualThreads";
+    static final String ASYNC_THREADS_KEY = "aries.rsa.asyncThreads";
+    static final String ASYNC_QUEUE_SIZE_KEY = "aries.rsa.asyncQueueSize";
+    static final String SERIALIZER_KEY = "aries.rsa.serializer";
+    static final String MAX_CONCURRENT_CALLS_KEY = "aries.rsa.maxConcurrentCalls";
+    static final String MAX_QUEUED_CALLS_KEY = "aries.rsa.maxQueuedCalls";
+    static final String BULKHEAD_THREADS_KEY = "aries.rsa.bulkheadThreads";
+    static final String BULKHEAD_QUEUE_SIZE_KEY = "aries.rsa.bulkheadQueueSize";
+    static final String COMPRESSION_THRESHOLD_KEY = "aries.rsa.compressionThreshold";
+    static final String COMPRESSION_LEVEL_KEY = "aries.rsa.compressionLevel";
+    static final String UNIX_SOCKET_KEY = "aries.rsa.unixSocket";
+    static final String HOST_ID_KEY = "aries.rsa.hostId";
+    static final String PROTOCOL_VERSION_KEY = "aries.rsa.protocolVersion";
+    static final String BATCH_SIZE_KEY = "aries.rsa.batchSize";
+    static final String BATCH_WINDOW_KEY = "aries.rsa.batchWindowMicros";
+    static final String WARM_UP_KEY = "aries.rsa.warmUp";
 
     static final int DYNAMIC_PORT = 0;
     static final int DEFAULT_TIMEOUT_MILLIS = 300000;
     static final int DEFAULT_NUM_THREADS = 10;
+    static final int DEFAULT_CONNECTIONS = 0; // a new connection per call
+    static final int DEFAULT_IO_THREADS = 0; // a blocking thread per connection
+    static final int DEFAULT_ASYNC_THREADS = 10;
+    static final int DEFAULT_ASYNC_QUEUE_SIZE = 1000;
+    static final int DEFAULT_MAX_CONCURRENT_CALLS = 0; // no admission control
+    static final int DEFAULT_MAX_QUEUED_CALLS = 100;
+    static final int DEFAULT_BULKHEAD_THREADS = 0; // the server's shared pool
+    static final int DEFAULT_BULKHEAD_QUEUE_SIZE = 100;
+    static final int DEFAULT_COMPRESSION_THRESHOLD = 8192;
+    static final int DEFAULT_COMPRESSION_LEVEL = Deflater.BEST_SPEED;
+    static final int DEFAULT_BATCH_SIZE = 0; // no batching
+    static final int DEFAULT_BATCH_WINDOW_MICROS = 500;
 
     private Map<String, Object> ep;
     private String uuid = UUID.randomUUID().toString(); // fallback id
@@ -58,6 +94,11 @@ public class EndpointPropertiesParser {
         return value != null ? Integer.parseInt(value.toString()) : defaultValue;
     }
 
+    boolean getBoolean(String key, boolean defaultValue) {
+        Object value = ep.get(key);
+        return value != null ? Boolean.parseBoolean(value.toString()) : defaultValue;
+    }
+
     String getString(String key, String defaultValue) {
         Object value = ep.get(key);
         return value != null ? value.toString() : defaultValue;
@@ -82,4 +123,98 @@ public class EndpointPropertiesParser {
     public int getNumThreads() {
         return getInt(THREADS_KEY, DEFAULT_NUM_THREADS);
     }
+
+    public int getConnections() {
+        return getInt(CONNECTIONS_KEY, DEFAULT_CONNECTIONS);
+    }
+
+    public int getIoThreads() {
+        return getInt(IO_THREADS_KEY, DEFAULT_IO_THREADS);
+    }
+
+    public boolean isVirtualThreads() {
+        return getBoolean(VIRTUAL_THREADS_KEY, false);
+    }
+
+    public int getAsyncThreads() {
+        return getInt(ASYNC_THREADS_KEY, DEFAULT_ASYNC_THREADS);
+    }
+
+    public int getAsyncQueueSize() {
+        return getInt(ASYNC_QUEUE_SIZE_KEY, DEFAULT_ASYNC_QUEUE_SIZE);
+    }
+
+    public String getSerializer() {
+        return getString(SERIALIZER_KEY, JavaSerializer.NAME);
+    }
+
+    public int getMaxConcurrentCalls() {
+        return getInt(MAX_CONCURRENT_CALLS_KEY, DEFAULT_MAX_CONCURRENT_CALLS);
+    }
+
+    public int getMaxQueuedCalls() {
+        return getInt(MAX_QUEUED_CALLS_KEY, DEFAULT_MAX_QUEUED_CALLS);
+    }
+
+    public boolean isWarmUp() {
+        return getBoolean(WARM_UP_KEY, false);
+    }
+
+    public int getBulkheadThreads() {
+        return getInt(BULKHEAD_THREADS_KEY, DEFAULT_BULKHEAD_THREADS);
+    }
+
+    public int getBulkheadQueueSize() {
+        return getInt(BULKHEAD_QUEUE_SIZE_KEY, DEFAULT_BULKHEAD_QUEUE_SIZE);
+    }
+
+    /**
+     * Returns the version of the framed protocol understood by the exporter,
+     * or zero if it predates versioning.
+     */
+    public int getProtocolVersion() {
+        return getInt(PROTOCOL_VERSION_KEY, 0);
+    }
+
+    /**
+     * Returns the path of the Unix domain socket to listen on or connect to, or null if there is none.
+     */
+    public String getUnixSocket() {
+        String path = getString(UNIX_SOCKET_KEY, null);
+        return path == null || path.trim().isEmpty() ? null : path.trim();
+    }
+
+    /**
+     * Returns the identifier of the exporting host, which is advertised along with its Unix domain socket.
+     */
+    public String getHostId() {
+        return getString(HOST_ID_KEY, null);
+    }
+
+    /**
+     * Returns whether the intent is exported, or advertised by an imported endpoint.
+     */
+    boolean hasIntent(String intent) {
+        for (String key : new String[] {RemoteConstants.SERVICE_EXPORTED_INTENTS,
+                RemoteConstants.SERVICE_EXPORTED_INTENTS_EXTRA, RemoteConstants.SERVICE_INTENTS}) {
+            List<String> intents = StringPlus.normalize(ep.get(key));
+            if (intents != null && intents.contains(intent)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    Compression getCompression() {
+        if (!hasIntent(Compression.INTENT)) {
+            return Compression.NONE;
+        }
+        return new Compression(getInt(COMPRESSION_THRESHOLD_KEY, DEFAULT_COMPRESSION_THRESHOLD),
+            getInt(COMPRESSION_LEVEL_KEY, DEFAULT_COMPRESSION_LEVEL));
+    }
+
+    Batching getBatching() {
+        int size = getInt(BATCH_SIZE_KEY, DEFAULT_BATCH_SIZE);
+        return size > 1 ? new Batching(size, getInt(BATCH_WINDOW_KEY, DEFAULT_BATCH_WINDOW_MICROS)) : Batching.NONE;
+    }
 }
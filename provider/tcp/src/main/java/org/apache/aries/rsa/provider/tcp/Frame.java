@@ -0,0 +1,271 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A single message of the framed protocol used by pooled connections.
+ * <p>
+ * A framed connection starts with the {@link #MAGIC} preamble sent by the client,
+ * followed by any number of frames in both directions. Each frame consists of
+ * the payload length, the frame type and the correlation id which matches
+ * a response to its request, followed by the payload bytes.
+ * Since the preamble never starts with the Java serialization stream magic,
+ * the server can tell framed connections apart from one-shot connections.
+ */
+final class Frame {
+    static final int MAGIC = 0x41525346; // "ARSF"
+    /**
+     * The protocol version advertised by endpoints, which clients must not exceed:
+     * 1 adds the deadline flag and the deadline of one-shot requests,
+     * 2 adds cancel frames for requests with the cancellable flag,
+     * 3 adds batch frames,
+     * 4 adds ping frames,
+     * 5 adds stream frames,
+     * 6 adds attachment requests,
+     * 7 adds method ids in place of method keys.
+     * Endpoints without a version only understand plain frames.
+     */
+    static final int PROTOCOL_VERSION = 7;
+    static final int MAX_PAYLOAD = 256 * 1024 * 1024;
+    static final int HEADER_SIZE = 4 + 1 + 8; // length, type, id
+
+    static final byte REQUEST = 1;
+    static final byte RESPONSE = 2;
+    static final byte CANCEL = 3; // sent by the client for a cancellable request it no longer waits for
+    static final byte BATCH = 4; // carries several request frames, or the response frames to all of them
+    static final byte PING = 5; // echoed by the server
+    // frames of the streams passed as arguments or results, see Streams
+    static final byte STREAM_DATA = 6; // a chunk of the stream
+    static final byte STREAM_END = 7; // the end of the stream, with an error message if it failed
+    static final byte STREAM_CREDIT = 8; // sent by the receiver, allows the sender to send more chunks
+    static final byte STREAM_CANCEL = 9; // sent by the receiver when it closes the stream early
+    // a request whose payload may end with attachments, and whose client reads them in the response, see Attachments
+    static final byte ATTACHMENT_REQUEST = 10;
+
+    // flags sharing the type byte, only sent to peers which advertise compression or a protocol version
+    static final byte COMPRESSED = 0x10; // the payload is deflated after the request header
+    static final byte ACCEPTS_COMPRESSED = 0x20; // the client can read a compressed response
+    static final byte DEADLINE = 0x40; // the request header starts with the caller's timeout in ms
+    static final byte CANCELLABLE = (byte)0x80; // the client may send a cancel frame for the request
+    private static final int FLAGS_MASK = 0xF0;
+    private static final ByteBuffer[] NO_PARTS = new ByteBuffer[0];
+    private static final int CHUNK_SIZE = 8192;
+
+    private final byte type;
+    private final byte flags;
+    private final long id;
+    private final byte[] payload;
+    private final ByteBuffer[] parts;
+    private final int length;
+
+    Frame(byte type, long id, byte[] payload) {
+        this(type, (byte)0, id, payload);
+    }
+
+    Frame(byte type, byte flags, long id, byte[] payload) {
+        this(type, flags, id, payload, NO_PARTS);
+    }
+
+    /**
+     * Creates a frame whose payload is followed by the given parts, which are
+     * written from their position to their limit as they are instead of being
+     * copied into the payload, so they must not change until the frame is written.
+     * The receiver reads them as the end of the payload.
+     */
+    Frame(byte type, byte flags, long id, byte[] payload, ByteBuffer[] parts) {
+        this.type = type;
+        this.flags = flags;
+        this.id = id;
+        this.payload = payload;
+        this.parts = parts;
+        int length = payload.length;
+        for (ByteBuffer part : parts) {
+            length += part.remaining();
+        }
+        this.length = length;
+    }
+
+    byte getType() {
+        return type;
+    }
+
+    boolean isRequest() {
+        return type == REQUEST || type == ATTACHMENT_REQUEST;
+    }
+
+    boolean hasFlag(byte flag) {
+        return (flags & flag) != 0;
+    }
+
+    /**
+     * Returns a copy of this frame with the given correlation id.
+     */
+    Frame withId(long id) {
+        return new Frame(type, flags, id, payload, parts);
+    }
+
+    long getId() {
+        return id;
+    }
+
+    /**
+     * Returns the payload, not including the parts of a frame created with parts.
+     */
+    byte[] getPayload() {
+        return payload;
+    }
+
+    boolean hasParts() {
+        return parts.length > 0;
+    }
+
+    /**
+     * Returns the length of the payload as sent, including the parts.
+     */
+    int getLength() {
+        return length;
+    }
+
+    static Frame read(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_PAYLOAD) {
+            throw new StreamCorruptedException("invalid frame length: " + length);
+        }
+        byte type = in.readByte();
+        long id = in.readLong();
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return new Frame((byte)(type & ~FLAGS_MASK), (byte)(type & FLAGS_MASK), id, payload);
+    }
+
+    /**
+     * Decodes a frame from the given buffer if it contains all of it.
+     *
+     * @param buf the buffer to read from, ready for reading
+     * @return the frame, or null if the buffer does not contain a complete frame yet,
+     *         in which case its position is left unchanged
+     * @throws StreamCorruptedException if the frame header is invalid
+     */
+    static Frame read(ByteBuffer buf) throws StreamCorruptedException {
+        if (buf.remaining() < HEADER_SIZE) {
+            return null;
+        }
+        int length = buf.getInt(buf.position());
+        if (length < 0 || length > MAX_PAYLOAD) {
+            throw new StreamCorruptedException("invalid frame length: " + length);
+        }
+        if (buf.remaining() < HEADER_SIZE + length) {
+            return null;
+        }
+        buf.getInt();
+        byte type = buf.get();
+        long id = buf.getLong();
+        byte[] payload = new byte[length];
+        buf.get(payload);
+        return new Frame((byte)(type & ~FLAGS_MASK), (byte)(type & FLAGS_MASK), id, payload);
+    }
+
+    /**
+     * Returns a batch frame carrying the given frames.
+     */
+    static Frame batch(List<Frame> frames) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bout);
+        out.writeInt(frames.size());
+        for (Frame frame : frames) {
+            frame.write(out);
+        }
+        return new Frame(BATCH, 0, bout.toByteArray());
+    }
+
+    /**
+     * Returns the frames carried by this batch frame.
+     *
+     * @throws StreamCorruptedException if the payload is not a valid batch
+     */
+    List<Frame> unbatch() throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        int count = in.readInt();
+        if (count < 0 || count > payload.length / HEADER_SIZE) {
+            throw new StreamCorruptedException("invalid batch size: " + count);
+        }
+        List<Frame> frames = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            frames.add(read(in));
+        }
+        return frames;
+    }
+
+    /**
+     * Returns the frame header and payload followed by the parts in buffers ready
+     * for a gathering write to a channel.
+     */
+    ByteBuffer[] toByteBuffers() {
+        ByteBuffer[] bufs = new ByteBuffer[1 + parts.length];
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + payload.length);
+        buf.putInt(length);
+        buf.put((byte)(type | flags));
+        buf.putLong(id);
+        buf.put(payload);
+        buf.flip();
+        bufs[0] = buf;
+        for (int i = 0; i < parts.length; i++) {
+            bufs[i + 1] = parts[i].duplicate();
+        }
+        return bufs;
+    }
+
+    /**
+     * Writes the frame to the given stream. Callers sharing a stream
+     * between threads must synchronize on it.
+     */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(length);
+        out.writeByte(type | flags);
+        out.writeLong(id);
+        out.write(payload);
+        for (ByteBuffer part : parts) {
+            write(part.duplicate(), out);
+        }
+        out.flush();
+    }
+
+    private static void write(ByteBuffer part, DataOutputStream out) throws IOException {
+        if (part.hasArray()) {
+            out.write(part.array(), part.arrayOffset() + part.position(), part.remaining());
+            return;
+        }
+        byte[] chunk = new byte[Math.min(CHUNK_SIZE, part.remaining())];
+        while (part.hasRemaining()) {
+            int n = Math.min(chunk.length, part.remaining());
+            part.get(chunk, 0, n);
+            out.write(chunk, 0, n);
+        }
+    }
+}
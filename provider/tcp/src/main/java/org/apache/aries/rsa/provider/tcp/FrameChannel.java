@@ -0,0 +1,44 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import java.io.IOException;
+
+/**
+ * The sending side of a framed connection, which may be shared
+ * by several threads writing responses concurrently.
+ */
+interface FrameChannel {
+
+    void send(Frame frame) throws IOException;
+
+    /**
+     * Called instead of {@link #send} for a request which gets no response,
+     * because the client cancelled it.
+     */
+    default void skip(Frame request) throws IOException {
+    }
+
+    /**
+     * Returns the channel of the underlying connection, which scopes the correlation ids.
+     */
+    default FrameChannel connection() {
+        return this;
+    }
+}
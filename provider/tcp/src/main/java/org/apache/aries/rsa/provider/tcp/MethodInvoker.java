@@ -18,20 +18,45 @@
  */
 package org.apache.aries.rsa.provider.tcp;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 
 /**
- * Reflectively invokes the methods of a service object
- * given the method name and parameter values.
+ * Invokes the methods of a service object given either a method id
+ * (see {@link #getMethodId(Method)}), a method key (see {@link #getMethodKey(Method)})
+ * or the method name, and the parameter values.
+ * <p>
+ * Method ids and keys are looked up in a table of method handles which is built once
+ * for the service, so no reflective lookup is needed per call. Plain method names
+ * are resolved reflectively using the runtime types of the parameter values.
  */
 public class MethodInvoker {
+    private static final MethodType GENERIC_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+    private static final Object[] NO_ARGS = {};
 
     private HashMap<Object, Object> primTypes;
     private Object service;
+    private Map<String, MethodHandle> handles = new HashMap<>();
+    private Map<String, Method> methodsByKey = new HashMap<>();
+    private Map<String, String> keysById = new HashMap<>();
 
     public MethodInvoker(Object service) {
+        this(service, MethodInvoker::getMethodId);
+    }
+
+    MethodInvoker(Object service, Function<String, String> idFunction) {
         this.service = service;
         this.primTypes = new HashMap<>();
         this.primTypes.put(Byte.TYPE, Byte.class);
@@ -42,13 +67,147 @@ public class MethodInvoker {
         this.primTypes.put(Double.TYPE, Double.class);
         this.primTypes.put(Boolean.TYPE, Boolean.class);
         this.primTypes.put(Character.TYPE, Character.class);
+        createHandles(idFunction);
     }
 
     public Object getService() {
         return service;
     }
 
+    /**
+     * Returns the key identifying the given method among the methods of a service,
+     * consisting of the method name and parameter types, e.g. {@code sum(int,int)}.
+     */
+    public static String getMethodKey(Method method) {
+        StringBuilder key = new StringBuilder(method.getName()).append('(');
+        Class<?>[] types = method.getParameterTypes();
+        for (int i = 0; i < types.length; i++) {
+            if (i > 0) {
+                key.append(',');
+            }
+            key.append(types[i].getName());
+        }
+        return key.append(')').toString();
+    }
+
+    /**
+     * Returns a short id of the given method, which is a 64 bit hash of its key,
+     * e.g. {@code #3jx0dm2bbc1wt}.
+     */
+    public static String getMethodId(Method method) {
+        return getMethodId(getMethodKey(method));
+    }
+
+    static String getMethodId(String key) {
+        long hash = 0xcbf29ce484222325L; // FNV-1a
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return "#" + Long.toUnsignedString(hash, 36);
+    }
+
+    /**
+     * Returns what identifies each of the given method keys in requests: its id, or the key itself
+     * if another of the keys has the same id, so that a call by id can't reach the wrong method.
+     */
+    public static Map<String, String> getMethodRefs(Collection<String> keys) {
+        return getMethodRefs(keys, MethodInvoker::getMethodId);
+    }
+
+    static Map<String, String> getMethodRefs(Collection<String> keys, Function<String, String> idFunction) {
+        Map<String, String> keysById = new HashMap<>();
+        Set<String> ambiguous = new HashSet<>();
+        for (String key : keys) {
+            String id = idFunction.apply(key);
+            String other = keysById.putIfAbsent(id, key);
+            if (other != null && !other.equals(key)) {
+                ambiguous.add(id);
+            }
+        }
+        Map<String, String> refs = new HashMap<>();
+        for (String key : keys) {
+            String id = idFunction.apply(key);
+            refs.put(key, ambiguous.contains(id) ? key : id);
+        }
+        return refs;
+    }
+
+    /**
+     * Returns the key of the method with the given id, or the given key or name itself.
+     *
+     * @throws NoSuchMethodException if there is no method with the given id
+     */
+    public String resolve(String method) throws NoSuchMethodException {
+        if (!method.startsWith("#")) {
+            return method;
+        }
+        String key = keysById.get(method);
+        if (key == null) {
+            throw new NoSuchMethodException("No method found with id " + method);
+        }
+        return key;
+    }
+
+    private void createHandles(Function<String, String> idFunction) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        Method[] methods = service.getClass().getMethods();
+        List<String> keys = new ArrayList<>();
+        for (Method method : methods) {
+            keys.add(getMethodKey(method));
+        }
+        getMethodRefs(keys, idFunction).forEach((key, ref) -> {
+            if (!ref.equals(key)) {
+                keysById.put(ref, key); // colliding ids are left out, their methods are called by key
+            }
+        });
+        for (Method method : methods) {
+            String key = getMethodKey(method);
+            Method other = methodsByKey.get(key);
+            if (other != null && !other.isBridge()) {
+                continue; // prefer the most specific method over bridge methods with covariant return types
+            }
+            try {
+                MethodHandle handle = lookup.unreflect(method)
+                    .asSpreader(Object[].class, method.getParameterCount())
+                    .asType(GENERIC_TYPE);
+                handles.put(key, handle);
+                methodsByKey.put(key, method);
+            } catch (IllegalAccessException e) {
+                // not accessible as a handle, will be invoked reflectively
+            }
+        }
+    }
+
     public Object invoke(String methodName, Object[] args) throws Exception {
+        methodName = resolve(methodName);
+        int paren = methodName.indexOf('(');
+        if (paren < 0) {
+            return invokeByName(methodName, args);
+        }
+        MethodHandle handle = handles.get(methodName);
+        if (handle == null) {
+            return invokeByName(methodName.substring(0, paren), args);
+        }
+        if (args == null) {
+            args = NO_ARGS;
+        }
+        try {
+            return (Object) handle.invokeExact(service, args);
+        } catch (IllegalArgumentException | ClassCastException | NullPointerException e) {
+            // either thrown by the method itself or by the handle adapting the arguments
+            Class<?>[] types = getTypes(args);
+            if (!allParamsMatch(methodsByKey.get(methodName).getParameterTypes(), types)) {
+                throw new NoSuchMethodException(String.format("No method found that matches key %s, types %s",
+                                                              methodName, Arrays.toString(types)));
+            }
+            throw new InvocationTargetException(e);
+        } catch (Throwable t) {
+            throw new InvocationTargetException(t);
+        }
+    }
+
+    private Object invokeByName(String methodName, Object[] args) throws Exception {
         Class<?>[] parameterTypesAr = getTypes(args);
         Method method = getMethod(methodName, parameterTypesAr);
         return method.invoke(service, args);
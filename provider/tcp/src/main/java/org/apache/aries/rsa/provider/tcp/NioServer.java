@@ -0,0 +1,386 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.StreamCorruptedException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The non-blocking I/O side of a {@link TcpServer}.
+ * <p>
+ * A small number of selector threads accept connections, decode request frames
+ * and write response frames, while complete requests are handed over to the
+ * server's worker pool. Idle or slow connections therefore do not occupy
+ * any worker thread. Connections which do not use the framed protocol are
+ * switched to blocking mode and handed over to the server as a whole.
+ */
+class NioServer implements Closeable {
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    /** Bytes of responses waiting to be written beyond which a connection is not read from. */
+    private static final int MAX_WRITE_BACKLOG = 16 * 1024 * 1024;
+
+    private Logger log = LoggerFactory.getLogger(NioServer.class);
+
+    private final TcpServer server;
+    private final ServerSocketChannel serverChannel;
+    private final SelectorLoop[] loops;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private final AtomicInteger connections = new AtomicInteger(); // framed ones
+
+    NioServer(TcpServer server, int port, int ioThreads) throws IOException {
+        this.server = server;
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.socket().setReuseAddress(true);
+        this.serverChannel.bind(new InetSocketAddress(port));
+        this.serverChannel.configureBlocking(false);
+        this.loops = new SelectorLoop[Math.max(1, ioThreads)];
+        for (int i = 0; i < loops.length; i++) {
+            loops[i] = new SelectorLoop("aries-rsa-tcp-io-" + getServerSocket().getLocalPort() + "-" + i);
+        }
+        loops[0].execute(() -> loops[0].register(serverChannel, SelectionKey.OP_ACCEPT, null));
+        for (SelectorLoop loop : loops) {
+            loop.start();
+        }
+    }
+
+    ServerSocket getServerSocket() {
+        return serverChannel.socket();
+    }
+
+    int getConnectionCount() {
+        return connections.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverChannel.close();
+        for (SelectorLoop loop : loops) {
+            loop.close();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            SelectorLoop loop = loops[(nextLoop.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+            Connection connection = new Connection(channel, loop);
+            loop.execute(connection::register);
+        }
+    }
+
+    /**
+     * A selector with the thread running it. Tasks submitted from other
+     * threads are run on the selector thread between selections.
+     */
+    private class SelectorLoop implements Runnable, Closeable {
+        private final Selector selector;
+        private final Thread thread;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final List<Connection> handOffs = new ArrayList<>();
+        private volatile boolean running = true;
+
+        SelectorLoop(String name) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, name);
+            this.thread.setDaemon(true);
+        }
+
+        void start() {
+            thread.start();
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        SelectionKey register(SelectableChannel channel, int ops, Connection connection) {
+            try {
+                return channel.register(selector, ops, connection);
+            } catch (IOException e) {
+                log.warn("Error registering channel", e);
+                closeQuietly(channel);
+                return null;
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select();
+                    Runnable task;
+                    while ((task = tasks.poll()) != null) {
+                        task.run();
+                    }
+                    handleSelectedKeys();
+                    if (!handOffs.isEmpty()) {
+                        selector.selectNow(); // deregisters the cancelled keys
+                        for (Connection connection : handOffs) {
+                            connection.handOff();
+                        }
+                        handOffs.clear();
+                        handleSelectedKeys();
+                    }
+                }
+            } catch (ClosedSelectorException e) {
+                // server closed
+            } catch (Exception e) {
+                log.warn("Error in selector loop", e);
+            } finally {
+                for (SelectionKey key : selector.keys()) {
+                    closeQuietly(key.channel());
+                }
+                closeQuietly(selector);
+            }
+        }
+
+        private void handleSelectedKeys() {
+            Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+            while (it.hasNext()) {
+                SelectionKey key = it.next();
+                it.remove();
+                handle(key);
+            }
+        }
+
+        private void handle(SelectionKey key) {
+            Connection connection = (Connection) key.attachment();
+            try {
+                if (!key.isValid()) {
+                    return;
+                }
+                if (key.isAcceptable()) {
+                    accept();
+                    return;
+                }
+                if (key.isWritable()) {
+                    connection.flush();
+                }
+                if (key.isValid() && key.isReadable()) {
+                    connection.read();
+                }
+            } catch (IOException e) {
+                if (connection != null) {
+                    log.debug("Closing connection {}", connection.channel, e);
+                    connection.close();
+                } else {
+                    log.warn("Error accepting connection", e);
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            running = false;
+            selector.wakeup();
+            if (Thread.currentThread() != thread) {
+                try {
+                    thread.join(10000);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /**
+     * The state of a single client connection, which is only accessed
+     * by its selector thread except for {@link #send(Frame)}.
+     */
+    private class Connection implements FrameChannel {
+        private final SocketChannel channel;
+        private final SelectorLoop loop;
+        private final Queue<ByteBuffer> writeQueue = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
+        private final AtomicLong writeBacklog = new AtomicLong();
+        private SelectionKey key;
+        private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private boolean framed;
+
+        Connection(SocketChannel channel, SelectorLoop loop) {
+            this.channel = channel;
+            this.loop = loop;
+        }
+
+        void register() {
+            key = loop.register(channel, SelectionKey.OP_READ, this);
+        }
+
+        void read() throws IOException {
+            int count = channel.read(readBuffer);
+            if (count < 0) {
+                close();
+                return;
+            }
+            readBuffer.flip();
+            if (!framed) {
+                if (readBuffer.remaining() < 4) {
+                    readBuffer.compact();
+                    return;
+                }
+                if (readBuffer.getInt(0) != Frame.MAGIC) {
+                    key.cancel(); // one-shot connection, continue blocking
+                    loop.handOffs.add(this);
+                    return;
+                }
+                readBuffer.getInt();
+                framed = true;
+                connections.incrementAndGet();
+            }
+            Frame frame;
+            while ((frame = Frame.read(readBuffer)) != null) {
+                server.dispatch(frame, this);
+            }
+            if (readBuffer.remaining() >= 4) {
+                int length = readBuffer.getInt(readBuffer.position());
+                if (length < 0 || length > Frame.MAX_PAYLOAD) {
+                    throw new StreamCorruptedException("invalid frame length: " + length);
+                }
+                int required = Frame.HEADER_SIZE + length;
+                if (required > readBuffer.capacity()) {
+                    ByteBuffer larger = ByteBuffer.allocate(required);
+                    larger.put(readBuffer);
+                    readBuffer = larger;
+                    return;
+                }
+            }
+            if (!readBuffer.hasRemaining() && readBuffer.capacity() > READ_BUFFER_SIZE) {
+                readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE); // release the buffer of a large frame
+                return;
+            }
+            readBuffer.compact();
+        }
+
+        void handOff() {
+            try {
+                channel.configureBlocking(true);
+                byte[] prefix = new byte[readBuffer.remaining()];
+                readBuffer.get(prefix);
+                InputStream in = new SequenceInputStream(new ByteArrayInputStream(prefix),
+                    channel.socket().getInputStream());
+                server.handOff(channel.socket(), in);
+            } catch (IOException e) {
+                log.warn("Error processing connection", e);
+                close();
+            }
+        }
+
+        @Override
+        public void send(Frame frame) throws IOException {
+            if (!channel.isOpen()) {
+                throw new IOException("Connection closed");
+            }
+            ByteBuffer[] bufs = frame.toByteBuffers();
+            synchronized (writeQueue) { // keeps the buffers of a frame together
+                for (ByteBuffer buf : bufs) {
+                    writeBacklog.addAndGet(buf.remaining());
+                    writeQueue.add(buf);
+                }
+            }
+            if (flushScheduled.compareAndSet(false, true)) {
+                loop.execute(() -> {
+                    try {
+                        flush();
+                    } catch (IOException e) {
+                        log.debug("Error sending response", e);
+                        close();
+                    }
+                });
+            }
+        }
+
+        /**
+         * Writes the queued responses as far as the socket takes them. While too many
+         * are left, the connection is not read from, so that a client which does not
+         * read its responses cannot make the server queue them without bounds.
+         */
+        void flush() throws IOException {
+            flushScheduled.set(false);
+            if (key == null || !key.isValid()) {
+                return;
+            }
+            int ops = key.interestOps() & ~SelectionKey.OP_WRITE;
+            ByteBuffer[] bufs = writeQueue.toArray(new ByteBuffer[0]);
+            if (bufs.length > 0) {
+                writeBacklog.addAndGet(-channel.write(bufs)); // a gathering write of all queued buffers
+                for (ByteBuffer buf : bufs) {
+                    if (buf.hasRemaining()) {
+                        ops |= SelectionKey.OP_WRITE;
+                        break;
+                    }
+                    writeQueue.poll();
+                }
+            }
+            if (writeBacklog.get() > MAX_WRITE_BACKLOG) {
+                ops &= ~SelectionKey.OP_READ;
+            } else {
+                ops |= SelectionKey.OP_READ;
+            }
+            key.interestOps(ops);
+        }
+
+        void close() {
+            if (framed && channel.isOpen()) {
+                connections.decrementAndGet();
+            }
+            if (key != null) {
+                key.cancel();
+            }
+            writeQueue.clear();
+            writeBacklog.set(0);
+            closeQuietly(channel);
+            server.closeStreams(this);
+        }
+    }
+
+    private void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            log.debug("Error closing {}", closeable, e);
+        }
+    }
+}
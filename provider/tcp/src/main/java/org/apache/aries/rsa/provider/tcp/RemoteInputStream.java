@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Reads a stream sent by the other side of a framed connection.
+ * It holds at most the chunk being read and the {@link Streams#WINDOW} chunks
+ * the sender may send ahead, and grants credit for another chunk whenever it takes one.
+ */
+final class RemoteInputStream extends InputStream {
+    private static final byte[] END = new byte[0];
+
+    private final Streams streams;
+    private final long id;
+    private final BlockingQueue<byte[]> chunks = new LinkedBlockingQueue<>();
+    private boolean ended; // guarded by this, no more chunks are queued
+    private volatile String error;
+    private byte[] chunk = new byte[0];
+    private int pos;
+    private boolean eof;
+    private boolean closed;
+
+    RemoteInputStream(Streams streams, long id) {
+        this.streams = streams;
+        this.id = id;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    synchronized void receive(byte[] data) {
+        if (!ended) {
+            chunks.add(data);
+        }
+    }
+
+    /**
+     * Ends the stream after the chunks received so far.
+     *
+     * @param error the error reported by the sender, or null if the stream is complete
+     */
+    synchronized void end(String error) {
+        if (!ended) {
+            ended = true;
+            this.error = error;
+            chunks.add(END);
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (pos == chunk.length && !next()) {
+            return -1;
+        }
+        int count = Math.min(len, chunk.length - pos);
+        System.arraycopy(chunk, pos, b, off, count);
+        pos += count;
+        return count;
+    }
+
+    /**
+     * Takes the next non-empty chunk, skipping empty ones.
+     *
+     * @return false if the stream ended instead
+     */
+    private boolean next() throws IOException {
+        if (eof) {
+            return false;
+        }
+        do {
+            try {
+                chunk = chunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            pos = 0;
+            if (chunk == END) {
+                eof = true;
+                streams.remove(this);
+                if (error != null) {
+                    throw new IOException(error);
+                }
+                return false;
+            }
+            streams.credit(this, 1);
+        } while (chunk.length == 0);
+        return true;
+    }
+
+    @Override
+    public int available() {
+        return chunk.length - pos;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        chunks.clear();
+        if (!eof) {
+            eof = true;
+            streams.cancel(this); // the sender stops sending
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends a stream to the other side of a framed connection in chunks of
+ * {@link Streams#CHUNK_SIZE} bytes, each of which needs credit from the receiver.
+ */
+final class RemoteOutputStream extends OutputStream {
+    private final Streams streams;
+    private final long id;
+    private final byte[] buf = new byte[Streams.CHUNK_SIZE];
+    private int count;
+    private int credit; // guarded by this
+    private IOException cancelled; // guarded by this
+    private boolean closed;
+
+    RemoteOutputStream(Streams streams, long id, int credit) {
+        this.streams = streams;
+        this.id = id;
+        this.credit = credit;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    synchronized void credit(int chunks) {
+        credit += chunks;
+        notifyAll();
+    }
+
+    synchronized void cancel(IOException cause) {
+        if (cancelled == null) {
+            cancelled = cause;
+        }
+        notifyAll();
+    }
+
+    synchronized boolean isCancelled() {
+        return cancelled != null;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        buf[count++] = (byte)b;
+        if (count == buf.length) {
+            sendChunk();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            int n = Math.min(len, buf.length - count);
+            System.arraycopy(b, off, buf, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == buf.length) {
+                sendChunk();
+            }
+        }
+    }
+
+    /**
+     * Reads the given stream to its end straight into the chunk buffer.
+     */
+    void transferFrom(InputStream in) throws IOException {
+        ensureOpen();
+        int n;
+        while ((n = in.read(buf, count, buf.length - count)) >= 0) {
+            count += n;
+            if (count == buf.length) {
+                sendChunk();
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        if (count > 0) {
+            sendChunk();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+        } catch (IOException e) {
+            fail(e.toString()); // so the receiver does not take the data for complete
+            throw e;
+        }
+        closed = true;
+        streams.end(this, null);
+    }
+
+    /**
+     * Ends the stream with an error, which the receiver reads as an IOException.
+     */
+    void fail(String error) {
+        closed = true;
+        streams.end(this, error);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    private void sendChunk() throws IOException {
+        awaitCredit();
+        byte[] data = Arrays.copyOf(buf, count);
+        count = 0;
+        streams.send(this, data);
+    }
+
+    private synchronized void awaitCredit() throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Streams.IDLE_TIMEOUT_MILLIS);
+        while (credit == 0 && cancelled == null) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new SocketTimeoutException("Stream not read for " + Streams.IDLE_TIMEOUT_MILLIS + " ms");
+            }
+            try {
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+        if (cancelled != null) {
+            throw new IOException(cancelled.getMessage(), cancelled);
+        }
+        credit--;
+    }
+}
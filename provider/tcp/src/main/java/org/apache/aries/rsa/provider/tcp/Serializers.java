@@ -0,0 +1,59 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.aries.rsa.provider.tcp.ser.BinarySerializer;
+import org.apache.aries.rsa.provider.tcp.ser.JavaSerializer;
+import org.apache.aries.rsa.provider.tcp.ser.Serializer;
+
+/**
+ * The serializers known by a provider, by name. The built-in serializers
+ * are always available, while others are added and removed as they are registered.
+ */
+class Serializers {
+    static final Serializer DEFAULT = new JavaSerializer();
+
+    private final Map<String, Serializer> serializers = new ConcurrentHashMap<>();
+
+    Serializers() {
+        add(DEFAULT);
+        add(new BinarySerializer());
+    }
+
+    void add(Serializer serializer) {
+        serializers.put(serializer.getName(), serializer);
+    }
+
+    void remove(Serializer serializer) {
+        serializers.remove(serializer.getName(), serializer);
+    }
+
+    /**
+     * Returns the serializer with the given name.
+     *
+     * @param name the serializer name
+     * @return the serializer, or null if there is none by that name
+     */
+    Serializer get(String name) {
+        return serializers.get(name);
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import java.io.Serializable;
+
+/**
+ * Replaces a stream argument or result in a serialized call.
+ * Its data follows in stream frames with the marker's id.
+ */
+final class StreamMarker implements Serializable {
+    private static final long serialVersionUID = 2183620958316584925L;
+
+    private final long id;
+    private final boolean output;
+
+    /**
+     * @param id the stream id, unique per connection
+     * @param output whether it replaces an OutputStream, which the creator of the marker reads from,
+     *        instead of an InputStream, which it sends
+     */
+    StreamMarker(long id, boolean output) {
+        this.id = id;
+        this.output = output;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    boolean isOutput() {
+        return output;
+    }
+}
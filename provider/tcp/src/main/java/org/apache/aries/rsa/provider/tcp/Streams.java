@@ -0,0 +1,367 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The streams passed as arguments or results over one framed connection,
+ * which are replaced by {@link StreamMarker}s in the serialized calls.
+ * <p>
+ * Their data flows in stream frames of up to {@link #CHUNK_SIZE} bytes.
+ * A receiver grants the sender credit for {@link #WINDOW} chunks when it
+ * opens the stream, and for another chunk whenever it takes one, so a transfer
+ * needs constant memory on both sides however large it is.
+ * Streams created by the server have negative ids, so they never clash
+ * with the ids of the client's streams.
+ */
+final class Streams {
+    static final int CHUNK_SIZE = 64 * 1024;
+    static final int WINDOW = 4;
+    static final long IDLE_TIMEOUT_MILLIS = 300000; // a sender gives up if its stream is not read meanwhile
+
+    private Logger log = LoggerFactory.getLogger(Streams.class);
+
+    private final FrameChannel channel;
+    private final Executor executor;
+    private final int sign;
+    private final AtomicLong ids = new AtomicLong();
+    private final Map<Long, RemoteInputStream> receivers = new ConcurrentHashMap<>();
+    private final Map<Long, RemoteOutputStream> senders = new ConcurrentHashMap<>();
+    private final Map<Long, InputStream> sources = new ConcurrentHashMap<>(); // not granted credit yet
+
+    /**
+     * @param channel the connection
+     * @param executor runs the transfers of InputStreams and the copying into OutputStreams
+     * @param server whether this is the server side of the connection
+     */
+    Streams(FrameChannel channel, Executor executor, boolean server) {
+        this.channel = channel;
+        this.executor = executor;
+        this.sign = server ? -1 : 1;
+    }
+
+    static boolean isStreamFrame(byte type) {
+        return type >= Frame.STREAM_DATA && type <= Frame.STREAM_CANCEL;
+    }
+
+    static boolean hasStreams(Object[] args) {
+        if (args != null) {
+            for (Object arg : args) {
+                if (arg instanceof InputStream || arg instanceof OutputStream) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    static boolean hasMarkers(Object[] args) {
+        if (args != null) {
+            for (Object arg : args) {
+                if (arg instanceof StreamMarker) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replaces the stream arguments of an outgoing call by markers.
+     * InputStreams are sent once the server grants credit for them,
+     * OutputStreams receive what the server writes to them.
+     */
+    Call export(Object[] args) {
+        Call call = new Call(args.clone());
+        for (int i = 0; i < args.length; i++) {
+            long id = sign * ids.incrementAndGet();
+            if (args[i] instanceof InputStream) {
+                call.outputs.add(export(id, (InputStream)args[i]));
+                call.args[i] = new StreamMarker(id, false);
+            } else if (args[i] instanceof OutputStream) {
+                RemoteInputStream in = new RemoteInputStream(this, id);
+                receivers.put(id, in);
+                call.inputs.add(in);
+                call.sinks.add((OutputStream)args[i]);
+                call.args[i] = new StreamMarker(id, true);
+            }
+        }
+        return call;
+    }
+
+    /**
+     * Replaces a stream result by a marker. It is sent once the client grants credit for it.
+     */
+    StreamMarker export(InputStream source) {
+        long id = sign * ids.incrementAndGet();
+        export(id, source);
+        return new StreamMarker(id, false);
+    }
+
+    private RemoteOutputStream export(long id, InputStream source) {
+        RemoteOutputStream out = new RemoteOutputStream(this, id, 0);
+        senders.put(id, out);
+        sources.put(id, source);
+        return out;
+    }
+
+    /**
+     * Replaces the markers in the arguments of an incoming call by streams.
+     *
+     * @return the streams, which must be closed once the call is complete
+     */
+    List<Closeable> resolve(Object[] args) throws IOException {
+        List<Closeable> streams = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i] instanceof StreamMarker) {
+                StreamMarker marker = (StreamMarker)args[i];
+                if (marker.isOutput()) {
+                    // the client is ready to receive before it sends the call
+                    RemoteOutputStream out = new RemoteOutputStream(this, marker.getId(), WINDOW);
+                    senders.put(marker.getId(), out);
+                    args[i] = out;
+                } else {
+                    args[i] = receive(marker);
+                }
+                streams.add((Closeable)args[i]);
+            }
+        }
+        return streams;
+    }
+
+    /**
+     * Returns the stream for a marker sent by the other side, and grants credit for it.
+     */
+    RemoteInputStream receive(StreamMarker marker) throws IOException {
+        RemoteInputStream in = new RemoteInputStream(this, marker.getId());
+        receivers.put(marker.getId(), in);
+        credit(in, WINDOW);
+        return in;
+    }
+
+    static void closeAll(List<Closeable> streams) {
+        for (Closeable stream : streams) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                LoggerFactory.getLogger(Streams.class).debug("Error closing stream", e);
+            }
+        }
+    }
+
+    /**
+     * Handles a stream frame received on the connection without blocking.
+     * Frames of unknown streams are ignored, as they may have been closed meanwhile.
+     */
+    void handle(Frame frame) {
+        long id = frame.getId();
+        byte[] payload = frame.getPayload();
+        switch (frame.getType()) {
+        case Frame.STREAM_DATA:
+            RemoteInputStream in = receivers.get(id);
+            if (in != null) {
+                in.receive(payload);
+            }
+            break;
+        case Frame.STREAM_END:
+            in = receivers.remove(id);
+            if (in != null) {
+                in.end(payload.length == 0 ? null : new String(payload, StandardCharsets.UTF_8));
+            }
+            break;
+        case Frame.STREAM_CREDIT:
+            RemoteOutputStream out = senders.get(id);
+            if (out != null && payload.length == 4) {
+                out.credit(ByteBuffer.wrap(payload).getInt());
+                InputStream source = sources.remove(id);
+                if (source != null) {
+                    executor.execute(() -> transfer(source, out));
+                }
+            }
+            break;
+        case Frame.STREAM_CANCEL:
+            out = senders.remove(id);
+            if (out != null) {
+                out.cancel(new IOException("Stream closed by the receiver"));
+            }
+            closeQuietly(sources.remove(id));
+            break;
+        default:
+            log.warn("Ignoring unexpected frame of type {}", frame.getType());
+        }
+    }
+
+    /**
+     * Fails all streams, as the connection is closed.
+     */
+    void close(IOException cause) {
+        for (RemoteInputStream in : receivers.values()) {
+            in.end(cause.toString());
+        }
+        for (RemoteOutputStream out : senders.values()) {
+            out.cancel(cause);
+        }
+        for (InputStream source : sources.values()) {
+            closeQuietly(source);
+        }
+        receivers.clear();
+        senders.clear();
+        sources.clear();
+    }
+
+    private void transfer(InputStream source, RemoteOutputStream out) {
+        try (InputStream in = source) {
+            out.transferFrom(in);
+            out.close();
+        } catch (IOException e) {
+            if (!out.isCancelled()) {
+                log.debug("Error sending stream {}", out.getId(), e);
+                out.fail(e.toString());
+            }
+        }
+    }
+
+    void send(RemoteOutputStream out, byte[] data) throws IOException {
+        channel.send(new Frame(Frame.STREAM_DATA, out.getId(), data));
+    }
+
+    void end(RemoteOutputStream out, String error) {
+        if (senders.remove(out.getId(), out) && !out.isCancelled()) {
+            byte[] payload = error == null ? new byte[0] : error.getBytes(StandardCharsets.UTF_8);
+            try {
+                channel.send(new Frame(Frame.STREAM_END, out.getId(), payload));
+            } catch (IOException e) {
+                log.debug("Error ending stream {}", out.getId(), e);
+            }
+        }
+    }
+
+    void credit(RemoteInputStream in, int chunks) throws IOException {
+        channel.send(new Frame(Frame.STREAM_CREDIT, in.getId(), ByteBuffer.allocate(4).putInt(chunks).array()));
+    }
+
+    void remove(RemoteInputStream in) {
+        receivers.remove(in.getId(), in);
+    }
+
+    void cancel(RemoteInputStream in) {
+        if (receivers.remove(in.getId(), in)) {
+            try {
+                channel.send(new Frame(Frame.STREAM_CANCEL, in.getId(), new byte[0]));
+            } catch (IOException e) {
+                log.debug("Error cancelling stream {}", in.getId(), e);
+            }
+        }
+    }
+
+    private void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                log.debug("Error closing stream", e);
+            }
+        }
+    }
+
+    /**
+     * The streams passed as arguments of an outgoing call.
+     */
+    final class Call {
+        private final Object[] args;
+        private final List<RemoteOutputStream> outputs = new ArrayList<>();
+        private final List<RemoteInputStream> inputs = new ArrayList<>();
+        private final List<OutputStream> sinks = new ArrayList<>();
+
+        private Call(Object[] args) {
+            this.args = args;
+        }
+
+        /**
+         * Returns the arguments with markers in place of the streams.
+         */
+        Object[] getArgs() {
+            return args;
+        }
+
+        /**
+         * Starts copying what the server writes to the OutputStream arguments.
+         *
+         * @return a future which completes once all of it is copied
+         */
+        CompletableFuture<Void> start() {
+            CompletableFuture<?>[] copies = new CompletableFuture<?>[inputs.size()];
+            for (int i = 0; i < copies.length; i++) {
+                RemoteInputStream in = inputs.get(i);
+                OutputStream sink = sinks.get(i);
+                copies[i] = CompletableFuture.runAsync(() -> copy(in, sink), executor);
+            }
+            return CompletableFuture.allOf(copies);
+        }
+
+        private void copy(RemoteInputStream in, OutputStream sink) {
+            try (RemoteInputStream input = in) {
+                byte[] buf = new byte[CHUNK_SIZE];
+                int n;
+                while ((n = input.read(buf)) >= 0) {
+                    sink.write(buf, 0, n);
+                }
+                sink.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Ends the streams once the response arrived, as the server is done with them.
+         * The server ends OutputStream arguments before it responds, so no data is lost.
+         */
+        void finish() {
+            for (RemoteOutputStream out : outputs) {
+                InputStream source = sources.remove(out.getId());
+                if (source != null) {
+                    // never granted, e.g. the server failed before reading the arguments
+                    senders.remove(out.getId(), out);
+                    closeQuietly(source);
+                }
+            }
+            for (RemoteInputStream in : inputs) {
+                receivers.remove(in.getId(), in);
+                in.end("Call completed before the stream was closed");
+            }
+        }
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A long-lived client connection using the framed protocol.
+ * <p>
+ * Requests are tagged with a correlation id, so any number of calls
+ * can be in flight on the same connection. A dedicated reader thread
+ * dispatches the responses to the waiting callers.
+ * Requests may be queued to be sent in {@link Frame#BATCH} frames.
+ * The {@link Streams} passed as arguments or results share the connection with the calls.
+ */
+class TcpConnection implements Closeable, Runnable {
+    private Logger log = LoggerFactory.getLogger(TcpConnection.class);
+
+    private final Closeable socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final AtomicLong ids = new AtomicLong();
+    private final Map<Long, CompletableFuture<Frame>> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer;
+    private final List<Frame> batch = new ArrayList<>(); // guarded by itself
+    private ScheduledFuture<?> batchFlush; // guarded by batch
+    private final Streams streams;
+    private volatile boolean closed;
+
+    TcpConnection(Socket socket, ScheduledExecutorService timer, Executor streamExecutor) throws IOException {
+        this(socket, socket.getInputStream(), socket.getOutputStream(), socket.getRemoteSocketAddress().toString(),
+            timer, streamExecutor);
+        socket.setTcpNoDelay(true);
+    }
+
+    /**
+     * Creates a connection over a blocking Unix domain socket channel.
+     */
+    TcpConnection(SocketChannel channel, Path path, ScheduledExecutorService timer, Executor streamExecutor)
+            throws IOException {
+        this(channel, UnixSockets.newInputStream(channel), UnixSockets.newOutputStream(channel), path.toString(),
+            timer, streamExecutor);
+    }
+
+    private TcpConnection(Closeable socket, InputStream input, OutputStream output, String address,
+            ScheduledExecutorService timer, Executor streamExecutor) throws IOException {
+        this.socket = socket;
+        this.timer = timer;
+        this.streams = new Streams(this::write, streamExecutor, false);
+        this.in = new DataInputStream(new BufferedInputStream(input));
+        this.out = new DataOutputStream(new BufferedOutputStream(output));
+        this.out.writeInt(Frame.MAGIC);
+        this.out.flush();
+        Thread reader = new Thread(this, "aries-rsa-tcp-client-" + address);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    Streams streams() {
+        return streams;
+    }
+
+    private void write(Frame frame) throws IOException {
+        if (closed) {
+            throw new IOException("Connection closed");
+        }
+        synchronized (out) {
+            frame.write(out);
+        }
+    }
+
+    /**
+     * Sends a request and returns a future which is completed
+     * with the matching response.
+     */
+    CompletableFuture<Frame> send(Frame request) {
+        return send(ids.incrementAndGet(), request, Batching.NONE);
+    }
+
+    private CompletableFuture<Frame> send(long id, Frame request, Batching batching) {
+        CompletableFuture<Frame> future = new CompletableFuture<>();
+        pending.put(id, future);
+        if (closed) {
+            pending.remove(id);
+            future.completeExceptionally(new IOException("Connection closed"));
+            return future;
+        }
+        if (batching.isEnabled() && !request.hasParts()) { // parts are only read when written
+            enqueue(request.withId(id), batching);
+            return future;
+        }
+        try {
+            synchronized (out) {
+                request.withId(id).write(out);
+            }
+        } catch (IOException e) {
+            pending.remove(id);
+            future.completeExceptionally(e);
+            close();
+        }
+        return future;
+    }
+
+    /**
+     * Queues a request for the next batch, which is sent right away if it is full,
+     * or else by the timer once the batch window has passed.
+     */
+    private void enqueue(Frame request, Batching batching) {
+        List<Frame> frames = null;
+        synchronized (batch) {
+            batch.add(request);
+            if (batch.size() >= batching.getSize()) {
+                frames = drainBatch();
+            } else if (batchFlush == null) {
+                try {
+                    batchFlush = timer.schedule(this::flushBatch, batching.getWindowMicros(), TimeUnit.MICROSECONDS);
+                } catch (RejectedExecutionException e) {
+                    frames = drainBatch(); // the pool is closing
+                }
+            }
+        }
+        if (frames != null) {
+            writeBatch(frames);
+        }
+    }
+
+    private void flushBatch() {
+        List<Frame> frames;
+        synchronized (batch) {
+            frames = drainBatch();
+        }
+        if (!frames.isEmpty()) {
+            writeBatch(frames);
+        }
+    }
+
+    private List<Frame> drainBatch() {
+        List<Frame> frames = new ArrayList<>(batch);
+        batch.clear();
+        if (batchFlush != null) {
+            batchFlush.cancel(false);
+            batchFlush = null;
+        }
+        return frames;
+    }
+
+    private void writeBatch(List<Frame> frames) {
+        try {
+            Frame frame = frames.size() == 1 ? frames.get(0) : Frame.batch(frames);
+            synchronized (out) {
+                frame.write(out);
+            }
+        } catch (IOException e) {
+            for (Frame frame : frames) {
+                CompletableFuture<Frame> future = pending.remove(frame.getId());
+                if (future != null) {
+                    future.completeExceptionally(e);
+                }
+            }
+            close();
+        }
+    }
+
+    /**
+     * Sends a request and waits for its response.
+     *
+     * @throws SocketTimeoutException if no response arrives within the given timeout
+     */
+    Frame call(Frame request, int timeoutMillis, Batching batching) throws IOException, InterruptedException {
+        long id = ids.incrementAndGet();
+        CompletableFuture<Frame> future = send(id, request, batching);
+        try {
+            return timeoutMillis > 0
+                ? future.get(timeoutMillis, TimeUnit.MILLISECONDS)
+                : future.get();
+        } catch (TimeoutException e) {
+            // the late response will be discarded
+            throw new SocketTimeoutException("No response within " + timeoutMillis + " ms");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException)cause : new IOException(cause);
+        } finally {
+            pending.remove(id);
+        }
+    }
+
+    /**
+     * Sends a request without waiting for its response.
+     * If the request is {@link Frame#CANCELLABLE}, cancelling the returned future
+     * sends a cancel frame, so that the server stops working on it.
+     *
+     * @return a future which is completed with the response, or fails
+     *         with a SocketTimeoutException if no response arrives within the given timeout
+     */
+    CompletableFuture<Frame> callAsync(Frame request, int timeoutMillis, Batching batching) {
+        long id = ids.incrementAndGet();
+        CompletableFuture<Frame> future = send(id, request, batching);
+        if (request.hasFlag(Frame.CANCELLABLE)) {
+            future.whenComplete((response, error) -> {
+                if (future.isCancelled() && pending.remove(id) != null) {
+                    cancel(id);
+                }
+            });
+        }
+        if (timeoutMillis > 0 && !future.isDone()) {
+            ScheduledFuture<?> timeout = timer.schedule(() -> {
+                if (pending.remove(id) != null) {
+                    future.completeExceptionally(new SocketTimeoutException("No response within " + timeoutMillis + " ms"));
+                }
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+            future.whenComplete((response, error) -> timeout.cancel(false));
+        }
+        return future;
+    }
+
+    private void cancel(long id) {
+        if (closed) {
+            return;
+        }
+        synchronized (batch) {
+            if (batch.removeIf(request -> request.getId() == id)) {
+                return; // not sent yet
+            }
+        }
+        try {
+            synchronized (out) {
+                new Frame(Frame.CANCEL, id, new byte[0]).write(out);
+            }
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    @Override
+    public void run() {
+        IOException error = null;
+        try {
+            while (!closed) {
+                Frame frame = Frame.read(in);
+                if (Streams.isStreamFrame(frame.getType())) {
+                    streams.handle(frame);
+                } else if (frame.getType() == Frame.BATCH) {
+                    for (Frame response : frame.unbatch()) {
+                        complete(response);
+                    }
+                } else {
+                    complete(frame);
+                }
+            }
+        } catch (EOFException e) {
+            error = new EOFException("Connection closed by server");
+        } catch (IOException e) {
+            error = e;
+        } finally {
+            closed = true;
+            IOException cause = error != null ? error : new IOException("Connection closed");
+            failPending(cause);
+            streams.close(cause);
+            try {
+                socket.close();
+            } catch (IOException ioe) {
+                log.debug("Error closing connection", ioe);
+            }
+        }
+    }
+
+    private void complete(Frame response) {
+        CompletableFuture<Frame> future = pending.remove(response.getId());
+        if (future != null) {
+            future.complete(response);
+        }
+    }
+
+    private void failPending(IOException error) {
+        for (Long id : pending.keySet()) {
+            CompletableFuture<Frame> future = pending.remove(id);
+            if (future != null) {
+                future.completeExceptionally(error);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            socket.close(); // wakes up the reader thread, which fails pending calls
+        } catch (IOException e) {
+            log.debug("Error closing connection", e);
+        }
+    }
+}
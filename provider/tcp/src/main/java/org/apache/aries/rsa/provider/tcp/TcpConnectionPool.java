@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.security.AccessController;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps a fixed number of long-lived {@link TcpConnection}s per remote address
+ * or Unix domain socket, which are shared by all proxies calling endpoints
+ * at that address.
+ * Connections are opened lazily and replaced when they fail.
+ */
+class TcpConnectionPool implements Closeable {
+
+    private final Map<String, Slots> slots = new HashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "aries-rsa-tcp-client-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService streamExecutor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "aries-rsa-tcp-client-stream");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private boolean closed;
+
+    /**
+     * Returns an open connection to the given address.
+     *
+     * @param host the remote host
+     * @param port the remote port
+     * @param size the number of connections to spread calls on
+     * @return an open connection
+     * @throws IOException if a new connection cannot be established
+     */
+    TcpConnection getConnection(String host, int port, int size) throws IOException {
+        return getSlots(host + ":" + port, size, () -> new TcpConnection(openSocket(host, port), timer, streamExecutor)).next();
+    }
+
+    /**
+     * Returns an open connection to the given Unix domain socket.
+     *
+     * @param path the path of the socket file
+     * @param size the number of connections to spread calls on
+     * @return an open connection
+     * @throws IOException if a new connection cannot be established
+     */
+    TcpConnection getConnection(Path path, int size) throws IOException {
+        return getSlots("unix:" + path, size, () -> new TcpConnection(UnixSockets.connect(path), path, timer, streamExecutor)).next();
+    }
+
+    private synchronized Slots getSlots(String address, int size, Connector connector) throws IOException {
+        if (closed) {
+            throw new IOException("Connection pool is closed");
+        }
+        return slots.computeIfAbsent(address, k -> new Slots(connector, size));
+    }
+
+    private static Socket openSocket(String host, int port) throws IOException {
+        try {
+            return AccessController.doPrivileged(new PrivilegedExceptionAction<Socket>() {
+
+                @Override
+                public Socket run() throws IOException {
+                    return new Socket(host, port);
+                }
+            });
+        } catch (PrivilegedActionException e) {
+            throw (IOException)e.getException();
+        }
+    }
+
+    /**
+     * Returns the number of open pooled connections.
+     */
+    synchronized int getConnectionCount() {
+        int count = 0;
+        for (Slots s : slots.values()) {
+            count += s.getOpenCount();
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        for (Slots s : slots.values()) {
+            s.close();
+        }
+        slots.clear();
+        timer.shutdownNow();
+        streamExecutor.shutdownNow();
+    }
+
+    private interface Connector {
+        TcpConnection connect() throws IOException;
+    }
+
+    private static class Slots implements Closeable {
+        private final Connector connector;
+        private final TcpConnection[] connections;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        Slots(Connector connector, int size) {
+            this.connector = connector;
+            this.connections = new TcpConnection[Math.max(1, size)];
+        }
+
+        TcpConnection next() throws IOException {
+            int index = (counter.getAndIncrement() & Integer.MAX_VALUE) % connections.length;
+            synchronized (connections) {
+                TcpConnection connection = connections[index];
+                if (connection == null || connection.isClosed()) {
+                    connection = connector.connect();
+                    connections[index] = connection;
+                }
+                return connection;
+            }
+        }
+
+        int getOpenCount() {
+            int count = 0;
+            synchronized (connections) {
+                for (TcpConnection connection : connections) {
+                    if (connection != null && !connection.isClosed()) {
+                        count++;
+                    }
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public void close() {
+            synchronized (connections) {
+                for (TcpConnection connection : connections) {
+                    if (connection != null) {
+                        connection.close();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -19,9 +19,12 @@
 package org.apache.aries.rsa.provider.tcp;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.function.Consumer;
 
 import org.apache.aries.rsa.spi.Endpoint;
@@ -36,6 +39,15 @@ public class TcpEndpoint implements Endpoint {
     private String hostname;
     private int port;
     private int numThreads;
+    private int ioThreads;
+    private boolean virtualThreads;
+    private String serializer;
+    private int maxConcurrentCalls;
+    private int maxQueuedCalls;
+    private int bulkheadThreads;
+    private int bulkheadQueueSize;
+    private Compression compression;
+    private String unixSocket;
     private Consumer<TcpEndpoint> closeCallback;
 
     private EndpointDescription epd;
@@ -52,6 +64,15 @@ public class TcpEndpoint implements Endpoint {
         port = parser.getPort(); // this may initially be 0 for dynamic port
         hostname = parser.getHostname();
         numThreads =  parser.getNumThreads();
+        ioThreads = parser.getIoThreads();
+        virtualThreads = parser.isVirtualThreads();
+        serializer = parser.getSerializer();
+        maxConcurrentCalls = parser.getMaxConcurrentCalls();
+        maxQueuedCalls = parser.getMaxQueuedCalls();
+        bulkheadThreads = parser.getBulkheadThreads();
+        bulkheadQueueSize = parser.getBulkheadQueueSize();
+        compression = parser.getCompression();
+        unixSocket = parser.getUnixSocket();
         updateEndpointDescription(effectiveProperties);
     }
 
@@ -61,7 +82,25 @@ public class TcpEndpoint implements Endpoint {
         String endpointId = String.format("tcp://%s:%s/%s", hostname, port, parser.getId());
         effectiveProperties.put(RemoteConstants.ENDPOINT_ID, endpointId);
         effectiveProperties.put(RemoteConstants.SERVICE_EXPORTED_CONFIGS, "");
-        effectiveProperties.put(RemoteConstants.SERVICE_INTENTS, Arrays.asList("osgi.basic", "osgi.async"));
+        List<String> intents = new ArrayList<>(Arrays.asList("osgi.basic", "osgi.async"));
+        if (compression.isEnabled()) {
+            // importers compress their requests like the exporter compresses responses
+            intents.add(Compression.INTENT);
+            effectiveProperties.put(EndpointPropertiesParser.COMPRESSION_THRESHOLD_KEY, compression.getThreshold());
+            effectiveProperties.put(EndpointPropertiesParser.COMPRESSION_LEVEL_KEY, compression.getLevel());
+        }
+        effectiveProperties.put(RemoteConstants.SERVICE_INTENTS, intents);
+        effectiveProperties.put(EndpointPropertiesParser.PROTOCOL_VERSION_KEY, Frame.PROTOCOL_VERSION);
+        if (unixSocket != null) {
+            // importers on the same host may connect to the socket instead of the port
+            effectiveProperties.put(EndpointPropertiesParser.UNIX_SOCKET_KEY, unixSocket);
+            effectiveProperties.put(EndpointPropertiesParser.HOST_ID_KEY, UnixSockets.getHostId());
+        } else {
+            effectiveProperties.remove(EndpointPropertiesParser.UNIX_SOCKET_KEY);
+            effectiveProperties.remove(EndpointPropertiesParser.HOST_ID_KEY);
+        }
+        // advertise the serializer, so importers use it even if it was not configured explicitly
+        effectiveProperties.put(EndpointPropertiesParser.SERIALIZER_KEY, serializer);
 
         // tck tests for one such property ... so we provide it
         effectiveProperties.put(TcpProvider.TCP_CONFIG_TYPE + ".id", endpointId);
@@ -83,10 +122,56 @@ public class TcpEndpoint implements Endpoint {
         updateEndpointDescription(epd.getProperties());
     }
 
+    /**
+     * Returns the path of the Unix domain socket the endpoint is available on, or null if there is none.
+     */
+    public String getUnixSocket() {
+        return unixSocket;
+    }
+
+    public void setUnixSocket(String unixSocket) {
+        if (Objects.equals(this.unixSocket, unixSocket))
+            return;
+        this.unixSocket = unixSocket;
+        updateEndpointDescription(epd.getProperties());
+    }
+
     public int getNumThreads() {
         return numThreads;
     }
 
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public String getSerializer() {
+        return serializer;
+    }
+
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    public int getMaxQueuedCalls() {
+        return maxQueuedCalls;
+    }
+
+    public int getBulkheadThreads() {
+        return bulkheadThreads;
+    }
+
+    public int getBulkheadQueueSize() {
+        return bulkheadQueueSize;
+    }
+
+    Compression getCompression() {
+        return compression;
+    }
+
     @Override
     public EndpointDescription description() {
         return this.epd;
@@ -18,28 +18,56 @@
  */
 package org.apache.aries.rsa.provider.tcp;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.io.OutputStream;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.net.UnknownHostException;
+import java.nio.file.Path;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
-import java.util.function.Supplier;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.aries.rsa.provider.tcp.ser.BasicObjectInputStream;
 import org.apache.aries.rsa.provider.tcp.ser.BasicObjectOutputStream;
+import org.apache.aries.rsa.provider.tcp.ser.Serializer;
+import org.apache.aries.rsa.spi.Deadline;
+import org.apache.aries.rsa.spi.ServiceOverloadedException;
 import org.apache.aries.rsa.provider.tcp.ser.VersionMarker;
 import org.osgi.framework.ServiceException;
 import org.osgi.framework.Version;
 import org.osgi.util.promise.Deferred;
 import org.osgi.util.promise.Promise;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * The InvocationHandler backing the client-side service proxy,
@@ -47,19 +75,221 @@ import org.osgi.util.promise.Promise;
  * over a TCP connection, to be executed by the remote service.
  */
 public class TcpInvocationHandler implements InvocationHandler {
+    private Logger log = LoggerFactory.getLogger(TcpInvocationHandler.class);
     private String host;
     private int port;
     private String endpointId;
     private ClassLoader cl;
     private int timeoutMillis;
+    private TcpConnectionPool pool;
+    private int connections;
+    private AsyncExecutor asyncExecutor;
+    private Serializer serializer;
+    private Compression compression;
+    private volatile Path unixSocket;
+    private int protocolVersion;
+    private Batching batching = Batching.NONE;
+    private Map<Method, String> methodKeys = new ConcurrentHashMap<>();
+    private Map<Method, String> methodIds = new ConcurrentHashMap<>();
+    private CallMetrics metrics;
 
     public TcpInvocationHandler(ClassLoader cl, String host, int port, String endpointId, int timeoutMillis)
         throws UnknownHostException, IOException {
+        this(cl, host, port, endpointId, timeoutMillis, null, 0, null, Serializers.DEFAULT, Compression.NONE);
+    }
+
+    /**
+     * Creates an invocation handler which sends its calls over the pooled
+     * connections of the given pool, or opens a new connection per call
+     * if the pool is null or the number of connections is zero.
+     * Asynchronous calls run on the given executor, or if it is null,
+     * on the common pool (Future, CompletionStage) or a new thread (Promise).
+     * The executor may also limit the number of pending asynchronous calls.
+     * Pooled connections encode calls with the given serializer and compress them
+     * as configured by the endpoint.
+     */
+    TcpInvocationHandler(ClassLoader cl, String host, int port, String endpointId, int timeoutMillis,
+            TcpConnectionPool pool, int connections, AsyncExecutor asyncExecutor, Serializer serializer,
+            Compression compression) {
         this.cl = cl;
         this.host = host;
         this.port = port;
         this.endpointId = endpointId;
         this.timeoutMillis = timeoutMillis;
+        this.pool = connections > 0 ? pool : null;
+        this.connections = connections;
+        this.asyncExecutor = asyncExecutor;
+        this.serializer = serializer;
+        this.compression = compression;
+    }
+
+    /**
+     * Records the calls of this handler in the given metrics.
+     */
+    void setMetrics(CallMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sends pooled calls over the Unix domain socket of a co-located endpoint
+     * instead of its TCP port, for as long as the socket can be connected.
+     */
+    void setUnixSocket(Path unixSocket) {
+        this.unixSocket = unixSocket;
+    }
+
+    /**
+     * Enables the protocol features of the given version, as advertised by the endpoint.
+     */
+    void setProtocolVersion(int protocolVersion) {
+        this.protocolVersion = protocolVersion;
+    }
+
+    /**
+     * Collects pooled calls into batch frames, if the endpoint understands them.
+     */
+    void setBatching(Batching batching) {
+        this.batching = batching;
+    }
+
+    /**
+     * Computes the ids of the methods of the proxied interfaces up front, so that methods
+     * whose ids collide are called by key instead.
+     */
+    void setInterfaces(Class<?>[] interfaces) {
+        Set<String> keys = new HashSet<>();
+        for (Class<?> iface : interfaces) {
+            for (Method method : iface.getMethods()) {
+                keys.add(methodKey(method));
+            }
+        }
+        Map<String, String> refs = MethodInvoker.getMethodRefs(keys);
+        for (Class<?> iface : interfaces) {
+            for (Method method : iface.getMethods()) {
+                methodIds.put(method, refs.get(methodKey(method)));
+            }
+        }
+    }
+
+    String getEndpointId() {
+        return endpointId;
+    }
+
+    private Batching batching() {
+        return protocolVersion >= 3 ? batching : Batching.NONE;
+    }
+
+    private boolean sendsDeadline(int timeout) {
+        return protocolVersion >= 1 && timeout > 0;
+    }
+
+    /**
+     * Returns the deadline of a call starting now in terms of {@link System#nanoTime()},
+     * which is the configured timeout limited by the {@link Deadline} of the remote call
+     * the current thread is serving, or 0 if there is neither.
+     */
+    private long deadline() {
+        long timeout = Math.min(timeoutMillis > 0 ? timeoutMillis : Long.MAX_VALUE, Deadline.remainingMillis());
+        return timeout == Long.MAX_VALUE ? 0 : System.nanoTime() + timeout * 1000000L;
+    }
+
+    /**
+     * Returns the milliseconds left until the given deadline, or 0 if there is none.
+     *
+     * @throws SocketTimeoutException if the deadline has expired, so the request need not be sent
+     */
+    private static int remainingMillis(long deadline) throws SocketTimeoutException {
+        if (deadline == 0) {
+            return 0;
+        }
+        long remaining = (deadline - System.nanoTime()) / 1000000L;
+        if (remaining <= 0) {
+            throw new SocketTimeoutException("Deadline expired before sending the request");
+        }
+        return (int)Math.min(remaining, Integer.MAX_VALUE);
+    }
+
+    private boolean sendsCancel() {
+        return protocolVersion >= 2;
+    }
+
+    private boolean sendsPing() {
+        return protocolVersion >= 4;
+    }
+
+    private boolean sendsStreams() {
+        return protocolVersion >= 5;
+    }
+
+    private boolean sendsAttachments() {
+        return protocolVersion >= 6;
+    }
+
+    private boolean sendsMethodIds() {
+        return protocolVersion >= 7;
+    }
+
+    /**
+     * Prepares for the first calls, so they don't pay for it: initializes the parameter
+     * and return classes of the interface methods and their serialization descriptors,
+     * computes the method keys, opens the pooled connections and pings the server on each.
+     * Failures are only logged, as calls connect again anyway.
+     */
+    void warmUp(Class<?>[] interfaces) {
+        for (Class<?> iface : interfaces) {
+            for (Method method : iface.getMethods()) {
+                initialize(method.getGenericReturnType());
+                for (Type type : method.getGenericParameterTypes()) {
+                    initialize(type);
+                }
+                methodKey(method);
+                methodRef(method);
+            }
+        }
+        if (pool == null) {
+            return;
+        }
+        try {
+            Set<TcpConnection> opened = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (int i = 0; i < connections; i++) {
+                opened.add(getConnection()); // the pool hands out its connections in turn
+            }
+            if (sendsPing()) {
+                for (TcpConnection connection : opened) {
+                    connection.call(new Frame(Frame.PING, 0, new byte[0]), timeoutMillis, Batching.NONE);
+                }
+            }
+            log.debug("Warmed up {} connections to {}:{}", opened.size(), host, port);
+        } catch (IOException e) {
+            log.info("Error warming up connections to {}:{}", host, port, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void initialize(Type type) {
+        if (type instanceof ParameterizedType) {
+            initialize(((ParameterizedType)type).getRawType());
+            for (Type arg : ((ParameterizedType)type).getActualTypeArguments()) {
+                initialize(arg); // e.g. the value type of a Future
+            }
+        } else if (type instanceof Class) {
+            Class<?> clazz = (Class<?>)type;
+            while (clazz.isArray()) {
+                clazz = clazz.getComponentType();
+            }
+            if (clazz.isPrimitive()) {
+                return;
+            }
+            try {
+                Class.forName(clazz.getName(), true, clazz.getClassLoader());
+                if (Serializable.class.isAssignableFrom(clazz)) {
+                    ObjectStreamClass.lookup(clazz);
+                }
+            } catch (ClassNotFoundException | LinkageError e) {
+                log.debug("Error initializing {}", clazz.getName(), e);
+            }
+        }
     }
 
     @Override
@@ -69,71 +299,347 @@ public class TcpInvocationHandler implements InvocationHandler {
             return createFutureResult(method, args);
         } else if (Promise.class.isAssignableFrom(method.getReturnType())) {
             return createPromiseResult(method, args);
-        } else {
-            return handleSyncCall(method, args);
+        } else if (metrics == null) {
+            return handleSyncCall(method, args, deadline());
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Object result = handleSyncCall(method, args, deadline());
+            failed = false;
+            return result;
+        } finally {
+            metrics.record(methodKey(method), System.nanoTime() - start, failed, 0, 0);
         }
     }
 
     private Object createFutureResult(final Method method, final Object[] args) {
-        return CompletableFuture.supplyAsync(new Supplier<Object>() {
-            public Object get() {
-                try {
-                    return handleSyncCall(method, args);
-                } catch (RuntimeException e) {
-                    throw e;
-                } catch (Throwable e) {
-                    throw new RuntimeException(e);
-                }
-            }
-        });
+        return callAsync(method, args, ForkJoinPool.commonPool());
     }
 
     private Object createPromiseResult(final Method method, final Object[] args) {
         final Deferred<Object> deferred = new Deferred<>();
-        new Thread(new Runnable() {
+        callAsync(method, args, command -> new Thread(command).start()).whenComplete((value, error) -> {
+            if (error != null) {
+                deferred.fail(error);
+            } else {
+                deferred.resolve(value);
+            }
+        });
+        return deferred.getPromise();
+    }
 
-            @Override
-            public void run() {
+    /**
+     * Starts an asynchronous call, which is run on the async executor or the given fallback executor.
+     * Pooled connections send the request right away and do not occupy a thread while
+     * waiting for the response, which is then decoded on the executor.
+     */
+    private CompletableFuture<Object> callAsync(Method method, Object[] args, Executor fallback) {
+        long start = System.nanoTime();
+        CompletableFuture<Object> result = doCallAsync(method, args, fallback);
+        if (metrics != null) {
+            result.whenComplete((value, error) ->
+                metrics.record(methodKey(method), System.nanoTime() - start, error != null, 0, 0));
+        }
+        return result;
+    }
+
+    private CompletableFuture<Object> doCallAsync(Method method, Object[] args, Executor fallback) {
+        if (asyncExecutor != null && !asyncExecutor.tryAcquire()) {
+            CompletableFuture<Object> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(new ServiceException("Too many pending calls to " + host + ":" + port
+                + " method: " + method.getName(), ServiceException.ASYNC_ERROR, new RejectedExecutionException()));
+            return rejected;
+        }
+        Executor executor = asyncExecutor != null ? asyncExecutor : fallback;
+        CompletableFuture<Object> result = pool != null
+            ? callPooledAsync(method, args, asyncExecutor != null ? asyncExecutor : ForkJoinPool.commonPool())
+            : callBlockingAsync(method, args, executor, deadline());
+        if (asyncExecutor != null) {
+            result.whenComplete((value, error) -> asyncExecutor.release());
+        }
+        return result;
+    }
+
+    private CompletableFuture<Object> callBlockingAsync(Method method, Object[] args, Executor executor, long deadline) {
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
                 try {
-                    deferred.resolve(handleSyncCall(method, args));
+                    result.complete(handleSyncCall(method, args, deadline));
                 } catch (Throwable e) {
-                    deferred.fail(e);
+                    result.completeExceptionally(e);
                 }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(toServiceException(method, e));
+        }
+        return result;
+    }
+
+    private CompletableFuture<Object> callPooledAsync(Method method, Object[] args, Executor executor) {
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        Frame request;
+        CompletableFuture<Frame> response;
+        TcpConnection connection;
+        Streams.Call streams = null;
+        try {
+            connection = getConnection();
+            if (sendsStreams() && Streams.hasStreams(args)) {
+                streams = connection.streams().export(args);
+                args = streams.getArgs();
             }
-        }).start();
-        return deferred.getPromise();
+            int timeout = remainingMillis(deadline());
+            request = encodeRequest(method, args, sendsCancel(), timeout);
+            response = connection.callAsync(request, timeout, batching());
+        } catch (Throwable e) {
+            if (streams != null) {
+                streams.finish();
+            }
+            result.completeExceptionally(toServiceException(method, e));
+            return result;
+        }
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                response.cancel(false); // tells the server to stop working on it
+            }
+        });
+        CompletableFuture<Frame> complete = response;
+        if (streams != null) {
+            Streams.Call callStreams = streams;
+            CompletableFuture<Void> copied = callStreams.start();
+            response.whenComplete((frame, error) -> callStreams.finish());
+            complete = response.thenCombine(copied, (frame, none) -> frame);
+        }
+        complete.whenCompleteAsync((frame, error) -> {
+            Object[] decoded;
+            try {
+                if (error != null) {
+                    throw unwrap(error);
+                }
+                addBytes(method, request, frame);
+                decoded = decodeResponse(frame, connection.streams());
+            } catch (Throwable e) {
+                result.completeExceptionally(toServiceException(method, e));
+                return;
+            }
+            try {
+                result.complete(getResult(method, decoded));
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        }, executor);
+        return result;
+    }
+
+    private Object handleSyncCall(Method method, Object[] args, long deadline) throws Throwable {
+        Object[] response;
+        try {
+            int timeout = remainingMillis(deadline);
+            response = pool != null ? callPooled(method, args, timeout) : callOneShot(method, args, timeout);
+        } catch (Throwable e) {
+            throw toServiceException(method, e);
+        }
+        return getResult(method, response);
     }
 
-    private Object handleSyncCall(Method method, Object[] args) throws Throwable {
-        Throwable error;
-        Object result;
+    private Object getResult(Method method, Object[] response) throws Throwable {
+        Throwable error = (Throwable) response[0];
+        if (error == null)
+            return response[1];
+        else if (error instanceof InvocationTargetException)
+            throw error.getCause(); // exception thrown from remotely invoked method (not our problem)
+        else if (error instanceof ServiceOverloadedException)
+            throw new ServiceOverloadedException("Overloaded calling " + host + ":" + port + " method: " + method.getName(), error);
+        else
+            throw toServiceException(method, error); // exception thrown by provider itself
+    }
+
+    private ServiceException toServiceException(Method method, Throwable e) {
+        String reason = e instanceof SocketTimeoutException ? "Timeout" : "Error";
+        return new ServiceException(reason + " calling " + host + ":" + port + " method: " + method.getName(), ServiceException.REMOTE, e);
+    }
+
+    private Object[] callOneShot(Method method, Object[] args, int timeout) throws Exception {
         try (
                 Socket socket = openSocket();
                 ObjectOutputStream out = new BasicObjectOutputStream(socket.getOutputStream())
             ) {
-            socket.setSoTimeout(timeoutMillis);
-            out.writeUTF(endpointId);
-            out.writeObject(method.getName());
+            socket.setSoTimeout(timeout);
+            // servers without a protocol version predate method keys and only understand names
+            writeRequest(out, protocolVersion >= 1 ? methodRef(method) : method.getName(), args, timeout);
+            return readResponse(socket.getInputStream());
+        }
+    }
+
+    private Object[] callPooled(Method method, Object[] args, int timeout) throws Exception {
+        if (sendsStreams() && Streams.hasStreams(args)) {
+            return callPooledWithStreams(method, args, timeout);
+        }
+        Frame request = encodeRequest(method, args, false, timeout);
+        TcpConnection connection = getConnection();
+        Frame response = connection.call(request, timeout, batching());
+        addBytes(method, request, response);
+        return decodeResponse(response, connection.streams());
+    }
+
+    private Object[] callPooledWithStreams(Method method, Object[] args, int timeout) throws Exception {
+        TcpConnection connection = getConnection();
+        Streams.Call streams = connection.streams().export(args);
+        CompletableFuture<Void> copied = streams.start();
+        Frame request = encodeRequest(method, streams.getArgs(), false, timeout);
+        Frame response;
+        try {
+            response = connection.call(request, timeout, batching());
+        } finally {
+            streams.finish();
+        }
+        addBytes(method, request, response);
+        Object[] decoded = decodeResponse(response, connection.streams());
+        try {
+            copied.get(); // the OutputStream arguments are complete when the call returns
+        } catch (ExecutionException e) {
+            Throwable cause = unwrap(e.getCause());
+            throw cause instanceof Exception ? (Exception)cause : new IOException(cause);
+        }
+        return decoded;
+    }
+
+    /**
+     * Counts the payload of a pooled call, not including the data of its streams.
+     */
+    private void addBytes(Method method, Frame request, Frame response) {
+        if (metrics != null) {
+            metrics.addBytes(methodKey(method), response.getLength(), request.getLength());
+        }
+    }
+
+    private String methodKey(Method method) {
+        return methodKeys.computeIfAbsent(method, MethodInvoker::getMethodKey);
+    }
+
+    /**
+     * Returns what identifies the method in requests, its id or, for older servers, its key.
+     */
+    private String methodRef(Method method) {
+        return sendsMethodIds() ? methodIds.computeIfAbsent(method, MethodInvoker::getMethodId) : methodKey(method);
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        while ((e instanceof CompletionException || e instanceof UncheckedIOException) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e;
+    }
+
+    private TcpConnection getConnection() throws IOException {
+        Path path = unixSocket;
+        if (path != null) {
+            try {
+                return pool.getConnection(path, connections);
+            } catch (IOException e) {
+                log.info("Error connecting to {}, using {}:{} instead", path, host, port, e);
+                unixSocket = null;
+            }
+        }
+        return pool.getConnection(host, port, connections);
+    }
+
+    /**
+     * Encodes a request frame, whose payload names the serializer and endpoint
+     * followed by the method key and arguments in the serializer's format,
+     * which are compressed if they are large enough, and the attachments
+     * of large byte array and ByteBuffer arguments.
+     * The connection assigns the frame's correlation id.
+     */
+    private Frame encodeRequest(Method method, Object[] args, boolean cancellable, int timeout) throws IOException {
+        if (!sendsAttachments()) {
+            return encodeRequest(Frame.REQUEST, method, args, cancellable, timeout, null);
+        }
+        if (!Attachments.hasAttachable(args)) {
+            return encodeRequest(Frame.ATTACHMENT_REQUEST, method, args, cancellable, timeout, null);
+        }
+        Attachments attachments = new Attachments();
+        return encodeRequest(Frame.ATTACHMENT_REQUEST, method, attachments.export(args), cancellable, timeout, attachments);
+    }
+
+    private Frame encodeRequest(byte type, Method method, Object[] args, boolean cancellable, int timeout,
+            Attachments attachments) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        DataOutputStream dout = new DataOutputStream(bout);
+        byte flags = cancellable ? Frame.CANCELLABLE : 0;
+        if (sendsDeadline(timeout)) {
+            dout.writeInt(timeout); // the server drops the call once the caller has given up
+            flags |= Frame.DEADLINE;
+        }
+        dout.writeUTF(serializer.getName());
+        dout.writeUTF(endpointId);
+        if (!compression.isEnabled()) {
+            writeCall(dout, method, args);
+            return frame(type, flags, bout, attachments);
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        writeCall(body, method, args);
+        flags |= Frame.ACCEPTS_COMPRESSED;
+        if (compression.write(body.toByteArray(), 0, body.size(), bout)) {
+            flags |= Frame.COMPRESSED;
+        }
+        return frame(type, flags, bout, attachments);
+    }
+
+    private static Frame frame(byte type, byte flags, ByteArrayOutputStream bout, Attachments attachments)
+            throws IOException {
+        return attachments != null ? attachments.frame(type, flags, 0, bout.toByteArray())
+            : new Frame(type, flags, 0, bout.toByteArray());
+    }
+
+    private void writeCall(OutputStream os, Method method, Object[] args) throws IOException {
+        try (ObjectOutput out = serializer.newOutput(os)) {
+            out.writeObject(methodRef(method));
             out.writeObject(args);
-            out.flush();
-
-            try (BasicObjectInputStream in = new BasicObjectInputStream(socket.getInputStream())) {
-                in.addClassLoader(cl);
-                error = (Throwable) in.readObject();
-                result = readReplaceVersion(in.readObject());
-            }
-            if (error == null)
-                return result;
-            else if (error instanceof InvocationTargetException)
-                error = error.getCause(); // exception thrown from remotely invoked method (not our problem)
-            else
-                throw error; // exception thrown by provider itself
-        } catch (SocketTimeoutException e) {
-            throw new ServiceException("Timeout calling " + host + ":" + port + " method: " + method.getName(), ServiceException.REMOTE, e);
-        } catch (Throwable e) {
-            throw new ServiceException("Error calling " + host + ":" + port + " method: " + method.getName(), ServiceException.REMOTE, e);
         }
-        throw error;
+    }
+
+    /**
+     * Decodes a response frame, replacing a stream result by a stream connected to the server
+     * and an attachment marker by the attachment.
+     */
+    private Object[] decodeResponse(Frame frame, Streams streams) throws Exception {
+        byte[] response = frame.getPayload();
+        if (frame.hasFlag(Frame.COMPRESSED)) {
+            response = Compression.inflate(response, 0, response.length);
+        }
+        try (ObjectInput in = serializer.newInput(new ByteArrayInputStream(response), cl)) {
+            Object error = in.readObject();
+            Object result = readReplaceVersion(in.readObject());
+            if (result instanceof StreamMarker) {
+                result = streams.receive((StreamMarker)result);
+            }
+            Object[] decoded = new Object[] { error, result };
+            if (result instanceof AttachmentMarker) {
+                Attachments.resolve(decoded, frame.getPayload());
+            }
+            return decoded;
+        }
+    }
+
+    private void writeRequest(ObjectOutputStream out, String methodName, Object[] args, int timeout) throws IOException {
+        out.writeUTF(endpointId);
+        if (sendsDeadline(timeout)) {
+            out.writeObject(timeout); // an Integer, which servers tell apart from the method name
+        }
+        out.writeObject(methodName);
+        out.writeObject(args);
+        out.flush();
+    }
+
+    private Object[] readResponse(InputStream is) throws Exception {
+        try (BasicObjectInputStream in = new BasicObjectInputStream(is)) {
+            in.addClassLoader(cl);
+            Object error = in.readObject();
+            Object result = readReplaceVersion(in.readObject());
+            return new Object[] { error, result };
+        }
     }
 
     private Socket openSocket() throws UnknownHostException, IOException {
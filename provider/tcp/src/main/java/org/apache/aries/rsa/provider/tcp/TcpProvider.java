@@ -19,23 +19,45 @@
 package org.apache.aries.rsa.provider.tcp;
 
 import java.io.IOException;
-import java.lang.reflect.InvocationHandler;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Proxy;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
 
 import org.apache.aries.rsa.annotations.RSADistributionProvider;
+import org.apache.aries.rsa.provider.tcp.metrics.EndpointStats;
+import org.apache.aries.rsa.provider.tcp.metrics.TcpMetricsMXBean;
+import org.apache.aries.rsa.provider.tcp.ser.ClassResolutionCache;
+import org.apache.aries.rsa.provider.tcp.ser.Serializer;
 import org.apache.aries.rsa.spi.DistributionProvider;
 import org.apache.aries.rsa.spi.Endpoint;
 import org.apache.aries.rsa.spi.IntentUnsatisfiedException;
 import org.apache.aries.rsa.util.StringPlus;
 import org.osgi.framework.BundleContext;
+import org.osgi.framework.BundleEvent;
+import org.osgi.framework.BundleListener;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.Deactivate;
+import org.osgi.service.component.annotations.Reference;
+import org.osgi.service.component.annotations.ReferenceCardinality;
+import org.osgi.service.component.annotations.ReferencePolicy;
 import org.osgi.service.remoteserviceadmin.EndpointDescription;
 import org.osgi.service.remoteserviceadmin.RemoteConstants;
 import org.slf4j.Logger;
@@ -53,16 +75,84 @@ import org.slf4j.LoggerFactory;
 @Component(property = { //
         RemoteConstants.REMOTE_INTENTS_SUPPORTED + "=osgi.basic",
         RemoteConstants.REMOTE_INTENTS_SUPPORTED + "=osgi.async",
+        RemoteConstants.REMOTE_INTENTS_SUPPORTED + "=" + Compression.INTENT,
         RemoteConstants.REMOTE_CONFIGS_SUPPORTED + "=" + TcpProvider.TCP_CONFIG_TYPE //
 })
 public class TcpProvider implements DistributionProvider {
     static final String TCP_CONFIG_TYPE = "aries.tcp";
-    private static final String[] SUPPORTED_INTENTS = { "osgi.basic", "osgi.async"};
+    private static final String[] SUPPORTED_INTENTS = { "osgi.basic", "osgi.async", Compression.INTENT};
 
     private Logger logger = LoggerFactory.getLogger(TcpProvider.class);
 
     private Map<Integer, TcpServer> servers = new HashMap<>();
 
+    private TcpConnectionPool connectionPool = new TcpConnectionPool();
+
+    private ExecutorService virtualThreadExecutor;
+
+    private Map<String, ImportedEndpoint> imports = new HashMap<>();
+
+    private TcpProviderMetrics metrics = new TcpProviderMetrics(this::getServers, this::getImportedEndpointStats,
+        connectionPool);
+
+    private ServiceRegistration<TcpMetricsMXBean> metricsRegistration;
+
+    private ObjectName metricsName;
+
+    private Serializers serializers = new Serializers();
+
+    private BundleContext context;
+
+    private BundleListener classCacheEvictor = event -> {
+        int type = event.getType();
+        if (type == BundleEvent.RESOLVED || type == BundleEvent.UNRESOLVED || type == BundleEvent.UNINSTALLED) {
+            ClassResolutionCache.getInstance().clear();
+        }
+    };
+
+    @Reference(cardinality = ReferenceCardinality.MULTIPLE, policy = ReferencePolicy.DYNAMIC)
+    public void bindSerializer(Serializer serializer) {
+        serializers.add(serializer);
+    }
+
+    public void unbindSerializer(Serializer serializer) {
+        serializers.remove(serializer);
+    }
+
+    @Activate
+    public void activate(BundleContext context) {
+        this.context = context;
+        context.addBundleListener(classCacheEvictor);
+        metricsRegistration = context.registerService(TcpMetricsMXBean.class, metrics, null);
+        registerMBean();
+    }
+
+    private void registerMBean() {
+        try {
+            ObjectName name = new ObjectName(TcpMetricsMXBean.OBJECT_NAME);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, name);
+            metricsName = name;
+        } catch (JMException e) {
+            logger.warn("Error registering metrics MBean {}", TcpMetricsMXBean.OBJECT_NAME, e);
+        }
+    }
+
+    private void unregisterMBean() {
+        if (metricsName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsName);
+        } catch (JMException e) {
+            logger.debug("Error unregistering metrics MBean {}", metricsName, e);
+        }
+        metricsName = null;
+    }
+
+    TcpMetricsMXBean getMetrics() {
+        return metrics;
+    }
+
     @Override
     public String[] getSupportedTypes() {
         return new String[] {TCP_CONFIG_TYPE};
@@ -91,6 +181,11 @@ public class TcpProvider implements DistributionProvider {
             logger.warn("Unsupported intents found: {}. Not exporting service", intents);
             return null;
         }
+        String serializer = new EndpointPropertiesParser(effectiveProperties).getSerializer();
+        if (serializers.get(serializer) == null) {
+            logger.warn("Unknown serializer {}. Not exporting service", serializer);
+            return null;
+        }
         TcpEndpoint endpoint = new TcpEndpoint(serviceO, effectiveProperties, this::removeServer);
         addServer(serviceO, endpoint);
         return endpoint;
@@ -101,16 +196,40 @@ public class TcpProvider implements DistributionProvider {
         int port = endpoint.getPort();
         TcpServer server = servers.get(port);
         if (server == null || port == 0) {
-            server = new TcpServer(endpoint.getHostname(), port, endpoint.getNumThreads());
+            server = new TcpServer(endpoint.getHostname(), port, endpoint.getNumThreads(), endpoint.getIoThreads(),
+                endpoint.isVirtualThreads());
+            server.setSerializers(serializers);
             port = server.getPort(); // get the real port
             endpoint.setPort(port);
             servers.put(port, server);
+            bindUnixSocket(server, endpoint.getUnixSocket());
         }
-        // different services may configure different number of threads - we pick the max
-        if (endpoint.getNumThreads() > server.getNumThreads()) {
+        // the socket is shared by all services on the port, so the first service decides
+        Path unixSocket = server.getUnixSocket();
+        endpoint.setUnixSocket(unixSocket != null ? unixSocket.toString() : null);
+        // different services may configure different number of threads - we pick the max,
+        // unless the service brings its own pool
+        if (endpoint.getBulkheadThreads() <= 0 && endpoint.getNumThreads() > server.getNumThreads()) {
             server.setNumThreads(endpoint.getNumThreads());
         }
-        server.addService(endpoint.description().getId(), serviceO);
+        server.addService(endpoint.description().getId(), serviceO,
+            endpoint.getMaxConcurrentCalls(), endpoint.getMaxQueuedCalls(),
+            endpoint.getBulkheadThreads(), endpoint.getBulkheadQueueSize(), endpoint.getCompression());
+    }
+
+    private void bindUnixSocket(TcpServer server, String path) {
+        if (path == null) {
+            return;
+        }
+        if (!UnixSockets.isSupported()) {
+            logger.warn("Unix domain sockets are not supported by this Java runtime. Not listening on {}", path);
+            return;
+        }
+        try {
+            server.bindUnixSocket(Paths.get(path));
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Error listening on Unix domain socket {}", path, e);
+        }
     }
 
     private synchronized void removeServer(TcpEndpoint endpoint) {
@@ -131,15 +250,188 @@ public class TcpProvider implements DistributionProvider {
                                  Class[] interfaces,
                                  EndpointDescription endpoint)
         throws IntentUnsatisfiedException {
+        String endpointId = endpoint.getId();
+        ImportedEndpoint imported = null;
         try {
-            String endpointId = endpoint.getId();
             URI address = new URI(endpointId);
-            int timeout = new EndpointPropertiesParser(endpoint).getTimeoutMillis();
-            InvocationHandler handler = new TcpInvocationHandler(cl, address.getHost(), address.getPort(), endpointId, timeout);
+            EndpointPropertiesParser parser = new EndpointPropertiesParser(endpoint);
+            int timeout = parser.getTimeoutMillis();
+            imported = acquireImport(endpointId, parser);
+            AsyncExecutor asyncExecutor = imported.asyncExecutor;
+            int connections = parser.getConnections();
+            Serializer serializer = serializers.get(parser.getSerializer());
+            if (serializer == null) {
+                // one-shot connections always use java serialization
+                logger.warn("Unknown serializer {} for endpoint {}. Not using pooled connections",
+                    parser.getSerializer(), endpointId);
+                serializer = Serializers.DEFAULT;
+                connections = 0;
+            }
+            TcpInvocationHandler handler = new TcpInvocationHandler(cl, address.getHost(), address.getPort(), endpointId, timeout,
+                connectionPool, connections, asyncExecutor, serializer, parser.getCompression());
+            handler.setProtocolVersion(Math.min(parser.getProtocolVersion(), Frame.PROTOCOL_VERSION));
+            handler.setInterfaces(interfaces);
+            handler.setBatching(parser.getBatching());
+            handler.setMetrics(imported.metrics);
+            Path unixSocket = getLocalUnixSocket(parser);
+            if (unixSocket != null && connections > 0) {
+                handler.setUnixSocket(unixSocket);
+            }
+            if (parser.isWarmUp()) {
+                warmUp(handler, interfaces, asyncExecutor);
+            }
             return Proxy.newProxyInstance(cl, interfaces, handler);
         } catch (Exception e) {
+            if (imported != null) {
+                releaseImport(endpointId);
+            }
             throw new RuntimeException(e);
         }
     }
 
+    @Override
+    public void releaseProxy(Object proxy) {
+        if (Proxy.isProxyClass(proxy.getClass())
+            && Proxy.getInvocationHandler(proxy) instanceof TcpInvocationHandler) {
+            releaseImport(((TcpInvocationHandler)Proxy.getInvocationHandler(proxy)).getEndpointId());
+        }
+    }
+
+    /**
+     * Warms up the imported endpoint in the background, so the import is not delayed
+     * by connecting to a slow or unavailable exporter. The warm-up counts as a pending
+     * call of the async executor, so it can't exceed the executor's bounds.
+     */
+    private void warmUp(TcpInvocationHandler handler, Class[] interfaces, AsyncExecutor executor) {
+        if (!executor.tryAcquire()) {
+            logger.debug("Not warming up imported endpoint, too many pending calls");
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    handler.warmUp(interfaces);
+                } finally {
+                    executor.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            executor.release();
+            logger.debug("Not warming up imported endpoint", e); // the provider is deactivating
+        }
+    }
+
+    /**
+     * Returns the Unix domain socket of an endpoint exported on this host, or null if there is none.
+     */
+    private Path getLocalUnixSocket(EndpointPropertiesParser parser) {
+        String path = parser.getUnixSocket();
+        if (path == null || !UnixSockets.isSupported() || !UnixSockets.getHostId().equals(parser.getHostId())) {
+            return null;
+        }
+        Path unixSocket = Paths.get(path);
+        return Files.exists(unixSocket) ? unixSocket : null; // e.g. exported from another container
+    }
+
+    /**
+     * Returns the state shared by the proxies of an imported endpoint, counting the new proxy.
+     * The async settings of the endpoint's first proxy apply until all of its proxies are released.
+     */
+    private synchronized ImportedEndpoint acquireImport(String endpointId, EndpointPropertiesParser parser) {
+        int threads = Math.max(1, parser.getAsyncThreads());
+        int queueSize = Math.max(0, parser.getAsyncQueueSize());
+        boolean virtualThreads = parser.isVirtualThreads();
+        ImportedEndpoint imported = imports.get(endpointId);
+        if (imported == null) {
+            AsyncExecutor executor = virtualThreads
+                ? new AsyncExecutor(getVirtualThreadExecutor(), threads + queueSize)
+                : new AsyncExecutor("aries-rsa-tcp-async-" + endpointId, threads, queueSize);
+            imported = new ImportedEndpoint(executor, threads, queueSize, virtualThreads);
+            imports.put(endpointId, imported);
+        } else if (!imported.hasSettings(threads, queueSize, virtualThreads)) {
+            logger.info("Endpoint {} is already imported with other async settings, which apply until "
+                + "its proxies are released", endpointId);
+        }
+        imported.proxies++;
+        return imported;
+    }
+
+    /**
+     * Releases a proxy of an imported endpoint, closing the endpoint's async executor
+     * and dropping its metrics with the last one.
+     */
+    private synchronized void releaseImport(String endpointId) {
+        ImportedEndpoint imported = imports.get(endpointId);
+        if (imported != null && --imported.proxies <= 0) {
+            imports.remove(endpointId);
+            imported.asyncExecutor.close();
+        }
+    }
+
+    private synchronized Collection<TcpServer> getServers() {
+        return new ArrayList<>(servers.values());
+    }
+
+    private synchronized List<EndpointStats> getImportedEndpointStats() {
+        List<EndpointStats> stats = new ArrayList<>();
+        imports.forEach((endpointId, imported) -> {
+            AsyncExecutor executor = imported.asyncExecutor;
+            stats.add(new EndpointStats(endpointId, imported.metrics.snapshot(),
+                executor.getPendingCount(), 0, executor.getRejectedCount()));
+        });
+        return stats;
+    }
+
+    private synchronized ExecutorService getVirtualThreadExecutor() {
+        if (virtualThreadExecutor == null) {
+            virtualThreadExecutor = VirtualThreads.newPerTaskExecutor();
+        }
+        return virtualThreadExecutor;
+    }
+
+    @Deactivate
+    public void deactivate() {
+        if (context != null) {
+            context.removeBundleListener(classCacheEvictor);
+        }
+        if (metricsRegistration != null) {
+            metricsRegistration.unregister();
+            metricsRegistration = null;
+        }
+        unregisterMBean();
+        ClassResolutionCache.getInstance().clear();
+        connectionPool.close();
+        synchronized (this) {
+            for (ImportedEndpoint imported : imports.values()) {
+                imported.asyncExecutor.close();
+            }
+            imports.clear();
+            if (virtualThreadExecutor != null) {
+                virtualThreadExecutor.shutdown();
+            }
+        }
+    }
+
+    /**
+     * The state shared by the proxies of an imported endpoint.
+     */
+    private static class ImportedEndpoint {
+        final AsyncExecutor asyncExecutor;
+        final CallMetrics metrics = new CallMetrics();
+        final int asyncThreads;
+        final int asyncQueueSize;
+        final boolean virtualThreads;
+        int proxies;
+
+        ImportedEndpoint(AsyncExecutor asyncExecutor, int asyncThreads, int asyncQueueSize, boolean virtualThreads) {
+            this.asyncExecutor = asyncExecutor;
+            this.asyncThreads = asyncThreads;
+            this.asyncQueueSize = asyncQueueSize;
+            this.virtualThreads = virtualThreads;
+        }
+
+        boolean hasSettings(int threads, int queueSize, boolean virtual) {
+            return asyncThreads == threads && asyncQueueSize == queueSize && virtualThreads == virtual;
+        }
+    }
 }
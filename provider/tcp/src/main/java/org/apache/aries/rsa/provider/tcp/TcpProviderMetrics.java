@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.apache.aries.rsa.provider.tcp.metrics.EndpointStats;
+import org.apache.aries.rsa.provider.tcp.metrics.TcpMetricsMXBean;
+
+/**
+ * Exposes the metrics of the servers, imported endpoints and connection pool of a provider.
+ */
+final class TcpProviderMetrics implements TcpMetricsMXBean {
+    private final Supplier<Collection<TcpServer>> servers;
+    private final Supplier<List<EndpointStats>> imported;
+    private final TcpConnectionPool connectionPool;
+
+    TcpProviderMetrics(Supplier<Collection<TcpServer>> servers, Supplier<List<EndpointStats>> imported,
+            TcpConnectionPool connectionPool) {
+        this.servers = servers;
+        this.imported = imported;
+        this.connectionPool = connectionPool;
+    }
+
+    @Override
+    public List<EndpointStats> getExportedEndpoints() {
+        List<EndpointStats> stats = new ArrayList<>();
+        for (TcpServer server : servers.get()) {
+            stats.addAll(server.getEndpointStats());
+        }
+        return stats;
+    }
+
+    @Override
+    public List<EndpointStats> getImportedEndpoints() {
+        return imported.get();
+    }
+
+    @Override
+    public int getServerConnections() {
+        int count = 0;
+        for (TcpServer server : servers.get()) {
+            count += server.getConnectionCount();
+        }
+        return count;
+    }
+
+    @Override
+    public int getClientConnections() {
+        return connectionPool.getConnectionCount();
+    }
+
+    @Override
+    public int getQueuedInvocations() {
+        int count = 0;
+        for (TcpServer server : servers.get()) {
+            count += server.getQueuedInvocations();
+        }
+        return count;
+    }
+}
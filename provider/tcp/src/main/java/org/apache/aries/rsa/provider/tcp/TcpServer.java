@@ -18,19 +18,46 @@
  */
 package org.apache.aries.rsa.provider.tcp;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
 
+import org.apache.aries.rsa.provider.tcp.metrics.EndpointStats;
 import org.apache.aries.rsa.provider.tcp.ser.BasicObjectOutputStream;
 import org.apache.aries.rsa.provider.tcp.ser.BasicObjectInputStream;
+import org.apache.aries.rsa.provider.tcp.ser.Serializer;
+import org.apache.aries.rsa.spi.Deadline;
+import org.apache.aries.rsa.spi.ServiceOverloadedException;
 import org.osgi.util.promise.Promise;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,52 +66,190 @@ import org.slf4j.LoggerFactory;
  * A server listening on a single TCP port, which accepts connections
  * and dispatches method invocation requests to one or more MethodInvokers
  * (according to the target endpoint ID).
+ * <p>
+ * A connection either carries a single call (the client closes it after
+ * reading the response), or uses the framed protocol, in which case
+ * the server keeps serving request frames until the client closes it.
  */
 public class TcpServer implements Closeable, Runnable {
     private Logger log = LoggerFactory.getLogger(TcpServer.class);
     private ServerSocket serverSocket;
-    private Map<String, MethodInvoker> invokers = new ConcurrentHashMap<>();
+    private Map<String, ExportedService> services = new ConcurrentHashMap<>();
     private volatile boolean running;
-    private ThreadPoolExecutor executor;
+    private ExecutorService executor;
+    private ExecutorService connectionExecutor;
+    private int numThreads;
+    private Set<Closeable> framedConnections = ConcurrentHashMap.newKeySet();
+    private ServerSocketChannel unixChannel;
+    private Path unixSocket;
+    private NioServer nioServer;
+    private int acceptorThreads;
+    private Serializers serializers = new Serializers();
+    private final LongAdder expired = new LongAdder();
+    private final Map<CallKey, CancellableCall> cancellableCalls = new ConcurrentHashMap<>();
+    private final Map<FrameChannel, Streams> streams = new ConcurrentHashMap<>();
 
     public TcpServer(String localip, int port, int numThreads) {
+        this(localip, port, numThreads, 0);
+    }
+
+    /**
+     * Creates a server listening on the given port.
+     *
+     * @param localip the local address to listen on
+     * @param port the port to listen on, or zero for a free port
+     * @param numThreads the number of threads invoking services
+     * @param ioThreads the number of selector threads handling non-blocking
+     *        connection I/O, or zero for a blocking thread per connection
+     */
+    public TcpServer(String localip, int port, int numThreads, int ioThreads) {
+        this(localip, port, numThreads, ioThreads, false);
+    }
+
+    /**
+     * Creates a server listening on the given port.
+     *
+     * @param localip the local address to listen on
+     * @param port the port to listen on, or zero for a free port
+     * @param numThreads the number of threads invoking services
+     * @param ioThreads the number of selector threads handling non-blocking
+     *        connection I/O, or zero for a blocking thread per connection
+     * @param virtualThreads whether to run each invocation on its own virtual thread
+     *        instead of a pool of numThreads platform threads
+     */
+    public TcpServer(String localip, int port, int numThreads, int ioThreads, boolean virtualThreads) {
         try {
-            this.serverSocket = new ServerSocket(port);
-            this.serverSocket.setReuseAddress(true);
+            if (ioThreads > 0) {
+                this.nioServer = new NioServer(this, port, ioThreads);
+                this.serverSocket = nioServer.getServerSocket();
+            } else {
+                this.serverSocket = new ServerSocket(port);
+                this.serverSocket.setReuseAddress(true);
+            }
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
         this.running = true;
-        numThreads++; // plus one for server socket accepting thread
-        this.executor = new ThreadPoolExecutor(numThreads, numThreads,
-            60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
-        this.executor.execute(this); // server socket thread
+        this.acceptorThreads = nioServer == null ? 1 : 0;
+        this.numThreads = numThreads;
+        if (virtualThreads) {
+            this.executor = VirtualThreads.newPerTaskExecutor();
+            this.connectionExecutor = executor;
+        } else {
+            numThreads += acceptorThreads; // plus one for server socket accepting thread
+            this.executor = new ThreadPoolExecutor(numThreads, numThreads,
+                60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+            this.connectionExecutor = Executors.newCachedThreadPool();
+        }
+        if (nioServer == null) {
+            this.executor.execute(this); // server socket thread
+        }
     }
 
     int getPort() {
         return this.serverSocket.getLocalPort();
     }
 
+    /**
+     * Sets the serializers available to requests on framed connections.
+     */
+    void setSerializers(Serializers serializers) {
+        this.serializers = serializers;
+    }
+
     public void addService(String endpointId, Object service) {
-        invokers.put(endpointId, new MethodInvoker(service));
+        addService(endpointId, service, 0, 0);
+    }
+
+    /**
+     * Adds a service whose calls are subject to admission control.
+     *
+     * @param endpointId the endpoint id requests refer to
+     * @param service the service
+     * @param maxConcurrentCalls the maximum number of concurrent invocations, or zero for no limits
+     * @param maxQueuedCalls the maximum number of calls waiting for an invocation,
+     *        beyond which calls are rejected as overloaded
+     */
+    public void addService(String endpointId, Object service, int maxConcurrentCalls, int maxQueuedCalls) {
+        addService(endpointId, service, maxConcurrentCalls, maxQueuedCalls, 0, 0);
+    }
+
+    /**
+     * Adds a service whose calls are subject to admission control and which
+     * may be invoked by its own pool of threads (a bulkhead), so that a slow or
+     * overloaded service can't exhaust the threads of other services on the same port.
+     * Bulkheads apply to calls on framed connections, as one-shot connections
+     * are read and invoked by the same thread.
+     *
+     * @param endpointId the endpoint id requests refer to
+     * @param service the service
+     * @param maxConcurrentCalls the maximum number of concurrent invocations, or zero for no limits
+     * @param maxQueuedCalls the maximum number of calls waiting for an invocation,
+     *        beyond which calls are rejected as overloaded
+     * @param bulkheadThreads the number of threads invoking the service, or zero for the shared pool
+     * @param bulkheadQueueSize the maximum number of calls waiting for a bulkhead thread,
+     *        beyond which calls are rejected as overloaded
+     */
+    public void addService(String endpointId, Object service, int maxConcurrentCalls, int maxQueuedCalls,
+            int bulkheadThreads, int bulkheadQueueSize) {
+        addService(endpointId, service, maxConcurrentCalls, maxQueuedCalls, bulkheadThreads, bulkheadQueueSize,
+            Compression.NONE);
+    }
+
+    /**
+     * Adds a service as above, whose responses are compressed as configured,
+     * provided that the client accepts compressed responses.
+     */
+    void addService(String endpointId, Object service, int maxConcurrentCalls, int maxQueuedCalls,
+            int bulkheadThreads, int bulkheadQueueSize, Compression compression) {
+        ExecutorService bulkhead = bulkheadThreads > 0
+            ? newBulkhead(endpointId, bulkheadThreads, bulkheadQueueSize)
+            : null;
+        AdmissionControl admission = new AdmissionControl(maxConcurrentCalls, maxQueuedCalls,
+            bulkhead != null ? bulkhead : executor);
+        ExportedService previous = services.put(endpointId,
+            new ExportedService(new MethodInvoker(service), admission, bulkhead, compression));
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    private static ExecutorService newBulkhead(String endpointId, int threads, int queueSize) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory factory = r -> {
+            Thread thread = new Thread(r, "aries-rsa-tcp-bulkhead-" + endpointId + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+            queueSize > 0 ? new ArrayBlockingQueue<>(queueSize) : new SynchronousQueue<>(), factory);
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
     }
 
     public void removeService(String endpointId) {
-        invokers.remove(endpointId);
+        ExportedService service = services.remove(endpointId);
+        if (service != null) {
+            service.close();
+        }
     }
 
     public boolean isEmpty() {
-        return invokers.isEmpty();
+        return services.isEmpty();
     }
 
     public void setNumThreads(int numThreads) {
-        numThreads++; // plus one for server socket accepting thread
-        executor.setCorePoolSize(numThreads);
-        executor.setMaximumPoolSize(numThreads);
+        this.numThreads = numThreads;
+        if (executor instanceof ThreadPoolExecutor) { // virtual threads are not limited
+            ThreadPoolExecutor pool = (ThreadPoolExecutor)executor;
+            numThreads += acceptorThreads; // plus one for server socket accepting thread
+            pool.setCorePoolSize(numThreads);
+            pool.setMaximumPoolSize(numThreads);
+        }
     }
 
     public int getNumThreads() {
-        return executor.getMaximumPoolSize() - 1; // excluding socket accepting thread
+        return numThreads; // excluding socket accepting thread
     }
 
     public void run() {
@@ -100,16 +265,88 @@ public class TcpServer implements Closeable, Runnable {
         }
     }
 
+    /**
+     * Listens on a Unix domain socket in addition to the TCP port, so that
+     * frameworks on the same host can avoid the TCP loopback stack.
+     * Its connections are served by a blocking thread each.
+     *
+     * @param path the path of the socket file, which is replaced if it exists
+     * @throws IOException if the socket can't be bound
+     */
+    synchronized void bindUnixSocket(Path path) throws IOException {
+        if (unixChannel != null) {
+            throw new IllegalStateException("Already listening on " + unixSocket);
+        }
+        unixChannel = UnixSockets.bind(path);
+        unixSocket = path;
+        ServerSocketChannel channel = unixChannel;
+        connectionExecutor.execute(() -> acceptUnix(channel));
+    }
+
+    /**
+     * Returns the path of the Unix domain socket, or null if the server only listens on TCP.
+     */
+    synchronized Path getUnixSocket() {
+        return unixSocket;
+    }
+
+    private void acceptUnix(ServerSocketChannel channel) {
+        while (running) {
+            try {
+                SocketChannel connection = channel.accept();
+                executor.execute(() -> handleConnection(connection,
+                    UnixSockets.newInputStream(connection), UnixSockets.newOutputStream(connection)));
+            } catch (ClosedChannelException e) { // server closed
+                return;
+            } catch (Exception e) {
+                log.warn("Error processing connection", e);
+            }
+        }
+    }
+
     private void handleConnection(Socket socket) {
-        try (Socket sock = socket;
-             BasicObjectInputStream in = new BasicObjectInputStream(socket.getInputStream());
-             ObjectOutputStream out = new BasicObjectOutputStream(socket.getOutputStream())) {
-            String endpointId = in.readUTF();
-            MethodInvoker invoker = invokers.get(endpointId);
-            if (invoker == null)
-                throw new IllegalArgumentException("invalid endpoint: " + endpointId);
-            in.addClassLoader(invoker.getService().getClass().getClassLoader());
-            handleCall(invoker, in, out);
+        InputStream in;
+        OutputStream out;
+        try {
+            socket.setTcpNoDelay(true);
+            in = socket.getInputStream();
+            out = socket.getOutputStream();
+        } catch (IOException e) {
+            log.debug("Error processing connection", e); // e.g. connection closed by client
+            closeQuietly(socket);
+            return;
+        }
+        handleConnection(socket, in, out);
+    }
+
+    private void handleConnection(Closeable connection, InputStream input, OutputStream output) {
+        try {
+            InputStream is = new BufferedInputStream(input);
+            if (isFramed(is)) {
+                framedConnections.add(connection);
+                connectionExecutor.execute(() -> serveFrames(connection, is, output));
+            } else {
+                handleOneShot(connection, is, output);
+            }
+        } catch (IOException e) {
+            log.debug("Error processing connection", e); // e.g. connection closed by client
+            closeQuietly(connection);
+        }
+    }
+
+    private void closeQuietly(Closeable connection) {
+        try {
+            connection.close();
+        } catch (IOException ioe) {
+            // ignore
+        }
+    }
+
+    private void handleOneShot(Closeable connection, InputStream is, OutputStream os) {
+        try (Closeable conn = connection;
+             BasicObjectInputStream in = new BasicObjectInputStream(is);
+             ObjectOutputStream out = new BasicObjectOutputStream(os)) {
+            handleRequest(in, out);
         } catch (SocketException se) {
             return; // e.g. connection closed by client
         } catch (Exception e) {
@@ -117,20 +354,501 @@ public class TcpServer implements Closeable, Runnable {
         }
     }
 
-    private void handleCall(MethodInvoker invoker, ObjectInputStream in, ObjectOutputStream out) throws Exception {
-        String methodName = (String)in.readObject();
+    private boolean isFramed(InputStream is) throws IOException {
+        is.mark(4);
+        int magic = new DataInputStream(is).readInt();
+        if (magic == Frame.MAGIC) {
+            return true;
+        }
+        is.reset();
+        return false;
+    }
+
+    private void serveFrames(Closeable connection, InputStream is, OutputStream os) {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+        FrameChannel channel = frame -> {
+            synchronized (out) {
+                frame.write(out);
+            }
+        };
+        try (Closeable conn = connection) {
+            DataInputStream in = new DataInputStream(is);
+            while (running) {
+                dispatch(Frame.read(in), channel);
+            }
+        } catch (EOFException | SocketException | ClosedChannelException e) {
+            // connection closed by client, or by the server on close
+        } catch (Exception e) {
+            log.warn("Error processing connection", e);
+        } finally {
+            framedConnections.remove(connection);
+            closeStreams(channel);
+        }
+    }
+
+    /**
+     * Hands a frame received on a framed connection over to the worker pool,
+     * or replies right away if the request can't be admitted.
+     */
+    void dispatch(Frame frame, FrameChannel channel) {
+        if (frame.getType() == Frame.BATCH) {
+            dispatchBatch(frame, channel);
+            return;
+        }
+        if (Streams.isStreamFrame(frame.getType())) {
+            Streams connectionStreams = streams.get(channel.connection());
+            if (connectionStreams != null) {
+                connectionStreams.handle(frame);
+            }
+            return;
+        }
+        if (frame.getType() == Frame.PING) {
+            send(frame, channel, new Frame(Frame.PING, frame.getId(), new byte[0]));
+            return;
+        }
+        if (frame.getType() == Frame.CANCEL) {
+            CancellableCall call = cancellableCalls.remove(new CallKey(channel.connection(), frame.getId()));
+            if (call != null) {
+                call.cancel();
+            }
+            return;
+        }
+        if (!frame.isRequest()) {
+            log.warn("Ignoring unexpected frame of type {}", frame.getType());
+            return;
+        }
+        CancellableCall call = null;
+        if (frame.hasFlag(Frame.CANCELLABLE)) {
+            call = new CancellableCall();
+            cancellableCalls.put(new CallKey(channel.connection(), frame.getId()), call);
+        }
+        ByteArrayInputStream payload = new ByteArrayInputStream(frame.getPayload());
+        DataInputStream in = new DataInputStream(payload);
+        Serializer serializer = Serializers.DEFAULT; // until the request names its serializer
+        String endpointId;
+        ExportedService service;
+        long deadline = 0;
+        try {
+            if (frame.hasFlag(Frame.DEADLINE)) {
+                deadline = deadline(in.readInt());
+            }
+            serializer = getSerializer(in.readUTF());
+            endpointId = in.readUTF();
+            service = getService(endpointId);
+        } catch (Exception e) {
+            log.warn("Error processing service call", e);
+            send(frame, channel, errorResponse(serializer, e));
+            return;
+        }
+        Serializer requestSerializer = serializer;
+        long requestDeadline = deadline;
+        CancellableCall requestCall = call;
+        boolean admitted;
+        try {
+            admitted = service.admission.execute(release -> handleFrame(frame, channel, requestSerializer, service,
+                payload, requestDeadline, requestCall, release),
+                () -> send(frame, channel, errorResponse(requestSerializer, overloaded(endpointId))));
+        } catch (RejectedExecutionException e) {
+            admitted = false; // the bulkhead queue is full, or the service is being removed
+        }
+        if (!admitted) {
+            send(frame, channel, errorResponse(serializer, overloaded(endpointId)));
+        }
+    }
+
+    /**
+     * Dispatches the requests of a batch frame like single requests, so they run
+     * in parallel on the worker pool, subject to the admission control of their services.
+     * Their responses are sent together once all of them are done.
+     */
+    private void dispatchBatch(Frame frame, FrameChannel channel) {
+        List<Frame> requests;
+        try {
+            requests = frame.unbatch();
+        } catch (IOException e) {
+            log.warn("Ignoring invalid batch frame", e);
+            return;
+        }
+        FrameChannel batch = new BatchChannel(channel, requests.size());
+        for (Frame request : requests) {
+            if (request.isRequest()) {
+                dispatch(request, batch);
+            } else {
+                log.warn("Ignoring unexpected frame of type {} in batch", request.getType());
+                skip(request, batch);
+            }
+        }
+    }
+
+    /**
+     * Hands a one-shot connection over to the worker pool.
+     *
+     * @param socket the connection, in blocking mode
+     * @param in the connection input, including any bytes already read
+     */
+    void handOff(Socket socket, InputStream in) throws IOException {
+        OutputStream out = socket.getOutputStream();
+        executor.execute(() -> handleOneShot(socket, in, out));
+    }
+
+    /**
+     * Invokes the requested method and sends the response once the result is available.
+     * Asynchronous results are not waited for, instead the response is sent
+     * by a callback when they complete, so no worker thread is blocked meanwhile.
+     * Requests whose deadline expired or which were cancelled while they were queued
+     * are not invoked at all.
+     */
+    private void handleFrame(Frame frame, FrameChannel channel, Serializer serializer, ExportedService service,
+            ByteArrayInputStream in, long deadline, CancellableCall call, Runnable release) {
+        if (call != null && !call.start()) {
+            release.run();
+            skip(frame, channel);
+            return;
+        }
+        boolean hasDeadline = frame.hasFlag(Frame.DEADLINE);
+        if (hasDeadline && isExpired(deadline)) {
+            release.run();
+            send(frame, channel, errorResponse(serializer, expired()));
+            return;
+        }
+        MethodInvoker invoker = service.invoker;
+        Compression compression = frame.hasFlag(Frame.ACCEPTS_COMPRESSED) ? service.compression : Compression.NONE;
+        Object result = null;
+        String methodName = null;
+        long start = 0;
+        List<Closeable> callStreams = Collections.emptyList();
+        try (ObjectInput input = serializer.newInput(body(frame, in), invoker.getService().getClass().getClassLoader())) {
+            methodName = invoker.resolve((String)input.readObject());
+            Object[] args = (Object[])input.readObject();
+            if (frame.getType() == Frame.ATTACHMENT_REQUEST && Attachments.hasMarkers(args)) {
+                Attachments.resolve(args, frame.getPayload());
+            }
+            if (Streams.hasMarkers(args)) {
+                callStreams = streams(channel).resolve(args);
+            }
+            if (hasDeadline) {
+                Deadline.set(deadline);
+            }
+            start = System.nanoTime();
+            Throwable failure = null;
+            try {
+                if (call != null) {
+                    call.invoking();
+                }
+                result = invoker.invoke(methodName, args);
+            } catch (Throwable t) {
+                failure = t;
+            } finally {
+                Deadline.clear();
+                if (call != null) {
+                    call.invoked(); // before sending, as interrupts may close interruptible channels
+                }
+            }
+            if (failure != null) {
+                release.run();
+                Streams.closeAll(callStreams);
+                int size = sendResponse(frame, channel, serializer, compression, failure, null);
+                service.metrics.record(methodName, System.nanoTime() - start, true, frame.getPayload().length, size);
+                return;
+            }
+        } catch (Exception e) {
+            log.warn("Error processing service call", e);
+            release.run();
+            Streams.closeAll(callStreams);
+            byte[] response = errorResponse(serializer, e);
+            service.metrics.record(methodName != null ? methodName : "unknown",
+                start != 0 ? System.nanoTime() - start : 0, true, frame.getPayload().length, response.length);
+            send(frame, channel, response);
+            return;
+        }
+        if (call != null) {
+            call.pending(result);
+        }
+        release.run(); // the invocation is complete, so the next one may start while the response is sent
+        List<Closeable> openStreams = callStreams;
+        String method = methodName;
+        long started = start;
+        whenResolved(result, (value, error) -> {
+            Streams.closeAll(openStreams); // ends OutputStream arguments before the response
+            if (value instanceof InputStream) {
+                value = streams(channel).export((InputStream)value);
+            }
+            int size = sendResponse(frame, channel, serializer, compression, error, value);
+            service.metrics.record(method, System.nanoTime() - started, error != null || size < 0,
+                frame.getPayload().length, size);
+        });
+    }
+
+    private Streams streams(FrameChannel channel) {
+        return streams.computeIfAbsent(channel.connection(), c -> new Streams(c, connectionExecutor, true));
+    }
+
+    /**
+     * Fails the streams of a framed connection once it is closed.
+     */
+    void closeStreams(FrameChannel channel) {
+        Streams connectionStreams = streams.remove(channel);
+        if (connectionStreams != null) {
+            connectionStreams.close(new EOFException("Connection closed by client"));
+        }
+    }
+
+    /**
+     * Returns the rest of the request payload following its header, inflated if compressed.
+     */
+    private InputStream body(Frame frame, ByteArrayInputStream in) throws IOException {
+        if (!frame.hasFlag(Frame.COMPRESSED)) {
+            return in;
+        }
+        byte[] payload = frame.getPayload();
+        int remaining = in.available();
+        return new ByteArrayInputStream(Compression.inflate(payload, payload.length - remaining, remaining));
+    }
+
+    /**
+     * Sends the response, with a large byte array or ByteBuffer result as an attachment
+     * if the client reads attachments.
+     *
+     * @return the size of the response payload, or -1 if encoding the result failed
+     */
+    private int sendResponse(Frame request, FrameChannel channel, Serializer serializer, Compression compression,
+            Throwable error, Object result) {
+        Attachments attachments = null;
+        if (request.getType() == Frame.ATTACHMENT_REQUEST && Attachments.isAttachable(result)) {
+            attachments = new Attachments();
+            result = attachments.export(result);
+        }
+        byte[] response;
+        try {
+            response = encodeResponse(serializer, error, result);
+        } catch (Exception e) {
+            log.warn("Error processing service call", e);
+            send(request, channel, errorResponse(serializer, e));
+            return -1;
+        }
+        byte flags = 0;
+        if (response.length >= compression.getThreshold()) {
+            try {
+                ByteArrayOutputStream bout = new ByteArrayOutputStream(response.length / 2);
+                if (compression.write(response, 0, response.length, bout)) {
+                    response = bout.toByteArray();
+                    flags = Frame.COMPRESSED;
+                }
+            } catch (IOException e) {
+                log.warn("Error compressing response", e); // can't happen with an in-memory stream
+            }
+        }
+        Frame frame = new Frame(Frame.RESPONSE, flags, request.getId(), response);
+        if (attachments != null) {
+            try {
+                frame = attachments.frame(Frame.RESPONSE, flags, request.getId(), response);
+            } catch (IOException e) {
+                send(request, channel, errorResponse(serializer, e));
+                return -1;
+            }
+        }
+        send(request, channel, frame);
+        return frame.getLength();
+    }
+
+    private byte[] encodeResponse(Serializer serializer, Throwable error, Object result) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try (ObjectOutput out = serializer.newOutput(bout)) {
+            out.writeObject(error);
+            out.writeObject(result);
+        }
+        return bout.toByteArray();
+    }
+
+    private void send(Frame request, FrameChannel channel, byte[] response) {
+        send(request, channel, new Frame(Frame.RESPONSE, request.getId(), response));
+    }
+
+    private void send(Frame request, FrameChannel channel, Frame response) {
+        if (request.hasFlag(Frame.CANCELLABLE) && cancellableCalls.remove(new CallKey(channel.connection(), request.getId())) == null) {
+            skip(request, channel); // cancelled, so the client does not wait for it anymore
+            return;
+        }
+        try {
+            channel.send(response);
+        } catch (IOException e) {
+            log.debug("Error sending response", e); // connection closed by client
+        }
+    }
+
+    private void skip(Frame request, FrameChannel channel) {
+        try {
+            channel.skip(request);
+        } catch (IOException e) {
+            log.debug("Error sending response", e); // connection closed by client
+        }
+    }
+
+    private byte[] errorResponse(Serializer serializer, Exception e) {
+        try {
+            try {
+                return encodeResponse(serializer, e, null);
+            } catch (NotSerializableException nse) {
+                return encodeResponse(serializer, new IOException(e.toString()), null);
+            }
+        } catch (IOException ioe) {
+            throw new IllegalStateException(ioe); // can't happen with an in-memory stream and an IOException
+        }
+    }
+
+    private Serializer getSerializer(String name) {
+        Serializer serializer = serializers.get(name);
+        if (serializer == null)
+            throw new IllegalArgumentException("unknown serializer: " + name);
+        return serializer;
+    }
+
+    private void handleRequest(BasicObjectInputStream in, ObjectOutputStream out) throws Exception {
+        String endpointId = in.readUTF();
+        ExportedService service = getService(endpointId);
+        in.addClassLoader(service.invoker.getService().getClass().getClassLoader());
+        Object target = in.readObject();
+        boolean hasDeadline = target instanceof Integer; // sent by clients of protocol version 1 before the name
+        long deadline = 0;
+        if (hasDeadline) {
+            deadline = deadline((Integer)target);
+            target = in.readObject();
+        }
+        String methodName = service.invoker.resolve((String)target);
         Object[] args = (Object[])in.readObject();
+        if (!service.admission.acquire()) {
+            out.writeObject(overloaded(endpointId));
+            out.writeObject(null);
+            return;
+        }
         Throwable error = null;
         Object result = null;
+        long start = System.nanoTime();
         try {
-            result = resolveAsync(invoker.invoke(methodName, args));
+            if (hasDeadline && isExpired(deadline)) {
+                error = expired();
+            } else {
+                if (hasDeadline) {
+                    Deadline.set(deadline);
+                }
+                result = resolveAsync(service.invoker.invoke(methodName, args));
+            }
         } catch (Throwable t) {
             error = t;
+        } finally {
+            Deadline.clear();
+            service.admission.release(); // before the response reaches the client
         }
+        service.metrics.record(methodName, System.nanoTime() - start, error != null, 0, 0);
         out.writeObject(error);
         out.writeObject(result);
     }
 
+    private ExportedService getService(String endpointId) {
+        ExportedService service = services.get(endpointId);
+        if (service == null)
+            throw new IllegalArgumentException("invalid endpoint: " + endpointId);
+        return service;
+    }
+
+    private ServiceOverloadedException overloaded(String endpointId) {
+        return new ServiceOverloadedException("Too many calls to endpoint " + endpointId);
+    }
+
+    private static long deadline(int timeoutMillis) {
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+    }
+
+    private boolean isExpired(long deadline) {
+        if (deadline - System.nanoTime() > 0) {
+            return false;
+        }
+        expired.increment();
+        return true;
+    }
+
+    private TimeoutException expired() {
+        return new TimeoutException("Deadline expired before the call was invoked");
+    }
+
+    /**
+     * Returns the metrics of the exported services.
+     */
+    List<EndpointStats> getEndpointStats() {
+        List<EndpointStats> stats = new ArrayList<>();
+        services.forEach((endpointId, service) -> {
+            int queued = service.admission.getQueuedCount();
+            if (service.bulkhead instanceof ThreadPoolExecutor) {
+                queued += ((ThreadPoolExecutor)service.bulkhead).getQueue().size();
+            }
+            stats.add(new EndpointStats(endpointId, service.metrics.snapshot(), service.admission.getActiveCount(),
+                queued, service.admission.getRejectedCount()));
+        });
+        return stats;
+    }
+
+    /**
+     * Returns the number of open framed connections.
+     */
+    int getConnectionCount() {
+        return framedConnections.size() + (nioServer != null ? nioServer.getConnectionCount() : 0);
+    }
+
+    /**
+     * Returns the number of calls waiting for a thread of the shared pool.
+     */
+    int getQueuedInvocations() {
+        return executor instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor)executor).getQueue().size() : 0;
+    }
+
+    /**
+     * Returns the number of calls dropped because their deadline expired before they were invoked.
+     */
+    long getExpiredCount() {
+        return expired.sum();
+    }
+
+    /**
+     * Passes the value or failure of an asynchronous result to the given callback
+     * once it is resolved, or immediately if the result is not asynchronous.
+     * Failures are wrapped in an InvocationTargetException just like in a sync invoke.
+     * Plain Futures offer no way of registering a callback, so they are waited for.
+     */
+    @SuppressWarnings("unchecked")
+    private void whenResolved(Object result, BiConsumer<Object, Throwable> callback) {
+        if (result instanceof CompletionStage) {
+            ((CompletionStage<Object>) result).whenComplete((value, error) -> {
+                if (error instanceof CompletionException && error.getCause() != null) {
+                    error = error.getCause();
+                }
+                if (error != null && !(error instanceof CancellationException)) {
+                    error = new InvocationTargetException(error);
+                }
+                callback.accept(value, error);
+            });
+        } else if (result instanceof Promise) {
+            Promise<Object> promise = (Promise<Object>) result;
+            promise.onResolve(() -> {
+                try {
+                    Throwable failure = promise.getFailure();
+                    if (failure != null) {
+                        callback.accept(null, new InvocationTargetException(failure));
+                    } else {
+                        callback.accept(promise.getValue(), null);
+                    }
+                } catch (Exception e) {
+                    callback.accept(null, e); // can't happen as the promise is resolved
+                }
+            });
+        } else {
+            try {
+                callback.accept(resolveAsync(result), null);
+            } catch (Throwable t) {
+                callback.accept(null, t);
+            }
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private Object resolveAsync(Object result) throws InterruptedException, Throwable {
         // exceptions are wrapped in an InvocationTargetException just like in a sync invoke
@@ -161,14 +879,139 @@ public class TcpServer implements Closeable, Runnable {
 
     @Override
     public void close() throws IOException {
-        this.serverSocket.close();
+        if (nioServer != null) {
+            nioServer.close();
+        } else {
+            this.serverSocket.close();
+        }
         this.running = false;
+        synchronized (this) {
+            if (unixChannel != null) {
+                unixChannel.close();
+                Files.deleteIfExists(unixSocket);
+            }
+        }
+        for (Closeable connection : framedConnections) {
+            connection.close();
+        }
+        if (connectionExecutor != executor) {
+            this.connectionExecutor.shutdownNow();
+        }
         this.executor.shutdown();
         try {
             this.executor.awaitTermination(10, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
         }
         this.executor.shutdownNow();
+        for (ExportedService service : services.values()) {
+            service.close();
+        }
+    }
+
+
+    /**
+     * Identifies a request by its connection and correlation id.
+     */
+    private static final class CallKey {
+        private final FrameChannel channel;
+        private final long id;
+
+        CallKey(FrameChannel channel, long id) {
+            this.channel = channel;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof CallKey)) {
+                return false;
+            }
+            CallKey other = (CallKey)obj;
+            return channel == other.channel && id == other.id;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(channel) * 31 + Long.hashCode(id);
+        }
     }
 
+    /**
+     * The state of a request which the client may cancel, either before it is invoked,
+     * while the invoking thread can be interrupted, or while its asynchronous result is pending.
+     */
+    private static final class CancellableCall {
+        private boolean cancelled;
+        private Thread thread;
+        private Object result;
+
+        /**
+         * @return false if the call was cancelled before its invocation
+         */
+        synchronized boolean start() {
+            return !cancelled;
+        }
+
+        synchronized void invoking() {
+            thread = Thread.currentThread();
+            if (cancelled) {
+                thread.interrupt();
+            }
+        }
+
+        synchronized void invoked() {
+            thread = null;
+            if (cancelled) {
+                Thread.interrupted(); // don't leave the interrupt to the next task of the worker
+            }
+        }
+
+        synchronized void pending(Object result) {
+            this.result = result;
+            if (cancelled) {
+                cancelResult();
+            }
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            if (thread != null) {
+                thread.interrupt();
+            }
+            cancelResult();
+        }
+
+        private void cancelResult() {
+            if (result instanceof Future) {
+                ((Future<?>)result).cancel(true);
+            }
+            // other CompletionStages and Promises can't be cancelled, so their results are just not sent
+        }
+    }
+
+    /**
+     * An exported service with the admission control of its calls,
+     * its bulkhead, if any, and the compression of its responses.
+     */
+    private static class ExportedService {
+        final MethodInvoker invoker;
+        final AdmissionControl admission;
+        final ExecutorService bulkhead;
+        final Compression compression;
+        final CallMetrics metrics = new CallMetrics();
+
+        ExportedService(MethodInvoker invoker, AdmissionControl admission, ExecutorService bulkhead,
+                Compression compression) {
+            this.invoker = invoker;
+            this.admission = admission;
+            this.bulkhead = bulkhead;
+            this.compression = compression;
+        }
+
+        void close() {
+            if (bulkhead != null) {
+                bulkhead.shutdown(); // running calls still send their responses
+            }
+        }
+    }
 }
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Opens Unix domain socket channels, which avoid the TCP loopback stack
+ * between frameworks on the same host.
+ * <p>
+ * Unix domain socket channels are only available on Java 16 and later,
+ * while this bundle still runs on Java 8, so they are looked up reflectively.
+ */
+final class UnixSockets {
+    private static final ProtocolFamily UNIX = findFamily();
+    private static final Method ADDRESS_OF = findMethod("java.net.UnixDomainSocketAddress", "of", Path.class);
+    private static final Method OPEN_SERVER = findMethod(ServerSocketChannel.class.getName(), "open", ProtocolFamily.class);
+
+    private UnixSockets() {
+        // Util Class
+    }
+
+    private static ProtocolFamily findFamily() {
+        try {
+            return StandardProtocolFamily.valueOf("UNIX");
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static Method findMethod(String className, String name, Class<?>... parameterTypes) {
+        try {
+            return Class.forName(className).getMethod(name, parameterTypes);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    static boolean isSupported() {
+        return UNIX != null && ADDRESS_OF != null && OPEN_SERVER != null;
+    }
+
+    /**
+     * Returns an identifier of this host, which importers compare with
+     * the one advertised by an endpoint to tell whether they are co-located.
+     */
+    static String getHostId() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            return "localhost";
+        }
+    }
+
+    /**
+     * Binds a server channel to the given path, replacing a stale socket file.
+     */
+    static ServerSocketChannel bind(Path path) throws IOException {
+        SocketAddress address = address(path);
+        Files.deleteIfExists(path);
+        ServerSocketChannel channel = (ServerSocketChannel)invoke(OPEN_SERVER, UNIX);
+        try {
+            channel.bind(address);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    static SocketChannel connect(Path path) throws IOException {
+        return SocketChannel.open(address(path));
+    }
+
+    private static SocketAddress address(Path path) throws IOException {
+        if (!isSupported()) {
+            throw new IOException("Unix domain sockets are not supported by this Java runtime");
+        }
+        return (SocketAddress)invoke(ADDRESS_OF, path);
+    }
+
+    private static Object invoke(Method method, Object arg) throws IOException {
+        try {
+            return method.invoke(null, arg);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException)cause : new IOException(cause);
+        } catch (IllegalAccessException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Returns a stream reading from the blocking channel, which unlike
+     * {@link java.nio.channels.Channels#newInputStream} does not block
+     * concurrent writes to the channel on older runtimes.
+     */
+    static InputStream newInputStream(SocketChannel channel) {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return len == 0 ? 0 : channel.read(ByteBuffer.wrap(b, off, len));
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+
+    /**
+     * Returns a stream writing to the blocking channel, which does not
+     * block concurrent reads from the channel.
+     */
+    static OutputStream newOutputStream(SocketChannel channel) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte)b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                ByteBuffer buf = ByteBuffer.wrap(b, off, len);
+                while (buf.hasRemaining()) {
+                    channel.write(buf);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp.metrics;
+
+import java.util.List;
+
+/**
+ * A snapshot of the metrics of an exported or imported endpoint.
+ */
+public final class EndpointStats {
+    private final String endpointId;
+    private final List<MethodStats> methods;
+    private final int activeCalls;
+    private final int queuedCalls;
+    private final long rejectedCalls;
+
+    public EndpointStats(String endpointId, List<MethodStats> methods, int activeCalls, int queuedCalls,
+            long rejectedCalls) {
+        this.endpointId = endpointId;
+        this.methods = methods;
+        this.activeCalls = activeCalls;
+        this.queuedCalls = queuedCalls;
+        this.rejectedCalls = rejectedCalls;
+    }
+
+    public String getEndpointId() {
+        return endpointId;
+    }
+
+    /**
+     * Returns the metrics of the methods called so far.
+     */
+    public List<MethodStats> getMethods() {
+        return methods;
+    }
+
+    /**
+     * Returns the number of calls being invoked (exported), or of pending async calls (imported).
+     */
+    public int getActiveCalls() {
+        return activeCalls;
+    }
+
+    /**
+     * Returns the number of calls waiting for admission or a bulkhead thread (exported).
+     */
+    public int getQueuedCalls() {
+        return queuedCalls;
+    }
+
+    /**
+     * Returns the number of calls rejected as overloaded (exported),
+     * or for exceeding the async queue (imported).
+     */
+    public long getRejectedCalls() {
+        return rejectedCalls;
+    }
+
+    @Override
+    public String toString() {
+        return endpointId + " " + methods;
+    }
+}
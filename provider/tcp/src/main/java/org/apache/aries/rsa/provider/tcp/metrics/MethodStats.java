@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp.metrics;
+
+/**
+ * A snapshot of the metrics of the calls of a method, identified by its method key.
+ * <p>
+ * Latencies are in microseconds. The histogram bucket {@code i} counts the calls which
+ * took less than 2<sup>i</sup> µs but at least 2<sup>i-1</sup>, except for the last bucket
+ * which counts all longer calls. Percentiles are the upper bound of their bucket,
+ * so they are accurate within a factor of two.
+ */
+public final class MethodStats {
+    private final String method;
+    private final long calls;
+    private final long errors;
+    private final long bytesIn;
+    private final long bytesOut;
+    private final long totalLatency;
+    private final long maxLatency;
+    private final long[] latencyHistogram;
+
+    public MethodStats(String method, long calls, long errors, long bytesIn, long bytesOut,
+            long totalLatency, long maxLatency, long[] latencyHistogram) {
+        this.method = method;
+        this.calls = calls;
+        this.errors = errors;
+        this.bytesIn = bytesIn;
+        this.bytesOut = bytesOut;
+        this.totalLatency = totalLatency;
+        this.maxLatency = maxLatency;
+        this.latencyHistogram = latencyHistogram;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    /**
+     * Returns the number of calls which failed, including exceptions thrown by the service.
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * Returns the number of bytes received by this side, i.e. requests (exported) or responses (imported).
+     */
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    /**
+     * Returns the number of bytes sent by this side, i.e. responses (exported) or requests (imported).
+     */
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    public double getMeanLatency() {
+        return calls == 0 ? 0 : (double)totalLatency / calls;
+    }
+
+    public long getMaxLatency() {
+        return maxLatency;
+    }
+
+    public long getLatencyP50() {
+        return percentile(0.5);
+    }
+
+    public long getLatencyP90() {
+        return percentile(0.9);
+    }
+
+    public long getLatencyP99() {
+        return percentile(0.99);
+    }
+
+    public long[] getLatencyHistogram() {
+        return latencyHistogram.clone();
+    }
+
+    private long percentile(double p) {
+        long count = 0;
+        for (long c : latencyHistogram) {
+            count += c;
+        }
+        long rank = (long)Math.ceil(p * count);
+        long seen = 0;
+        for (int i = 0; i < latencyHistogram.length; i++) {
+            seen += latencyHistogram[i];
+            if (seen >= rank && seen > 0) {
+                return i == latencyHistogram.length - 1 ? maxLatency : Math.min((1L << i) - 1, maxLatency);
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return method + ": " + calls + " calls, " + errors + " errors";
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp.metrics;
+
+import java.util.List;
+
+/**
+ * The metrics of the tcp provider, registered as an OSGi service and
+ * as a platform MXBean named {@link #OBJECT_NAME}.
+ * <p>
+ * Counters start when an endpoint is exported or first imported.
+ * Recording is lock-free, so the metrics are always on.
+ */
+public interface TcpMetricsMXBean {
+    String OBJECT_NAME = "org.apache.aries.rsa:type=TcpProvider,name=Metrics";
+
+    /**
+     * Returns the metrics of the exported endpoints, as measured by the server.
+     */
+    List<EndpointStats> getExportedEndpoints();
+
+    /**
+     * Returns the metrics of the imported endpoints, as measured by the client,
+     * so their latencies include the network round trip.
+     */
+    List<EndpointStats> getImportedEndpoints();
+
+    /**
+     * Returns the number of open framed connections accepted by the servers.
+     */
+    int getServerConnections();
+
+    /**
+     * Returns the number of open pooled connections to imported endpoints.
+     */
+    int getClientConnections();
+
+    /**
+     * Returns the number of calls waiting for a thread of the servers' shared pools.
+     */
+    int getQueuedInvocations();
+}
@@ -35,6 +35,7 @@ public class BasicObjectInputStream extends ObjectInputStream {
     Logger log = LoggerFactory.getLogger(this.getClass());
 
     private final Set<ClassLoader> loaders = new LinkedHashSet<>(); // retains insertion order
+    private ClassLoader[] loaderArray; // snapshot of loaders used as cache key
 
     public BasicObjectInputStream(InputStream in) throws IOException {
         super(in);
@@ -47,30 +48,29 @@ public class BasicObjectInputStream extends ObjectInputStream {
     }
 
     public void addClassLoader(ClassLoader loader) {
-        loaders.add(loader); // the original classloader goes first
+        if (loaders.add(loader)) { // the original classloader goes first
+            loaderArray = null;
+        }
     }
 
     @Override
     protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
-        String className = desc.getName();
-        ClassNotFoundException exception = null;
-        for (ClassLoader loader : loaders) {
-            try {
-                // Must use Class.forName instead of loader.loadClass to handle cases like array of user classes
-                Class<?> cls = Class.forName(className, false, loader);
-                loaders.add(cls.getClassLoader()); // save transitive classloaders for other transitive classes
-                return cls;
-            } catch (ClassNotFoundException e) {
-                if (exception == null)
-                    exception = e;
-                else
-                    exception.addSuppressed(e);
-            }
+        Class<?> cls = ClassResolutionCache.getInstance().resolve(desc.getName(), getLoaders());
+        if (cls != null) {
+            addClassLoader(cls.getClassLoader()); // save transitive classloaders for other transitive classes
+            return cls;
         }
-        log.debug("Error loading class using classloader of user bundle. Trying our own ClassLoader now", exception);
+        log.debug("Class {} not found using classloader of user bundle. Trying our own ClassLoader now", desc.getName());
         return super.resolveClass(desc);
     }
 
+    private ClassLoader[] getLoaders() {
+        if (loaderArray == null) {
+            loaderArray = loaders.toArray(new ClassLoader[0]);
+        }
+        return loaderArray;
+    }
+
     @Override
     protected Object resolveObject(Object obj) throws IOException {
         if (obj instanceof VersionMarker) {
@@ -45,7 +45,7 @@ public class BasicObjectOutputStream extends ObjectOutputStream {
             return obj;
         } else if (obj instanceof Version) {
             return new VersionMarker((Version) obj);
-        } else if (DTOUtil.isDTOType(obj.getClass())){
+        } else if (DTOCodec.isDTOType(obj.getClass())) {
             return new DTOMarker(obj);
         } else {
             return obj;
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp.ser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.SortedMap;
+import java.util.SortedSet;
+
+/**
+ * The tags and type checks shared by {@link BinaryObjectOutput} and {@link BinaryObjectInput}.
+ */
+final class BinaryFormat {
+    static final byte NULL = 0;
+    static final byte TRUE = 1;
+    static final byte FALSE = 2;
+    static final byte BYTE = 3;
+    static final byte SHORT = 4;
+    static final byte CHAR = 5;
+    static final byte INT = 6;
+    static final byte LONG = 7;
+    static final byte FLOAT = 8;
+    static final byte DOUBLE = 9;
+    static final byte STRING = 10;
+    static final byte BYTE_ARRAY = 11;
+    static final byte BOOLEAN_ARRAY = 12;
+    static final byte SHORT_ARRAY = 13;
+    static final byte CHAR_ARRAY = 14;
+    static final byte INT_ARRAY = 15;
+    static final byte LONG_ARRAY = 16;
+    static final byte FLOAT_ARRAY = 17;
+    static final byte DOUBLE_ARRAY = 18;
+    static final byte OBJECT_ARRAY = 19;
+    static final byte LIST = 20;
+    static final byte SET = 21;
+    static final byte MAP = 22;
+    static final byte ENUM = 23;
+    static final byte VERSION = 24;
+    static final byte DTO = 25;
+    static final byte SERIALIZED = 26;
+
+    private BinaryFormat() {
+        // Do not instantiate. This is a utility class.
+    }
+
+    /**
+     * Returns whether a collection or map type carries no state other than its elements,
+     * and can be decoded as an {@code ArrayList}, {@code LinkedHashSet} or {@code LinkedHashMap}
+     * without breaking a parameter declared with the original type.
+     * Sorted types are excluded as they may depend on a comparator.
+     */
+    static boolean isPlainCollection(Class<?> type) {
+        if (type == ArrayList.class || type == HashSet.class || type == LinkedHashSet.class
+            || type == HashMap.class || type == LinkedHashMap.class) {
+            return true;
+        }
+        String name = type.getName();
+        return (name.startsWith("java.util.Collections$") || name.startsWith("java.util.ImmutableCollections$")
+                || name.equals("java.util.Arrays$ArrayList"))
+            && !SortedSet.class.isAssignableFrom(type) && !SortedMap.class.isAssignableFrom(type);
+    }
+}
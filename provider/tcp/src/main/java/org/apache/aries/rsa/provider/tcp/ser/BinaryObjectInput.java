@@ -0,0 +1,289 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp.ser;
+
+import static org.apache.aries.rsa.provider.tcp.ser.BinaryFormat.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInput;
+import java.io.StreamCorruptedException;
+import java.lang.reflect.Array;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.osgi.framework.Version;
+
+/**
+ * Reads objects in the format of the {@link BinarySerializer} from a complete
+ * message, whose remaining size is known by {@link #available()}.
+ */
+class BinaryObjectInput extends DataInputStream implements ObjectInput {
+    private final ClassLoader[] loaders;
+    private final List<String> classNames = new ArrayList<>();
+
+    BinaryObjectInput(InputStream in, ClassLoader loader) {
+        super(in);
+        ClassLoader own = BinaryObjectInput.class.getClassLoader();
+        this.loaders = loader == null || loader == own ? new ClassLoader[] {own} : new ClassLoader[] {loader, own};
+    }
+
+    @Override
+    public Object readObject() throws ClassNotFoundException, IOException {
+        byte tag = readByte();
+        switch (tag) {
+        case NULL:
+            return null;
+        case TRUE:
+            return Boolean.TRUE;
+        case FALSE:
+            return Boolean.FALSE;
+        case BYTE:
+            return readByte();
+        case SHORT:
+            return readShort();
+        case CHAR:
+            return readChar();
+        case INT:
+            return (int)readVarLong();
+        case LONG:
+            return readVarLong();
+        case FLOAT:
+            return readFloat();
+        case DOUBLE:
+            return readDouble();
+        case STRING:
+            return readString();
+        case ENUM:
+            return readEnum();
+        case VERSION:
+            return Version.parseVersion(readString());
+        case LIST: {
+            int size = readLength();
+            List<Object> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(readObject());
+            }
+            return list;
+        }
+        case SET: {
+            int size = readLength();
+            Set<Object> set = new LinkedHashSet<>(capacity(size));
+            for (int i = 0; i < size; i++) {
+                set.add(readObject());
+            }
+            return set;
+        }
+        case MAP: {
+            int size = readLength();
+            Map<Object, Object> map = new LinkedHashMap<>(capacity(size));
+            for (int i = 0; i < size; i++) {
+                map.put(readObject(), readObject());
+            }
+            return map;
+        }
+        case DTO:
+            return readDTO();
+        case SERIALIZED:
+            return readSerialized();
+        default:
+            return readArray(tag);
+        }
+    }
+
+    private Object readArray(byte tag) throws ClassNotFoundException, IOException {
+        switch (tag) {
+        case BYTE_ARRAY: {
+            byte[] a = new byte[readLength()];
+            readFully(a);
+            return a;
+        }
+        case INT_ARRAY: {
+            int[] a = new int[readLength()];
+            for (int i = 0; i < a.length; i++) {
+                a[i] = (int)readVarLong();
+            }
+            return a;
+        }
+        case LONG_ARRAY: {
+            long[] a = new long[readLength()];
+            for (int i = 0; i < a.length; i++) {
+                a[i] = readVarLong();
+            }
+            return a;
+        }
+        case DOUBLE_ARRAY: {
+            double[] a = new double[readLength()];
+            for (int i = 0; i < a.length; i++) {
+                a[i] = readDouble();
+            }
+            return a;
+        }
+        case FLOAT_ARRAY: {
+            float[] a = new float[readLength()];
+            for (int i = 0; i < a.length; i++) {
+                a[i] = readFloat();
+            }
+            return a;
+        }
+        case BOOLEAN_ARRAY: {
+            boolean[] a = new boolean[readLength()];
+            for (int i = 0; i < a.length; i++) {
+                a[i] = readBoolean();
+            }
+            return a;
+        }
+        case SHORT_ARRAY: {
+            short[] a = new short[readLength()];
+            for (int i = 0; i < a.length; i++) {
+                a[i] = readShort();
+            }
+            return a;
+        }
+        case CHAR_ARRAY: {
+            char[] a = new char[readLength()];
+            for (int i = 0; i < a.length; i++) {
+                a[i] = readChar();
+            }
+            return a;
+        }
+        case OBJECT_ARRAY: {
+            Class<?> type = readClass();
+            Object[] a = (Object[])Array.newInstance(type, readLength());
+            for (int i = 0; i < a.length; i++) {
+                a[i] = readObject();
+            }
+            return a;
+        }
+        default:
+            throw new StreamCorruptedException("invalid tag: " + tag);
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private Object readEnum() throws ClassNotFoundException, IOException {
+        Class<?> type = readClass();
+        String name = readString();
+        if (!type.isEnum()) {
+            throw new InvalidClassException(type.getName(), "not an enum");
+        }
+        return Enum.valueOf((Class)type, name);
+    }
+
+    private Object readDTO() throws ClassNotFoundException, IOException {
+        Class<?> type = readClass();
+        DTOCodec codec = DTOCodec.forClass(type);
+        int schemaHash = readInt();
+        if (codec == null) {
+            throw new InvalidClassException(type.getName(), "not a DTO");
+        }
+        if (codec.getSchemaHash() != schemaHash) {
+            throw new InvalidClassException(type.getName(), "incompatible DTO fields");
+        }
+        return codec.read(this);
+    }
+
+    private Object readSerialized() throws ClassNotFoundException, IOException {
+        byte[] bytes = new byte[readLength()];
+        readFully(bytes);
+        try (BasicObjectInputStream in = new BasicObjectInputStream(new ByteArrayInputStream(bytes))) {
+            for (ClassLoader loader : loaders) {
+                in.addClassLoader(loader);
+            }
+            return in.readObject();
+        }
+    }
+
+    private Class<?> readClass() throws ClassNotFoundException, IOException {
+        String name = readClassName();
+        Class<?> type = ClassResolutionCache.getInstance().resolve(name, loaders);
+        if (type == null) {
+            throw new ClassNotFoundException(name);
+        }
+        return type;
+    }
+
+    private String readClassName() throws IOException {
+        int index = readVarInt();
+        if (index == 0) {
+            String name = readString();
+            classNames.add(name);
+            return name;
+        }
+        if (index > classNames.size()) {
+            throw new StreamCorruptedException("invalid class reference: " + index);
+        }
+        return classNames.get(index - 1);
+    }
+
+    private String readString() throws IOException {
+        byte[] bytes = new byte[readLength()];
+        readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads the length of an array, string or collection, which can't exceed the remaining
+     * bytes as every element takes at least one byte. This prevents a corrupt stream from
+     * allocating huge arrays.
+     */
+    private int readLength() throws IOException {
+        int length = readVarInt();
+        if (length < 0 || length > available()) {
+            throw new StreamCorruptedException("invalid length: " + length);
+        }
+        return length;
+    }
+
+    private static int capacity(int size) {
+        return size < 3 ? size + 1 : (int)(size / 0.75f + 1.0f);
+    }
+
+    private int readVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("invalid varint");
+    }
+
+    long readVarLong() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readUnsignedByte();
+            value |= (long)(b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (value >>> 1) ^ -(value & 1);
+            }
+        }
+        throw new StreamCorruptedException("invalid varlong");
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp.ser;
+
+import static org.apache.aries.rsa.provider.tcp.ser.BinaryFormat.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutput;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.osgi.framework.Version;
+
+/**
+ * Writes objects in the format of the {@link BinarySerializer}.
+ */
+class BinaryObjectOutput extends DataOutputStream implements ObjectOutput {
+    private final Map<String, Integer> classNames = new HashMap<>();
+
+    BinaryObjectOutput(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void writeObject(Object obj) throws IOException {
+        if (obj == null) {
+            writeByte(NULL);
+        } else if (obj instanceof String) {
+            writeByte(STRING);
+            writeString((String)obj);
+        } else if (obj instanceof Integer) {
+            writeByte(INT);
+            writeVarLong((Integer)obj);
+        } else if (obj instanceof Long) {
+            writeByte(LONG);
+            writeVarLong((Long)obj);
+        } else if (obj instanceof Boolean) {
+            writeByte((Boolean)obj ? TRUE : FALSE);
+        } else if (obj instanceof Double) {
+            writeByte(DOUBLE);
+            writeDouble((Double)obj);
+        } else if (obj instanceof Float) {
+            writeByte(FLOAT);
+            writeFloat((Float)obj);
+        } else if (obj instanceof Short) {
+            writeByte(SHORT);
+            writeShort((Short)obj);
+        } else if (obj instanceof Byte) {
+            writeByte(BYTE);
+            writeByte((Byte)obj);
+        } else if (obj instanceof Character) {
+            writeByte(CHAR);
+            writeChar((Character)obj);
+        } else if (obj.getClass().isArray()) {
+            writeArray(obj);
+        } else if (obj instanceof Enum) {
+            writeByte(ENUM);
+            writeClassName(((Enum<?>)obj).getDeclaringClass());
+            writeString(((Enum<?>)obj).name());
+        } else if (obj instanceof Version) {
+            writeByte(VERSION);
+            writeString(obj.toString());
+        } else if (obj instanceof Collection && isPlainCollection(obj.getClass())
+                && (obj instanceof List || obj instanceof Set)) {
+            Collection<?> collection = (Collection<?>)obj;
+            writeByte(obj instanceof List ? LIST : SET);
+            writeVarInt(collection.size());
+            for (Object element : collection) {
+                writeObject(element);
+            }
+        } else if (obj instanceof Map && isPlainCollection(obj.getClass())) {
+            Map<?, ?> map = (Map<?, ?>)obj;
+            writeByte(MAP);
+            writeVarInt(map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                writeObject(entry.getKey());
+                writeObject(entry.getValue());
+            }
+        } else {
+            DTOCodec codec = DTOCodec.forClass(obj.getClass());
+            if (codec != null) {
+                writeByte(DTO);
+                writeClassName(obj.getClass());
+                writeInt(codec.getSchemaHash());
+                codec.write(this, obj);
+            } else {
+                writeSerialized(obj);
+            }
+        }
+    }
+
+    private void writeArray(Object array) throws IOException {
+        Class<?> type = array.getClass().getComponentType();
+        if (type == byte.class) {
+            byte[] a = (byte[])array;
+            writeByte(BYTE_ARRAY);
+            writeVarInt(a.length);
+            write(a);
+        } else if (type == int.class) {
+            int[] a = (int[])array;
+            writeByte(INT_ARRAY);
+            writeVarInt(a.length);
+            for (int v : a) {
+                writeVarLong(v);
+            }
+        } else if (type == long.class) {
+            long[] a = (long[])array;
+            writeByte(LONG_ARRAY);
+            writeVarInt(a.length);
+            for (long v : a) {
+                writeVarLong(v);
+            }
+        } else if (type == double.class) {
+            double[] a = (double[])array;
+            writeByte(DOUBLE_ARRAY);
+            writeVarInt(a.length);
+            for (double v : a) {
+                writeDouble(v);
+            }
+        } else if (type == float.class) {
+            float[] a = (float[])array;
+            writeByte(FLOAT_ARRAY);
+            writeVarInt(a.length);
+            for (float v : a) {
+                writeFloat(v);
+            }
+        } else if (type == boolean.class) {
+            boolean[] a = (boolean[])array;
+            writeByte(BOOLEAN_ARRAY);
+            writeVarInt(a.length);
+            for (boolean v : a) {
+                writeBoolean(v);
+            }
+        } else if (type == short.class) {
+            short[] a = (short[])array;
+            writeByte(SHORT_ARRAY);
+            writeVarInt(a.length);
+            for (short v : a) {
+                writeShort(v);
+            }
+        } else if (type == char.class) {
+            char[] a = (char[])array;
+            writeByte(CHAR_ARRAY);
+            writeVarInt(a.length);
+            for (char v : a) {
+                writeChar(v);
+            }
+        } else {
+            Object[] a = (Object[])array;
+            writeByte(OBJECT_ARRAY);
+            writeClassName(type);
+            writeVarInt(a.length);
+            for (Object element : a) {
+                writeObject(element);
+            }
+        }
+    }
+
+    private void writeSerialized(Object obj) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new BasicObjectOutputStream(bout)) {
+            out.writeObject(obj);
+        }
+        writeByte(SERIALIZED);
+        writeVarInt(bout.size());
+        bout.writeTo(this);
+    }
+
+    private void writeClassName(Class<?> type) throws IOException {
+        String name = type.getName();
+        Integer index = classNames.get(name);
+        if (index != null) {
+            writeVarInt(index + 1);
+        } else {
+            classNames.put(name, classNames.size());
+            writeVarInt(0);
+            writeString(name);
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(bytes.length);
+        write(bytes);
+    }
+
+    /**
+     * Writes a non-negative int in 7-bit groups, least significant first.
+     */
+    private void writeVarInt(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        write(value);
+    }
+
+    /**
+     * Writes a signed long in zig-zag encoding, so that small negative numbers are short too.
+     */
+    void writeVarLong(long value) throws IOException {
+        value = (value << 1) ^ (value >> 63);
+        while ((value & ~0x7FL) != 0) {
+            write((int)(value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        write((int)value);
+    }
+}
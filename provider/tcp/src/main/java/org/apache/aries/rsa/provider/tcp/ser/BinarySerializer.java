@@ -0,0 +1,54 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp.ser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.OutputStream;
+
+/**
+ * A compact binary serializer for the types typically found in service signatures.
+ * <p>
+ * Primitives and their wrappers, strings, arrays, standard collections and maps,
+ * enums, versions and OSGi DTOs are written as a tag byte followed by a compact
+ * encoding, using variable-length integers and naming each class only once per
+ * message. Lists, sets and maps are decoded as {@code ArrayList}, {@code LinkedHashSet}
+ * and {@code LinkedHashMap}. Any other object, such as an exception, is embedded
+ * using Java serialization.
+ */
+public class BinarySerializer implements Serializer {
+    public static final String NAME = "binary";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public ObjectOutput newOutput(OutputStream out) throws IOException {
+        return new BinaryObjectOutput(out);
+    }
+
+    @Override
+    public ObjectInput newInput(InputStream in, ClassLoader loader) throws IOException {
+        return new BinaryObjectInput(in, loader);
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp.ser;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caches the classes resolved by {@link BasicObjectInputStream}s, shared by all streams.
+ * <p>
+ * Entries are keyed by the class name and the class loaders tried for it, in order.
+ * Names which none of the loaders can load are cached as well, so that repeated
+ * failures do not load and throw again. Since entries hold on to class loaders,
+ * the cache must be cleared whenever bundles are resolved, refreshed or uninstalled.
+ */
+public final class ClassResolutionCache {
+    static final int DEFAULT_MAX_SIZE = 4096;
+
+    private static final ClassResolutionCache INSTANCE = new ClassResolutionCache(DEFAULT_MAX_SIZE);
+    private static final Object NOT_FOUND = new Object();
+
+    private final Logger log = LoggerFactory.getLogger(ClassResolutionCache.class);
+    private final Map<Key, Object> entries = new ConcurrentHashMap<>();
+    private final int maxSize;
+
+    ClassResolutionCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public static ClassResolutionCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Resolves a class using the first of the given loaders which can load it.
+     *
+     * @param className the class name
+     * @param loaders the loaders to try in order
+     * @return the class, or null if none of the loaders can load it
+     */
+    Class<?> resolve(String className, ClassLoader[] loaders) {
+        Key key = new Key(className, loaders);
+        Object value = entries.get(key);
+        if (value == null) {
+            value = load(className, loaders);
+            if (entries.size() >= maxSize) {
+                evictOne();
+            }
+            entries.put(key, value);
+        }
+        return value == NOT_FOUND ? null : (Class<?>)value;
+    }
+
+    private Object load(String className, ClassLoader[] loaders) {
+        ClassNotFoundException exception = null;
+        for (ClassLoader loader : loaders) {
+            try {
+                // Must use Class.forName instead of loader.loadClass to handle cases like array of user classes
+                return Class.forName(className, false, loader);
+            } catch (ClassNotFoundException e) {
+                if (exception == null)
+                    exception = e;
+                else
+                    exception.addSuppressed(e);
+            }
+        }
+        log.debug("Error loading class using classloader of user bundle", exception);
+        return NOT_FOUND;
+    }
+
+    private void evictOne() {
+        Iterator<Key> it = entries.keySet().iterator();
+        if (it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes all entries, releasing the cached classes and class loaders.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    private static final class Key {
+        private final String className;
+        private final ClassLoader[] loaders;
+        private final int hash;
+
+        Key(String className, ClassLoader[] loaders) {
+            this.className = className;
+            this.loaders = loaders;
+            this.hash = 31 * className.hashCode() + Arrays.hashCode(loaders);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key)obj;
+            return hash == other.hash && className.equals(other.className) && Arrays.equals(loaders, other.loaders);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp.ser;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads and writes the public fields of a DTO type through method handles,
+ * which are created once per type and then invoked without further reflection.
+ * <p>
+ * The fields are ordered by name, and their names and types make up the schema hash,
+ * which lets both sides of a connection verify that they agree on the layout.
+ */
+final class DTOCodec {
+    private static final ClassValue<Boolean> IS_DTO = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return !type.isArray() && !type.isInterface() && !type.isPrimitive() && DTOUtil.isDTOType(type);
+        }
+    };
+
+    private static final ClassValue<DTOCodec> CODECS = new ClassValue<DTOCodec>() {
+        @Override
+        protected DTOCodec computeValue(Class<?> type) {
+            if (!isDTOType(type)) {
+                return null;
+            }
+            try {
+                return new DTOCodec(type);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return null; // e.g. a final field or an inaccessible type
+            }
+        }
+    };
+
+    private final Class<?> type;
+    private final MethodHandle constructor;
+    private final FieldCodec[] fields;
+    private final int schemaHash;
+
+    private DTOCodec(Class<?> type) throws ReflectiveOperationException {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        this.type = type;
+        this.constructor = lookup.findConstructor(type, MethodType.methodType(void.class))
+            .asType(MethodType.methodType(Object.class));
+        List<Field> publicFields = new ArrayList<>();
+        for (Field field : type.getFields()) {
+            if (!Modifier.isStatic(field.getModifiers())) {
+                publicFields.add(field);
+            }
+        }
+        publicFields.sort(Comparator.comparing(Field::getName));
+        this.fields = new FieldCodec[publicFields.size()];
+        StringBuilder schema = new StringBuilder();
+        for (int i = 0; i < fields.length; i++) {
+            Field field = publicFields.get(i);
+            fields[i] = new FieldCodec(lookup, field);
+            schema.append(field.getName()).append(':').append(field.getType().getName()).append(';');
+        }
+        this.schemaHash = schema.toString().hashCode();
+    }
+
+    /**
+     * Returns whether the given type is a DTO, caching the reflective check.
+     */
+    static boolean isDTOType(Class<?> type) {
+        return IS_DTO.get(type);
+    }
+
+    /**
+     * Returns the codec of the given type, or null if it is not a DTO type or
+     * its fields can't be accessed through method handles.
+     */
+    static DTOCodec forClass(Class<?> type) {
+        return CODECS.get(type);
+    }
+
+    int getSchemaHash() {
+        return schemaHash;
+    }
+
+    void write(BinaryObjectOutput out, Object dto) throws IOException {
+        try {
+            for (FieldCodec field : fields) {
+                field.write(out, dto);
+            }
+        } catch (IOException | RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IOException("Error writing DTO " + type.getName(), t);
+        }
+    }
+
+    Object read(BinaryObjectInput in) throws IOException, ClassNotFoundException {
+        try {
+            Object dto = constructor.invokeExact();
+            for (FieldCodec field : fields) {
+                field.read(in, dto);
+            }
+            return dto;
+        } catch (IOException | ClassNotFoundException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IOException("Error reading DTO " + type.getName(), t);
+        }
+    }
+
+    /**
+     * Returns the field values by field name.
+     */
+    Map<String, Object> toMap(Object dto) {
+        Map<String, Object> map = new HashMap<>();
+        try {
+            for (FieldCodec field : fields) {
+                map.put(field.name, field.getter.invoke(dto));
+            }
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("Error reading DTO " + type.getName(), t);
+        }
+        return map;
+    }
+
+    /**
+     * Creates a DTO with the given field values.
+     *
+     * @param map the field values by field name
+     * @return the DTO, or null if a value does not fit its field, e.g. a nested DTO
+     *         converted to a map by an older version
+     */
+    Object fromMap(Map<String, ?> map) {
+        try {
+            Object dto = constructor.invokeExact();
+            for (FieldCodec field : fields) {
+                Object value = map.get(field.name);
+                if (value == null ? field.type.isPrimitive() : !field.boxedType.isInstance(value)) {
+                    return null;
+                }
+                field.setter.invoke(dto, value);
+            }
+            return dto;
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("Error creating DTO " + type.getName(), t);
+        }
+    }
+
+    /**
+     * Accesses a single field. Primitive fields are written without a type tag
+     * and without boxing, other fields as tagged objects.
+     */
+    private static final class FieldCodec {
+        final String name;
+        final Class<?> type;
+        final Class<?> boxedType;
+        final MethodHandle getter; // exact field type
+        final MethodHandle setter;
+
+        FieldCodec(MethodHandles.Lookup lookup, Field field) throws IllegalAccessException {
+            this.name = field.getName();
+            this.type = field.getType();
+            this.boxedType = MethodType.methodType(type).wrap().returnType();
+            Class<?> valueType = type.isPrimitive() ? type : Object.class;
+            this.getter = lookup.unreflectGetter(field)
+                .asType(MethodType.methodType(valueType, Object.class));
+            this.setter = lookup.unreflectSetter(field)
+                .asType(MethodType.methodType(void.class, Object.class, valueType));
+        }
+
+        void write(BinaryObjectOutput out, Object dto) throws Throwable {
+            if (type == int.class) {
+                out.writeVarLong((int)getter.invokeExact(dto));
+            } else if (type == long.class) {
+                out.writeVarLong((long)getter.invokeExact(dto));
+            } else if (type == boolean.class) {
+                out.writeBoolean((boolean)getter.invokeExact(dto));
+            } else if (type == double.class) {
+                out.writeDouble((double)getter.invokeExact(dto));
+            } else if (type == float.class) {
+                out.writeFloat((float)getter.invokeExact(dto));
+            } else if (type == short.class) {
+                out.writeShort((short)getter.invokeExact(dto));
+            } else if (type == byte.class) {
+                out.writeByte((byte)getter.invokeExact(dto));
+            } else if (type == char.class) {
+                out.writeChar((char)getter.invokeExact(dto));
+            } else {
+                out.writeObject((Object)getter.invokeExact(dto));
+            }
+        }
+
+        void read(BinaryObjectInput in, Object dto) throws Throwable {
+            if (type == int.class) {
+                setter.invokeExact(dto, (int)in.readVarLong());
+            } else if (type == long.class) {
+                setter.invokeExact(dto, in.readVarLong());
+            } else if (type == boolean.class) {
+                setter.invokeExact(dto, in.readBoolean());
+            } else if (type == double.class) {
+                setter.invokeExact(dto, in.readDouble());
+            } else if (type == float.class) {
+                setter.invokeExact(dto, in.readFloat());
+            } else if (type == short.class) {
+                setter.invokeExact(dto, in.readShort());
+            } else if (type == byte.class) {
+                setter.invokeExact(dto, in.readByte());
+            } else if (type == char.class) {
+                setter.invokeExact(dto, in.readChar());
+            } else {
+                Object value = in.readObject();
+                if (value != null && !type.isInstance(value)) {
+                    throw new IOException("Invalid value of type " + value.getClass().getName() + " for DTO field " + name);
+                }
+                setter.invokeExact(dto, value);
+            }
+        }
+    }
+}
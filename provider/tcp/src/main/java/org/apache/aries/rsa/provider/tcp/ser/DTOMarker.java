@@ -32,14 +32,24 @@ public class DTOMarker implements Serializable {
 
     @SuppressWarnings("unchecked")
     public DTOMarker(Object dto) {
-        Converter converter = Converters.standardConverter();
         className = dto.getClass().getName();
-        content = converter.convert(dto).sourceAsDTO().to(Map.class);
+        DTOCodec codec = DTOCodec.forClass(dto.getClass());
+        if (codec != null) {
+            content = codec.toMap(dto);
+        } else {
+            Converter converter = Converters.standardConverter();
+            content = converter.convert(dto).sourceAsDTO().to(Map.class);
+        }
     }
 
     public Object getDTO(ClassLoader classLoader) {
         try {
             Class<?> clazz = classLoader.loadClass(className);
+            DTOCodec codec = DTOCodec.forClass(clazz);
+            Object dto = codec != null ? codec.fromMap(content) : null;
+            if (dto != null) {
+                return dto;
+            }
             Converter converter = Converters.standardConverter();
             return converter.convert(content).targetAsDTO().to(clazz);
         } catch (ClassNotFoundException e) {
@@ -0,0 +1,61 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp.ser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.OutputStream;
+
+/**
+ * Encodes the method names, arguments, results and exceptions exchanged over
+ * pooled connections.
+ * <p>
+ * An exported service selects its serializer by name with the
+ * {@code aries.rsa.serializer} endpoint property, which is advertised in its
+ * endpoint description so that importing clients use the same one. Serializers
+ * other than the built-in ones can be registered as OSGi services.
+ */
+public interface Serializer {
+
+    /**
+     * Returns the name by which endpoints select this serializer.
+     */
+    String getName();
+
+    /**
+     * Creates an output writing the encoded objects to the given stream.
+     *
+     * @param out the stream to write to
+     * @return the output, which closes the stream when it is closed
+     * @throws IOException if the output cannot be created
+     */
+    ObjectOutput newOutput(OutputStream out) throws IOException;
+
+    /**
+     * Creates an input decoding objects from the given stream.
+     *
+     * @param in the stream to read from
+     * @param loader the class loader used to resolve the classes of the decoded objects
+     * @return the input, which closes the stream when it is closed
+     * @throws IOException if the input cannot be created
+     */
+    ObjectInput newInput(InputStream in, ClassLoader loader) throws IOException;
+}
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class AdmissionControlTest {
+
+    private ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testUnlimited() throws Exception {
+        AdmissionControl admission = new AdmissionControl(0, 0, executor);
+        CountDownLatch done = new CountDownLatch(10);
+        for (int c = 0; c < 10; c++) {
+            assertTrue(admission.execute(release -> done.countDown()));
+        }
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals(0, admission.getRejectedCount());
+    }
+
+    @Test
+    public void testQueueAndReject() throws Exception {
+        AdmissionControl admission = new AdmissionControl(1, 1, executor);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> order = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(2);
+        assertTrue(admission.execute(slot -> {
+            await(release);
+            order.add("first");
+            done.countDown();
+        }));
+        assertTrue(admission.execute(slot -> {
+            order.add("second");
+            done.countDown();
+        }));
+        assertFalse(admission.execute(slot -> order.add("rejected")));
+        assertEquals(1, admission.getActiveCount());
+        assertEquals(1, admission.getQueuedCount());
+        assertEquals(1, admission.getRejectedCount());
+        release.countDown();
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals("[first, second]", order.toString());
+        awaitIdle(admission); // the slot is freed after the task returns
+    }
+
+    @Test
+    public void testEarlyRelease() throws Exception {
+        AdmissionControl admission = new AdmissionControl(1, 0, executor);
+        CountDownLatch released = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        assertTrue(admission.execute(slot -> {
+            slot.run();
+            slot.run(); // freeing twice has no effect
+            released.countDown();
+            await(finish);
+        }));
+        assertTrue(released.await(1, TimeUnit.SECONDS));
+        assertEquals(0, admission.getActiveCount());
+        CountDownLatch second = new CountDownLatch(1);
+        assertTrue(admission.execute(slot -> second.countDown()));
+        assertTrue(second.await(1, TimeUnit.SECONDS));
+        finish.countDown();
+    }
+
+    @Test
+    public void testAcquireWaitsForRelease() throws Exception {
+        AdmissionControl admission = new AdmissionControl(1, 1, executor);
+        assertTrue(admission.acquire());
+        CountDownLatch acquired = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                if (admission.acquire()) {
+                    acquired.countDown();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        while (admission.getQueuedCount() == 0) {
+            Thread.sleep(10);
+        }
+        assertFalse(admission.acquire()); // queue is full
+        admission.release();
+        assertTrue(acquired.await(1, TimeUnit.SECONDS));
+        assertEquals(1, admission.getActiveCount());
+    }
+
+    @Test
+    public void testQueuedTaskRejectedByExecutor() throws Exception {
+        // a single thread without a queue, like a bulkhead with bulkheadQueueSize 0
+        ThreadPoolExecutor bulkhead = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new SynchronousQueue<>());
+        try {
+            AdmissionControl admission = new AdmissionControl(1, 1, bulkhead);
+            CountDownLatch finish = new CountDownLatch(1);
+            CountDownLatch released = new CountDownLatch(1);
+            assertTrue(admission.execute(slot -> {
+                await(finish);
+                slot.run(); // hands the slot over while this thread is still busy
+                released.countDown();
+            }));
+            CountDownLatch rejected = new CountDownLatch(1);
+            assertTrue(admission.execute(slot -> { }, rejected::countDown));
+            finish.countDown();
+            assertTrue(rejected.await(1, TimeUnit.SECONDS));
+            assertTrue(released.await(1, TimeUnit.SECONDS));
+            awaitIdle(admission);
+            assertEquals(0, admission.getQueuedCount());
+            assertEquals(1, admission.getRejectedCount());
+
+            // the slot is free again
+            CountDownLatch done = new CountDownLatch(1);
+            while (!bulkhead.getQueue().isEmpty() || bulkhead.getActiveCount() > 0) {
+                Thread.sleep(10);
+            }
+            assertTrue(admission.execute(slot -> done.countDown()));
+            assertTrue(done.await(1, TimeUnit.SECONDS));
+        } finally {
+            bulkhead.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testTaskRejectedByExecutorIsCounted() {
+        AdmissionControl admission = new AdmissionControl(1, 0, task -> {
+            throw new RejectedExecutionException();
+        });
+        assertThrows(RejectedExecutionException.class, () -> admission.execute(slot -> { }));
+        assertEquals(1, admission.getRejectedCount());
+        assertEquals(0, admission.getActiveCount());
+    }
+
+    private static void awaitIdle(AdmissionControl admission) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (admission.getActiveCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, admission.getActiveCount());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AsyncExecutorTest {
+
+    @Test
+    public void testAdmission() {
+        try (AsyncExecutor executor = new AsyncExecutor("test", 1, 1)) {
+            assertEquals(2, executor.getMaxPending());
+            assertTrue(executor.tryAcquire());
+            assertTrue(executor.tryAcquire());
+            assertFalse(executor.tryAcquire());
+            assertEquals(2, executor.getPendingCount());
+            assertEquals(1, executor.getRejectedCount());
+            executor.release();
+            assertTrue(executor.tryAcquire());
+        }
+    }
+
+    @Test
+    public void testNamedThreads() throws InterruptedException {
+        try (AsyncExecutor executor = new AsyncExecutor("test-async", 1, 0)) {
+            CountDownLatch latch = new CountDownLatch(1);
+            String[] name = new String[1];
+            executor.execute(() -> {
+                name[0] = Thread.currentThread().getName();
+                latch.countDown();
+            });
+            assertTrue(latch.await(1, TimeUnit.SECONDS));
+            assertEquals("test-async-1", name[0]);
+        }
+    }
+
+    @Test
+    public void testSharedDelegateIsNotClosed() {
+        ExecutorService delegate = Executors.newSingleThreadExecutor();
+        try {
+            AsyncExecutor executor = new AsyncExecutor(delegate, 0);
+            assertTrue(executor.tryAcquire());
+            assertEquals(0, executor.getPendingCount());
+            executor.close();
+            assertFalse(delegate.isShutdown());
+        } finally {
+            delegate.shutdown();
+        }
+    }
+}
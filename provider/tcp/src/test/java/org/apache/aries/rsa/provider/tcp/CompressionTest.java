@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CompressionTest {
+
+    @Test
+    public void testSmallDataIsNotCompressed() throws IOException {
+        Compression compression = new Compression(100, 1);
+        byte[] data = new byte[99];
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertFalse(compression.write(data, 0, data.length, out));
+        assertArrayEquals(data, out.toByteArray());
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Compression compression = new Compression(100, 1);
+        byte[] data = new byte[100000];
+        Arrays.fill(data, (byte)'x');
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(42); // a header preceding the compressed data
+        assertTrue(compression.write(data, 0, data.length, out));
+        byte[] compressed = out.toByteArray();
+        assertTrue(compressed.length < data.length / 10);
+        assertArrayEquals(data, Compression.inflate(compressed, 1, compressed.length - 1));
+    }
+
+    @Test
+    public void testIncompressibleDataIsWrittenAsIs() throws IOException {
+        Compression compression = new Compression(100, 1);
+        byte[] data = new byte[10000];
+        new Random(42).nextBytes(data);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertFalse(compression.write(data, 0, data.length, out));
+        assertArrayEquals(data, out.toByteArray());
+    }
+
+    @Test
+    public void testNoneIsDisabled() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertFalse(Compression.NONE.isEnabled());
+        assertFalse(Compression.NONE.write(new byte[100000], 0, 100000, out));
+    }
+
+    @Test(expected = StreamCorruptedException.class)
+    public void testTruncatedData() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Compression(0, 1).write(new byte[1000], 0, 1000, out);
+        byte[] compressed = out.toByteArray();
+        Compression.inflate(compressed, 0, compressed.length / 2);
+    }
+
+    @Test(expected = StreamCorruptedException.class)
+    public void testInvalidData() throws IOException {
+        Compression.inflate(new byte[] {1, 2, 3, 4}, 0, 4);
+    }
+}
@@ -71,6 +71,15 @@ public class EndpointParserTest {
         Assert.assertEquals(11111, getParser().getPort());
     }
 
+    @Test
+    public void testVirtualThreads() {
+        Assert.assertFalse(getParser().isVirtualThreads());
+        props.put(EndpointPropertiesParser.VIRTUAL_THREADS_KEY, "true");
+        Assert.assertTrue(getParser().isVirtualThreads());
+        props.put(EndpointPropertiesParser.VIRTUAL_THREADS_KEY, Boolean.FALSE);
+        Assert.assertFalse(getParser().isVirtualThreads());
+    }
+
     @Test(expected=IllegalArgumentException.class)
     public void testTimeoutInvalid() {
         props.put(EndpointPropertiesParser.TIMEOUT_KEY, new Date());
@@ -112,4 +112,93 @@ public class MethodInvokerTest {
         assertThrows(NoSuchMethodException.class, () -> invoker.invoke("f", new Object[] { 1, 2 }));
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testMethodKey() throws Exception {
+        class Tester {
+            public int sum(int i, int j) { return i + j; }
+            public String join(String[] s, java.util.List<String> l) { return null; }
+        }
+        assertEquals("sum(int,int)", MethodInvoker.getMethodKey(Tester.class.getMethod("sum", int.class, int.class)));
+        assertEquals("join([Ljava.lang.String;,java.util.List)",
+            MethodInvoker.getMethodKey(Tester.class.getMethod("join", String[].class, java.util.List.class)));
+    }
+
+    @Test
+    public void testInvokeByKey() throws Exception {
+        class Tester {
+            public int sum() { return 0; }
+            public int sum(int i, int j) { return i + j; }
+            public long sum(long i, long j) { return i + j; }
+            public void nothing() { }
+        }
+        MethodInvoker invoker = new MethodInvoker(new Tester());
+        assertEquals(0, invoker.invoke("sum()", null));
+        assertEquals(3, invoker.invoke("sum(int,int)", new Object[] { 1, 2 }));
+        assertEquals(3L, invoker.invoke("sum(long,long)", new Object[] { 1L, 2L }));
+        assertNull(invoker.invoke("nothing()", new Object[] {}));
+    }
+
+    @Test
+    public void testInvokeById() throws Exception {
+        class Tester {
+            public int sum(int i, int j) { return i + j; }
+            public long sum(long i, long j) { return i + j; }
+        }
+        MethodInvoker invoker = new MethodInvoker(new Tester());
+        String id = MethodInvoker.getMethodId(Tester.class.getMethod("sum", int.class, int.class));
+        assertTrue(id.startsWith("#"));
+        assertNotEquals(id, MethodInvoker.getMethodId(Tester.class.getMethod("sum", long.class, long.class)));
+        assertEquals("sum(int,int)", invoker.resolve(id));
+        assertEquals(3, invoker.invoke(id, new Object[] { 1, 2 }));
+        assertThrows(NoSuchMethodException.class, () -> invoker.invoke("#0", new Object[] { 1, 2 }));
+    }
+
+    @Test
+    public void testCollidingIdsFallBackToKeys() throws Exception {
+        class Tester {
+            public int sum(int i, int j) { return i + j; }
+            public long sum(long i, long j) { return i + j; }
+            public int neg(int i) { return -i; }
+        }
+        // an id function under which both sum methods collide
+        java.util.function.Function<String, String> ids = key -> "#" + key.substring(0, key.indexOf('('));
+        java.util.Map<String, String> refs = MethodInvoker.getMethodRefs(
+            java.util.Arrays.asList("sum(int,int)", "sum(long,long)", "neg(int)"), ids);
+        assertEquals("sum(int,int)", refs.get("sum(int,int)"));
+        assertEquals("sum(long,long)", refs.get("sum(long,long)"));
+        assertEquals("#neg", refs.get("neg(int)"));
+
+        MethodInvoker invoker = new MethodInvoker(new Tester(), ids);
+        assertThrows(NoSuchMethodException.class, () -> invoker.resolve("#sum"));
+        assertEquals(3, invoker.invoke("sum(int,int)", new Object[] { 1, 2 }));
+        assertEquals(3L, invoker.invoke("sum(long,long)", new Object[] { 1L, 2L }));
+        assertEquals(-1, invoker.invoke("#neg", new Object[] { 1 }));
+    }
+
+    @Test
+    public void testInvokeByKeyInvalidParams() {
+        class Tester {
+            public int f(int i) { return i; }
+        }
+        MethodInvoker invoker = new MethodInvoker(new Tester());
+        assertThrows(NoSuchMethodException.class, () -> invoker.invoke("f(int)", new Object[] {}));
+        assertThrows(NoSuchMethodException.class, () -> invoker.invoke("f(int)", new Object[] { null }));
+        assertThrows(NoSuchMethodException.class, () -> invoker.invoke("f(int)", new Object[] { "1" }));
+    }
+
+    @Test
+    public void testInvokeByKeyExceptionThrown() {
+        class Tester {
+            public int f(int i) { throw new IllegalArgumentException(); }
+        }
+        MethodInvoker invoker = new MethodInvoker(new Tester());
+        assertThrows(IllegalArgumentException.class, () -> {
+            try {
+                invoker.invoke("f(int)", new Object[] { 1 });
+            } catch (InvocationTargetException ite) {
+                throw ite.getCause();
+            }
+        });
+    }
+
+}
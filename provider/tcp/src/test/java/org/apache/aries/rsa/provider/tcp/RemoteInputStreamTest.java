@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class RemoteInputStreamTest {
+
+    @Test
+    public void testEmptyChunksAreSkipped() throws Exception {
+        List<Frame> sent = new ArrayList<>();
+        Streams streams = new Streams(sent::add, Runnable::run, false);
+        RemoteInputStream in = new RemoteInputStream(streams, 1);
+        in.receive(new byte[0]);
+        in.receive(new byte[] {1, 2});
+        in.receive(new byte[0]);
+        in.end(null);
+        byte[] buf = new byte[4];
+        assertEquals(2, in.read(buf, 0, buf.length));
+        assertArrayEquals(new byte[] {1, 2, 0, 0}, buf);
+        assertEquals(-1, in.read(buf, 0, buf.length));
+        assertEquals(3, sent.size()); // credit for every chunk taken, including the empty ones
+    }
+}
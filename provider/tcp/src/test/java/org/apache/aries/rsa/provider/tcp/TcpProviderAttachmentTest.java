@@ -0,0 +1,260 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.aries.rsa.spi.Endpoint;
+import org.apache.aries.rsa.util.EndpointHelper;
+import org.easymock.EasyMock;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.remoteserviceadmin.EndpointDescription;
+import org.osgi.service.remoteserviceadmin.RemoteConstants;
+
+public class TcpProviderAttachmentTest {
+    private static final int SIZE = 3 * 1024 * 1024 + 7;
+
+    private static TcpProvider provider;
+    private static BlobService javaProxy;
+    private static BlobService binaryProxy;
+    private static BlobService oldProxy;
+    private static BlobService nioProxy;
+    private static Endpoint ep;
+    private static Endpoint ep2;
+    private static Endpoint ep3;
+
+    public interface BlobService {
+        byte[] reverse(byte[] data);
+
+        CompletionStage<byte[]> reverseAsync(byte[] data);
+
+        int sum(byte[] first, String name, byte[] second);
+
+        ByteBuffer echo(ByteBuffer buffer);
+
+        boolean isDirect(ByteBuffer buffer);
+    }
+
+    public static class BlobServiceImpl implements BlobService {
+
+        @Override
+        public byte[] reverse(byte[] data) {
+            byte[] reversed = new byte[data.length];
+            for (int i = 0; i < data.length; i++) {
+                reversed[i] = data[data.length - 1 - i];
+            }
+            return reversed;
+        }
+
+        @Override
+        public CompletionStage<byte[]> reverseAsync(byte[] data) {
+            return CompletableFuture.completedFuture(reverse(data));
+        }
+
+        @Override
+        public int sum(byte[] first, String name, byte[] second) {
+            return first.length + name.length() + second.length;
+        }
+
+        @Override
+        public ByteBuffer echo(ByteBuffer buffer) {
+            return buffer;
+        }
+
+        @Override
+        public boolean isDirect(ByteBuffer buffer) {
+            return buffer.isDirect();
+        }
+    }
+
+    @BeforeClass
+    public static void createServerAndProxy() throws IOException {
+        Class<?>[] exportedInterfaces = new Class[] {BlobService.class};
+        provider = new TcpProvider();
+        Map<String, Object> props = new HashMap<>();
+        EndpointHelper.addObjectClass(props, exportedInterfaces);
+        props.put("aries.rsa.hostname", "localhost");
+        props.put("aries.rsa.port", TcpProviderTest.getFreePort());
+        props.put("aries.rsa.connections", "1");
+        BundleContext bc = EasyMock.mock(BundleContext.class);
+        props.put("aries.rsa.id", "java");
+        ep = provider.exportService(new BlobServiceImpl(), bc, props, exportedInterfaces);
+        props.put("aries.rsa.id", "binary");
+        props.put("aries.rsa.serializer", "binary");
+        props.put(RemoteConstants.SERVICE_EXPORTED_INTENTS_EXTRA, "aries.compression");
+        ep2 = provider.exportService(new BlobServiceImpl(), bc, props, exportedInterfaces);
+        props.put("aries.rsa.id", "nio");
+        props.put("aries.rsa.port", TcpProviderTest.getFreePort());
+        props.put("aries.rsa.ioThreads", "1");
+        props.put("aries.rsa.connections", "2");
+        ep3 = provider.exportService(new BlobServiceImpl(), bc, props, exportedInterfaces);
+        javaProxy = importEndpoint(ep.description());
+        binaryProxy = importEndpoint(ep2.description());
+        nioProxy = importEndpoint(ep3.description());
+        Map<String, Object> oldProps = new HashMap<>(ep.description().getProperties());
+        oldProps.put("aries.rsa.protocolVersion", 5);
+        oldProxy = importEndpoint(new EndpointDescription(oldProps));
+    }
+
+    private static BlobService importEndpoint(EndpointDescription description) {
+        return (BlobService)provider.importEndpoint(BlobService.class.getClassLoader(), null,
+            new Class[] {BlobService.class}, description);
+    }
+
+    @Test
+    public void testLargeArray() {
+        assertReversed(javaProxy, data(SIZE));
+        assertReversed(binaryProxy, data(SIZE));
+    }
+
+    @Test
+    public void testSmallArray() {
+        assertReversed(javaProxy, data(10));
+        assertReversed(javaProxy, new byte[0]);
+        assertReversed(binaryProxy, data(10));
+    }
+
+    @Test
+    public void testAsync() throws Exception {
+        byte[] data = data(SIZE);
+        byte[] reversed = javaProxy.reverseAsync(data).toCompletableFuture().get(10, TimeUnit.SECONDS);
+        assertArrayEquals(new BlobServiceImpl().reverse(data), reversed);
+    }
+
+    @Test
+    public void testSeveralAttachments() {
+        assertEquals(SIZE + 4 + 2000, javaProxy.sum(data(SIZE), "name", data(2000)));
+        assertEquals(SIZE + 4 + 10, javaProxy.sum(data(SIZE), "name", data(10)));
+    }
+
+    @Test
+    public void testByteBuffer() {
+        byte[] data = data(SIZE);
+        ByteBuffer buffer = ByteBuffer.wrap(data, 5, SIZE - 10);
+        ByteBuffer echoed = binaryProxy.echo(buffer);
+        assertEquals(5, buffer.position()); // not consumed by sending it
+        assertFalse(echoed.isDirect());
+        assertTrue(echoed.arrayOffset() > 0); // a slice of the response payload
+        assertEquals(SIZE - 10, echoed.remaining());
+        assertEquals(buffer, echoed);
+        assertFalse(javaProxy.isDirect(ByteBuffer.allocateDirect(10)));
+        ByteBuffer direct = ByteBuffer.allocateDirect(SIZE);
+        direct.put(data).flip();
+        assertEquals(direct, binaryProxy.echo(direct));
+    }
+
+    @Test
+    public void testAttachmentsAreNotCopiedIntoThePayload() throws Exception {
+        byte[] data = data(2000);
+        Attachments attachments = new Attachments();
+        Object[] values = attachments.export(new Object[] {"name", data});
+        Frame frame = attachments.frame(Frame.ATTACHMENT_REQUEST, (byte)0, 1, new byte[] {1, 2, 3});
+        assertEquals(3, frame.getPayload().length);
+        assertEquals(3 + data.length, frame.getLength());
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        frame.write(new DataOutputStream(bout));
+        Frame received = Frame.read(new DataInputStream(new ByteArrayInputStream(bout.toByteArray())));
+        assertEquals(frame.getLength(), received.getPayload().length);
+        Attachments.resolve(values, received.getPayload());
+        assertArrayEquals(data, (byte[])values[1]);
+
+        ByteBuffer[] bufs = frame.toByteBuffers();
+        assertEquals(2, bufs.length);
+        assertEquals(Frame.HEADER_SIZE + 3, bufs[0].remaining());
+        assertEquals(data.length, bufs[1].remaining());
+    }
+
+    @Test
+    public void testConcurrentResponsesOnNonBlockingConnections() throws Exception {
+        ExecutorService callers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> calls = new ArrayList<>();
+            for (int c = 0; c < 8; c++) {
+                byte[] data = data(SIZE / 4 + c);
+                calls.add(callers.submit(() -> {
+                    assertReversed(nioProxy, data);
+                    assertEquals(ByteBuffer.wrap(data), nioProxy.echo(ByteBuffer.wrap(data)));
+                }));
+            }
+            for (Future<?> call : calls) {
+                call.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testOldProtocolVersion() {
+        assertReversed(oldProxy, data(SIZE));
+        assertFalse(Attachments.isAttachable(data(Attachments.THRESHOLD - 1)));
+    }
+
+    @Test(expected = StreamCorruptedException.class)
+    public void testTruncatedPayload() throws IOException {
+        Attachments attachments = new Attachments();
+        Object[] values = attachments.export(new Object[] {data(2000)});
+        Attachments.resolve(values, new byte[1000]);
+    }
+
+    private static void assertReversed(BlobService proxy, byte[] data) {
+        assertArrayEquals(new BlobServiceImpl().reverse(data), proxy.reverse(data));
+    }
+
+    private static byte[] data(int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte)(i * 31 + i / 256);
+        }
+        return data;
+    }
+
+    @AfterClass
+    public static void close() throws IOException {
+        ep.close();
+        ep2.close();
+        ep3.close();
+        provider.deactivate();
+    }
+}
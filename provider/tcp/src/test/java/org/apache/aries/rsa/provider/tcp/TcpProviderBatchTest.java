@@ -0,0 +1,143 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.aries.rsa.spi.Endpoint;
+import org.apache.aries.rsa.util.EndpointHelper;
+import org.easymock.EasyMock;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+
+public class TcpProviderBatchTest {
+    private static final int BATCH_SIZE = 5;
+
+    private static TcpProvider provider;
+    private static BatchService fullBatchProxy;
+    private static BatchService windowProxy;
+    private static List<Endpoint> endpoints = new ArrayList<>();
+
+    public interface BatchService {
+        int echo(int value);
+
+        Future<Integer> echoAsync(int value);
+
+        Future<Integer> rendezvous(int value);
+    }
+
+    public static class BatchServiceImpl implements BatchService {
+        final CountDownLatch arrived = new CountDownLatch(BATCH_SIZE);
+
+        @Override
+        public int echo(int value) {
+            return value;
+        }
+
+        @Override
+        public Future<Integer> echoAsync(int value) {
+            return CompletableFuture.completedFuture(value);
+        }
+
+        @Override
+        public Future<Integer> rendezvous(int value) {
+            arrived.countDown();
+            try {
+                boolean all = arrived.await(5, TimeUnit.SECONDS);
+                return CompletableFuture.completedFuture(all ? value : -1);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    @BeforeClass
+    public static void createServerAndProxies() throws IOException {
+        provider = new TcpProvider();
+        // a full batch is sent right away, long before the window passes
+        fullBatchProxy = export("batch", 60000000);
+        windowProxy = export("window", 10000);
+    }
+
+    private static BatchService export(String id, int windowMicros) throws IOException {
+        Class<?>[] exportedInterfaces = new Class[] {BatchService.class};
+        Map<String, Object> props = new HashMap<>();
+        EndpointHelper.addObjectClass(props, exportedInterfaces);
+        props.put("aries.rsa.hostname", "localhost");
+        props.put("aries.rsa.port", TcpProviderTest.getFreePort());
+        props.put("aries.rsa.numThreads", String.valueOf(BATCH_SIZE));
+        props.put("aries.rsa.connections", "1");
+        props.put("aries.rsa.batchSize", String.valueOf(BATCH_SIZE));
+        props.put("aries.rsa.batchWindowMicros", String.valueOf(windowMicros));
+        props.put("aries.rsa.id", id);
+        BundleContext bc = EasyMock.mock(BundleContext.class);
+        Endpoint ep = provider.exportService(new BatchServiceImpl(), bc, props, exportedInterfaces);
+        endpoints.add(ep);
+        return (BatchService)provider.importEndpoint(
+            BatchService.class.getClassLoader(), bc, exportedInterfaces, ep.description());
+    }
+
+    @Test
+    public void testFullBatchIsSentRightAway() throws Exception {
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            results.add(fullBatchProxy.echoAsync(i));
+        }
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            assertEquals(i, results.get(i).get(5, TimeUnit.SECONDS).intValue());
+        }
+    }
+
+    @Test
+    public void testBatchedCallsRunInParallel() throws Exception {
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            results.add(fullBatchProxy.rendezvous(i));
+        }
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            assertEquals(i, results.get(i).get(10, TimeUnit.SECONDS).intValue());
+        }
+    }
+
+    @Test
+    public void testPartialBatchIsSentAfterWindow() throws Exception {
+        assertEquals(42, windowProxy.echo(42));
+        assertEquals(7, windowProxy.echoAsync(7).get(5, TimeUnit.SECONDS).intValue());
+    }
+
+    @AfterClass
+    public static void close() throws IOException {
+        for (Endpoint ep : endpoints) {
+            ep.close();
+        }
+        provider.deactivate();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.samePropertyValuesAs;
+import static org.osgi.framework.Version.parseVersion;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.aries.rsa.provider.tcp.myservice.DTOType;
+import org.apache.aries.rsa.provider.tcp.myservice.ExpectedTestException;
+import org.apache.aries.rsa.provider.tcp.myservice.MyService;
+import org.apache.aries.rsa.provider.tcp.myservice.MyServiceImpl;
+import org.apache.aries.rsa.provider.tcp.myservice.PrimitiveService;
+import org.apache.aries.rsa.provider.tcp.myservice.PrimitiveServiceImpl;
+import org.apache.aries.rsa.spi.Endpoint;
+import org.apache.aries.rsa.util.EndpointHelper;
+import org.easymock.EasyMock;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.Version;
+
+public class TcpProviderBinaryTest {
+
+    private static TcpProvider provider;
+    private static PrimitiveService primitiveProxy;
+    private static MyService myServiceProxy;
+    private static Endpoint ep;
+    private static Endpoint ep2;
+
+    @BeforeClass
+    public static void createServerAndProxy() throws IOException {
+        provider = new TcpProvider();
+        Map<String, Object> props = new HashMap<>();
+        props.put("aries.rsa.hostname", "localhost");
+        props.put("aries.rsa.port", TcpProviderTest.getFreePort());
+        props.put("aries.rsa.connections", "1");
+        props.put("aries.rsa.serializer", "binary");
+        BundleContext bc = EasyMock.mock(BundleContext.class);
+        Class<?>[] primitiveInterfaces = new Class[] {PrimitiveService.class};
+        EndpointHelper.addObjectClass(props, primitiveInterfaces);
+        props.put("aries.rsa.id", "primitive");
+        ep = provider.exportService(new PrimitiveServiceImpl(), bc, new HashMap<>(props), primitiveInterfaces);
+        Class<?>[] myInterfaces = new Class[] {MyService.class};
+        EndpointHelper.addObjectClass(props, myInterfaces);
+        props.put("aries.rsa.id", "my");
+        ep2 = provider.exportService(new MyServiceImpl("my"), bc, props, myInterfaces);
+        primitiveProxy = (PrimitiveService)provider.importEndpoint(PrimitiveService.class.getClassLoader(),
+            bc, primitiveInterfaces, ep.description());
+        myServiceProxy = (MyService)provider.importEndpoint(MyService.class.getClassLoader(),
+            bc, myInterfaces, ep2.description());
+    }
+
+    @Test
+    public void testAdvertised() {
+        assertThat(ep.description().getProperties().get("aries.rsa.serializer"), equalTo("binary"));
+    }
+
+    @Test
+    public void testPrimitives() {
+        Assert.assertEquals((byte)1, primitiveProxy.callByte((byte) 1));
+        Assert.assertEquals((short)-1, primitiveProxy.callShort((short) -1));
+        Assert.assertEquals(Integer.MIN_VALUE, primitiveProxy.callInt(Integer.MIN_VALUE));
+        Assert.assertEquals(Long.MAX_VALUE, primitiveProxy.callLong(Long.MAX_VALUE));
+        Assert.assertEquals(1f, primitiveProxy.callFloat(1f), 0.001);
+        Assert.assertEquals(1d, primitiveProxy.callDouble(1d), 0.001);
+        Assert.assertTrue(primitiveProxy.callBoolean(true));
+        Assert.assertArrayEquals(new byte[]{1, 2}, primitiveProxy.callByteAr(new byte[]{1, 2}));
+    }
+
+    @Test
+    public void testVersions() {
+        Version version = parseVersion("1.2.3");
+        assertThat(primitiveProxy.callVersion(version), equalTo(version));
+        assertThat(primitiveProxy.callVersionAr(new Version[] {version}), equalTo(new Version[] {version}));
+        assertThat(primitiveProxy.callVersionList(Arrays.asList(version)), equalTo(Arrays.asList(version)));
+        Set<Version> set = new HashSet<>(Arrays.asList(version));
+        assertThat(primitiveProxy.callVersionSet(set), equalTo(set));
+        Map<Version, Version> map = new HashMap<>();
+        map.put(version, parseVersion("2.3.4"));
+        assertThat(primitiveProxy.callVersionMap(map), equalTo(map));
+    }
+
+    @Test
+    public void testDTO() {
+        DTOType dto = new DTOType();
+        dto.value = "Test";
+        assertThat(primitiveProxy.callDTO(dto), samePropertyValuesAs(dto));
+        DTOType[] result = primitiveProxy.callDTOAr(new DTOType[] {dto});
+        assertThat(result[0], samePropertyValuesAs(dto));
+    }
+
+    @Test
+    public void testCall() {
+        assertThat(myServiceProxy.echo("test"), equalTo("test"));
+        myServiceProxy.callWithList(Arrays.asList("a", "b"));
+    }
+
+    @Test(expected = ExpectedTestException.class)
+    public void testCallException() {
+        myServiceProxy.callException();
+    }
+
+    @AfterClass
+    public static void close() throws IOException {
+        ep.close();
+        ep2.close();
+        provider.deactivate();
+    }
+}
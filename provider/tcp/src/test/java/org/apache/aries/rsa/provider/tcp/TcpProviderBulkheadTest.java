@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.aries.rsa.provider.tcp.myservice.MyService;
+import org.apache.aries.rsa.provider.tcp.myservice.MyServiceImpl;
+import org.apache.aries.rsa.spi.Endpoint;
+import org.apache.aries.rsa.spi.ServiceOverloadedException;
+import org.apache.aries.rsa.util.EndpointHelper;
+import org.easymock.EasyMock;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+
+public class TcpProviderBulkheadTest {
+
+    private static final int DELAY = 500;
+    private static TcpProvider provider;
+    private static MyService sharedProxy;
+    private static MyService isolatedProxy;
+    private static Endpoint ep;
+    private static Endpoint ep2;
+
+    @BeforeClass
+    public static void createServerAndProxy() throws IOException {
+        Class<?>[] exportedInterfaces = new Class[] {MyService.class};
+        provider = new TcpProvider();
+        Map<String, Object> props = new HashMap<>();
+        EndpointHelper.addObjectClass(props, exportedInterfaces);
+        props.put("aries.rsa.hostname", "localhost");
+        props.put("aries.rsa.port", TcpProviderTest.getFreePort());
+        props.put("aries.rsa.numThreads", "1");
+        props.put("aries.rsa.connections", "1");
+        BundleContext bc = EasyMock.mock(BundleContext.class);
+        props.put("aries.rsa.id", "shared");
+        ep = provider.exportService(new MyServiceImpl("shared"), bc, props, exportedInterfaces);
+        props.put("aries.rsa.id", "isolated");
+        props.put("aries.rsa.bulkheadThreads", "1");
+        props.put("aries.rsa.bulkheadQueueSize", "0");
+        ep2 = provider.exportService(new MyServiceImpl("isolated"), bc, props, exportedInterfaces);
+        sharedProxy = (MyService)provider.importEndpoint(
+            MyService.class.getClassLoader(), bc, exportedInterfaces, ep.description());
+        isolatedProxy = (MyService)provider.importEndpoint(
+            MyService.class.getClassLoader(), bc, exportedInterfaces, ep2.description());
+    }
+
+    @Test
+    public void testBusySharedPoolDoesNotBlockBulkhead() throws Exception {
+        CompletableFuture<Void> slow = CompletableFuture.runAsync(() -> sharedProxy.callSlow(DELAY));
+        Thread.sleep(DELAY / 5); // let the slow call start
+        long start = System.currentTimeMillis();
+        assertEquals("isolated", isolatedProxy.getId());
+        long duration = System.currentTimeMillis() - start;
+        assertTrue("Call took " + duration + " ms", duration < DELAY / 2);
+        slow.get();
+    }
+
+    @Test
+    public void testFullBulkheadIsOverloaded() throws Exception {
+        CompletableFuture<Void> slow = CompletableFuture.runAsync(() -> isolatedProxy.callSlow(DELAY));
+        Thread.sleep(DELAY / 5);
+        try {
+            isolatedProxy.echo("rejected");
+            throw new AssertionError("Expecting overload");
+        } catch (ServiceOverloadedException e) {
+            // expected
+        }
+        assertEquals("shared", sharedProxy.echo("shared"));
+        slow.get();
+    }
+
+    @AfterClass
+    public static void close() throws IOException {
+        ep.close();
+        ep2.close();
+        provider.deactivate();
+    }
+}
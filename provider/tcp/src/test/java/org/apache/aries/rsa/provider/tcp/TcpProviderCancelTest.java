@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.aries.rsa.spi.Endpoint;
+import org.apache.aries.rsa.util.EndpointHelper;
+import org.easymock.EasyMock;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+
+public class TcpProviderCancelTest {
+
+    private static TcpProvider provider;
+    private static CancelServiceImpl service = new CancelServiceImpl();
+    private static CancelService proxy;
+    private static Endpoint ep;
+
+    public interface CancelService {
+        Future<String> block(int delay);
+
+        CompletableFuture<String> pending();
+    }
+
+    public static class CancelServiceImpl implements CancelService {
+        volatile CountDownLatch invoked = new CountDownLatch(1);
+        volatile CountDownLatch cancelled = new CountDownLatch(1);
+
+        @Override
+        public Future<String> block(int delay) {
+            invoked.countDown();
+            try {
+                Thread.sleep(delay);
+                return CompletableFuture.completedFuture("done");
+            } catch (InterruptedException e) {
+                cancelled.countDown();
+                return CompletableFuture.completedFuture("interrupted");
+            }
+        }
+
+        @Override
+        public CompletableFuture<String> pending() {
+            CompletableFuture<String> result = new CompletableFuture<>();
+            result.whenComplete((value, error) -> {
+                if (result.isCancelled()) {
+                    cancelled.countDown();
+                }
+            });
+            invoked.countDown();
+            return result;
+        }
+
+        void reset() {
+            invoked = new CountDownLatch(1);
+            cancelled = new CountDownLatch(1);
+        }
+    }
+
+    @BeforeClass
+    public static void createServerAndProxy() throws IOException {
+        Class<?>[] exportedInterfaces = new Class[] {CancelService.class};
+        provider = new TcpProvider();
+        Map<String, Object> props = new HashMap<>();
+        EndpointHelper.addObjectClass(props, exportedInterfaces);
+        props.put("aries.rsa.hostname", "localhost");
+        props.put("aries.rsa.port", TcpProviderTest.getFreePort());
+        props.put("aries.rsa.numThreads", "1");
+        props.put("aries.rsa.connections", "1");
+        props.put("aries.rsa.id", "cancel");
+        BundleContext bc = EasyMock.mock(BundleContext.class);
+        ep = provider.exportService(service, bc, props, exportedInterfaces);
+        proxy = (CancelService)provider.importEndpoint(
+            CancelService.class.getClassLoader(), bc, exportedInterfaces, ep.description());
+    }
+
+    @Test
+    public void testCancelInterruptsInvocation() throws Exception {
+        service.reset();
+        Future<String> result = proxy.block(10000);
+        assertTrue(service.invoked.await(1, TimeUnit.SECONDS));
+        result.cancel(true);
+        assertTrue(service.cancelled.await(1, TimeUnit.SECONDS));
+        assertWorkerIsReusable();
+    }
+
+    @Test
+    public void testCancelCancelsAsyncResult() throws Exception {
+        service.reset();
+        CompletableFuture<String> result = proxy.pending();
+        assertTrue(service.invoked.await(1, TimeUnit.SECONDS));
+        result.cancel(true);
+        assertTrue(service.cancelled.await(1, TimeUnit.SECONDS));
+        assertWorkerIsReusable();
+    }
+
+    private void assertWorkerIsReusable() throws Exception {
+        service.reset();
+        assertEquals("done", proxy.block(1).get(1, TimeUnit.SECONDS));
+    }
+
+    @AfterClass
+    public static void close() throws IOException {
+        ep.close();
+        provider.deactivate();
+    }
+}
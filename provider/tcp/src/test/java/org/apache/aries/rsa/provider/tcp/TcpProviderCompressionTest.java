@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.aries.rsa.provider.tcp.myservice.MyService;
+import org.apache.aries.rsa.provider.tcp.myservice.MyServiceImpl;
+import org.apache.aries.rsa.spi.Endpoint;
+import org.apache.aries.rsa.util.EndpointHelper;
+import org.apache.aries.rsa.util.StringPlus;
+import org.easymock.EasyMock;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.remoteserviceadmin.RemoteConstants;
+
+public class TcpProviderCompressionTest {
+
+    private static TcpProvider provider;
+    private static MyService javaProxy;
+    private static MyService binaryProxy;
+    private static Endpoint ep;
+    private static Endpoint ep2;
+
+    @BeforeClass
+    public static void createServerAndProxy() throws IOException {
+        Class<?>[] exportedInterfaces = new Class[] {MyService.class};
+        provider = new TcpProvider();
+        Map<String, Object> props = new HashMap<>();
+        EndpointHelper.addObjectClass(props, exportedInterfaces);
+        props.put("aries.rsa.hostname", "localhost");
+        props.put("aries.rsa.port", TcpProviderTest.getFreePort());
+        props.put("aries.rsa.connections", "1");
+        props.put("aries.rsa.compressionThreshold", "1024");
+        props.put(RemoteConstants.SERVICE_EXPORTED_INTENTS_EXTRA, "aries.compression");
+        BundleContext bc = EasyMock.mock(BundleContext.class);
+        props.put("aries.rsa.id", "java");
+        ep = provider.exportService(new MyServiceImpl("java"), bc, props, exportedInterfaces);
+        props.put("aries.rsa.id", "binary");
+        props.put("aries.rsa.serializer", "binary");
+        ep2 = provider.exportService(new MyServiceImpl("binary"), bc, props, exportedInterfaces);
+        javaProxy = (MyService)provider.importEndpoint(
+            MyService.class.getClassLoader(), bc, exportedInterfaces, ep.description());
+        binaryProxy = (MyService)provider.importEndpoint(
+            MyService.class.getClassLoader(), bc, exportedInterfaces, ep2.description());
+    }
+
+    @Test
+    public void testIntentIsAdvertised() {
+        Map<String, Object> props = ep.description().getProperties();
+        assertTrue(StringPlus.normalize(props.get(RemoteConstants.SERVICE_INTENTS)).contains("aries.compression"));
+        assertEquals(1024, props.get("aries.rsa.compressionThreshold"));
+    }
+
+    @Test
+    public void testSmallCall() {
+        assertEquals("java", javaProxy.getId());
+        assertEquals("binary", binaryProxy.getId());
+    }
+
+    @Test
+    public void testLargeCall() {
+        StringBuilder msg = new StringBuilder();
+        for (int c = 0; c < 100000; c++) {
+            msg.append("testing").append(c % 10);
+        }
+        assertEquals(msg.toString(), javaProxy.echo(msg.toString()));
+        assertEquals(msg.toString(), binaryProxy.echo(msg.toString()));
+    }
+
+    @AfterClass
+    public static void close() throws IOException {
+        ep.close();
+        ep2.close();
+        provider.deactivate();
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.aries.rsa.spi.Deadline;
+import org.apache.aries.rsa.spi.Endpoint;
+import org.apache.aries.rsa.util.EndpointHelper;
+import org.easymock.EasyMock;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceException;
+
+public class TcpProviderDeadlineTest {
+
+    private static final int TIMEOUT = 200;
+    private static TcpProvider provider;
+    private static DeadlineServiceImpl pooledService = new DeadlineServiceImpl();
+    private static DeadlineServiceImpl oneShotService = new DeadlineServiceImpl();
+    private static DeadlineService pooledProxy;
+    private static DeadlineService oneShotProxy;
+    private static Endpoint ep;
+    private static Endpoint ep2;
+
+    public interface DeadlineService {
+        long remainingMillis();
+
+        void slow(int delay);
+    }
+
+    public static class DeadlineServiceImpl implements DeadlineService {
+        final AtomicInteger invocations = new AtomicInteger();
+
+        @Override
+        public long remainingMillis() {
+            return Deadline.remainingMillis();
+        }
+
+        @Override
+        public void slow(int delay) {
+            invocations.incrementAndGet();
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @BeforeClass
+    public static void createServerAndProxy() throws IOException {
+        Class<?>[] exportedInterfaces = new Class[] {DeadlineService.class};
+        provider = new TcpProvider();
+        Map<String, Object> props = new HashMap<>();
+        EndpointHelper.addObjectClass(props, exportedInterfaces);
+        props.put("aries.rsa.hostname", "localhost");
+        props.put("aries.rsa.port", TcpProviderTest.getFreePort());
+        props.put("aries.rsa.maxConcurrentCalls", "1");
+        props.put("osgi.basic.timeout", TIMEOUT);
+        BundleContext bc = EasyMock.mock(BundleContext.class);
+        props.put("aries.rsa.id", "pooled");
+        props.put("aries.rsa.connections", "1");
+        ep = provider.exportService(pooledService, bc, props, exportedInterfaces);
+        props.put("aries.rsa.id", "oneShot");
+        props.remove("aries.rsa.connections");
+        ep2 = provider.exportService(oneShotService, bc, props, exportedInterfaces);
+        pooledProxy = (DeadlineService)provider.importEndpoint(
+            DeadlineService.class.getClassLoader(), bc, exportedInterfaces, ep.description());
+        oneShotProxy = (DeadlineService)provider.importEndpoint(
+            DeadlineService.class.getClassLoader(), bc, exportedInterfaces, ep2.description());
+    }
+
+    @Test
+    public void testPooledDeadlineIsVisible() {
+        assertDeadlineIsVisible(pooledProxy);
+    }
+
+    @Test
+    public void testOneShotDeadlineIsVisible() {
+        assertDeadlineIsVisible(oneShotProxy);
+    }
+
+    @Test
+    public void testPooledExpiredCallsAreDropped() throws Exception {
+        assertExpiredCallsAreDropped(pooledProxy, pooledService);
+    }
+
+    @Test
+    public void testOneShotExpiredCallsAreDropped() throws Exception {
+        assertExpiredCallsAreDropped(oneShotProxy, oneShotService);
+    }
+
+    @Test
+    public void testPooledCallerDeadlineIsPropagated() {
+        assertCallerDeadlineIsPropagated(pooledProxy);
+    }
+
+    @Test
+    public void testOneShotCallerDeadlineIsPropagated() {
+        assertCallerDeadlineIsPropagated(oneShotProxy);
+    }
+
+    @Test
+    public void testPooledExpiredCallerDeadlineTimesOutLocally() {
+        assertExpiredCallerDeadlineTimesOutLocally(pooledProxy, pooledService);
+    }
+
+    @Test
+    public void testOneShotExpiredCallerDeadlineTimesOutLocally() {
+        assertExpiredCallerDeadlineTimesOutLocally(oneShotProxy, oneShotService);
+    }
+
+    private void assertCallerDeadlineIsPropagated(DeadlineService proxy) {
+        Deadline.set(System.nanoTime() + TIMEOUT / 4 * 1000000L);
+        try {
+            long remaining = proxy.remainingMillis();
+            assertTrue("Remaining " + remaining, remaining > 0 && remaining <= TIMEOUT / 4);
+        } finally {
+            Deadline.clear();
+        }
+    }
+
+    private void assertExpiredCallerDeadlineTimesOutLocally(DeadlineService proxy, DeadlineServiceImpl service) {
+        service.invocations.set(0);
+        Deadline.set(System.nanoTime() - 1);
+        try {
+            proxy.slow(0);
+            throw new AssertionError("Expecting timeout");
+        } catch (ServiceException e) {
+            assertTrue(e.getCause() instanceof SocketTimeoutException);
+        } finally {
+            Deadline.clear();
+        }
+        assertEquals(0, service.invocations.get());
+    }
+
+    private void assertDeadlineIsVisible(DeadlineService proxy) {
+        long remaining = proxy.remainingMillis();
+        assertTrue("Remaining " + remaining, remaining > 0 && remaining <= TIMEOUT);
+    }
+
+    private void assertExpiredCallsAreDropped(DeadlineService proxy, DeadlineServiceImpl service) throws Exception {
+        service.invocations.set(0);
+        CompletableFuture<Void> slow = CompletableFuture.runAsync(() -> callTimingOut(proxy, 3 * TIMEOUT));
+        Thread.sleep(TIMEOUT / 4); // let the slow call start
+        CompletableFuture<Void> queued = CompletableFuture.runAsync(() -> callTimingOut(proxy, 0));
+        slow.get();
+        queued.get();
+        Thread.sleep(3 * TIMEOUT); // let the slow call finish and the queued one expire on the server
+        assertEquals(1, service.invocations.get());
+    }
+
+    private static void callTimingOut(DeadlineService proxy, int delay) {
+        try {
+            proxy.slow(delay);
+            throw new AssertionError("Expecting timeout");
+        } catch (ServiceException e) {
+            assertEquals(ServiceException.REMOTE, e.getType());
+        }
+    }
+
+    @AfterClass
+    public static void close() throws IOException {
+        ep.close();
+        ep2.close();
+        provider.deactivate();
+    }
+}
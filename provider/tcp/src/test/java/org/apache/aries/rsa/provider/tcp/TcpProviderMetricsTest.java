@@ -0,0 +1,269 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.apache.aries.rsa.provider.tcp.metrics.EndpointStats;
+import org.apache.aries.rsa.provider.tcp.metrics.MethodStats;
+import org.apache.aries.rsa.provider.tcp.metrics.TcpMetricsMXBean;
+import org.apache.aries.rsa.provider.tcp.myservice.ExpectedTestException;
+import org.apache.aries.rsa.provider.tcp.myservice.MyService;
+import org.apache.aries.rsa.provider.tcp.myservice.MyServiceImpl;
+import org.apache.aries.rsa.spi.Endpoint;
+import org.apache.aries.rsa.util.EndpointHelper;
+import org.easymock.EasyMock;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceException;
+import org.osgi.framework.ServiceRegistration;
+import org.osgi.service.remoteserviceadmin.EndpointDescription;
+
+public class TcpProviderMetricsTest {
+
+    private static TcpProvider provider;
+    private static MyService proxy;
+    private static Endpoint ep;
+
+    @BeforeClass
+    public static void createServerAndProxy() throws Exception {
+        Class<?>[] exportedInterfaces = new Class[] {MyService.class};
+        provider = new TcpProvider();
+        Map<String, Object> props = new HashMap<>();
+        EndpointHelper.addObjectClass(props, exportedInterfaces);
+        props.put("aries.rsa.hostname", "localhost");
+        props.put("aries.rsa.port", TcpProviderTest.getFreePort());
+        props.put("aries.rsa.connections", "1");
+        props.put("aries.rsa.id", "metrics");
+        BundleContext bc = EasyMock.mock(BundleContext.class);
+        ep = provider.exportService(new MyServiceImpl("metrics"), bc, props, exportedInterfaces);
+        proxy = (MyService)provider.importEndpoint(MyService.class.getClassLoader(), bc, exportedInterfaces,
+            ep.description());
+        proxy.echo("a");
+        proxy.echo("b");
+        try {
+            proxy.callException();
+            fail("Expecting exception");
+        } catch (ExpectedTestException e) {
+            // expected
+        }
+        proxy.callAsyncFuture(10).get();
+    }
+
+    @Test
+    public void testExportedEndpoints() throws Exception {
+        EndpointStats endpoint = single(provider.getMetrics().getExportedEndpoints());
+        assertEquals(ep.description().getId(), endpoint.getEndpointId());
+        assertCalls(endpoint);
+        assertEquals(0, endpoint.getRejectedCalls());
+    }
+
+    @Test
+    public void testImportedEndpoints() throws Exception {
+        EndpointStats endpoint = single(provider.getMetrics().getImportedEndpoints());
+        assertEquals(ep.description().getId(), endpoint.getEndpointId());
+        assertCalls(endpoint);
+        MethodStats async = method(endpoint, "callAsyncFuture", int.class);
+        assertTrue(async.getMaxLatency() >= 10000);
+    }
+
+    @Test
+    public void testConnections() {
+        TcpMetricsMXBean metrics = provider.getMetrics();
+        assertEquals(1, metrics.getClientConnections());
+        assertEquals(1, metrics.getServerConnections());
+        assertEquals(0, metrics.getQueuedInvocations());
+    }
+
+    @Test
+    public void testMXBean() throws Exception {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        ObjectName name = new ObjectName(TcpMetricsMXBean.OBJECT_NAME);
+        server.registerMBean(provider.getMetrics(), name);
+        CompositeData[] endpoints = (CompositeData[])server.getAttribute(name, "ExportedEndpoints");
+        assertEquals(1, endpoints.length);
+        CompositeData[] methods = (CompositeData[])endpoints[0].get("methods");
+        assertEquals(3, methods.length);
+        assertEquals(1, server.getAttribute(name, "ClientConnections"));
+    }
+
+    @Test
+    public void testActivateRegistersMXBean() throws Exception {
+        TcpProvider other = new TcpProvider();
+        BundleContext bc = EasyMock.niceMock(BundleContext.class);
+        @SuppressWarnings("unchecked")
+        ServiceRegistration<TcpMetricsMXBean> registration = EasyMock.mock(ServiceRegistration.class);
+        EasyMock.expect(bc.registerService(EasyMock.eq(TcpMetricsMXBean.class), EasyMock.same(other.getMetrics()),
+            EasyMock.isNull())).andReturn(registration);
+        registration.unregister();
+        EasyMock.replay(bc, registration);
+        other.activate(bc);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(TcpMetricsMXBean.OBJECT_NAME);
+        try {
+            assertTrue(server.isRegistered(name));
+        } finally {
+            other.deactivate();
+        }
+        assertFalse(server.isRegistered(name));
+        EasyMock.verify(bc, registration);
+    }
+
+    @Test
+    public void testReleasedImportIsDropped() {
+        TcpProvider other = new TcpProvider();
+        try {
+            BundleContext bc = EasyMock.mock(BundleContext.class);
+            Map<String, Object> props = new HashMap<>(ep.description().getProperties());
+            props.put("aries.rsa.connections", "0"); // one-shot, so the server's connection count is unaffected
+            MyService service = (MyService)other.importEndpoint(MyService.class.getClassLoader(), bc,
+                new Class[] {MyService.class}, new EndpointDescription(props));
+            assertEquals("a", service.echo("a"));
+            assertEquals(1, other.getMetrics().getImportedEndpoints().size());
+            other.releaseProxy(service);
+            assertTrue(other.getMetrics().getImportedEndpoints().isEmpty());
+        } finally {
+            other.deactivate();
+        }
+    }
+
+    @Test
+    public void testUndecodableRequestIsRecorded() throws Exception {
+        TcpProvider other = new TcpProvider();
+        Class<?>[] exportedInterfaces = new Class[] {MyService.class};
+        Map<String, Object> props = new HashMap<>();
+        EndpointHelper.addObjectClass(props, exportedInterfaces);
+        props.put("aries.rsa.hostname", "localhost");
+        props.put("aries.rsa.port", TcpProviderTest.getFreePort());
+        props.put("aries.rsa.connections", "1");
+        props.put("aries.rsa.id", "undecodable");
+        BundleContext bc = EasyMock.mock(BundleContext.class);
+        Endpoint endpoint = other.exportService(new MyServiceImpl("undecodable"), bc, props, exportedInterfaces);
+        try {
+            MyService service = (MyService)other.importEndpoint(MyService.class.getClassLoader(), bc,
+                exportedInterfaces, endpoint.description());
+            try {
+                service.callWithList(new UndecodableList());
+                fail("Expecting exception");
+            } catch (ServiceException e) {
+                // expected
+            }
+            EndpointStats stats = single(other.getMetrics().getExportedEndpoints());
+            MethodStats method = method(stats, "callWithList", List.class);
+            assertEquals(1, method.getCalls());
+            assertEquals(1, method.getErrors());
+            assertTrue(method.getBytesIn() > 0);
+            assertEquals(0, stats.getActiveCalls());
+        } finally {
+            endpoint.close();
+            other.deactivate();
+        }
+    }
+
+    /**
+     * A list which the server fails to deserialize.
+     */
+    public static class UndecodableList extends ArrayList<String> {
+        private static final long serialVersionUID = 1L;
+
+        private void readObject(ObjectInputStream in) throws IOException {
+            throw new InvalidObjectException("undecodable");
+        }
+    }
+
+    @Test
+    public void testLatencyBuckets() {
+        assertEquals(0, CallMetrics.bucket(0));
+        assertEquals(1, CallMetrics.bucket(1));
+        assertEquals(2, CallMetrics.bucket(3));
+        assertEquals(11, CallMetrics.bucket(1500));
+        assertEquals(CallMetrics.BUCKETS - 1, CallMetrics.bucket(Long.MAX_VALUE));
+        CallMetrics metrics = new CallMetrics();
+        for (int i = 0; i < 99; i++) {
+            metrics.record("m", 100_000, false, 0, 0); // 100 µs
+        }
+        metrics.record("m", 50_000_000, true, 10, 20); // 50 ms
+        MethodStats stats = metrics.snapshot().get(0);
+        assertEquals(100, stats.getCalls());
+        assertEquals(1, stats.getErrors());
+        assertEquals(127, stats.getLatencyP50());
+        assertEquals(127, stats.getLatencyP90());
+        assertEquals(127, stats.getLatencyP99());
+        assertEquals(50000, stats.getMaxLatency());
+        assertEquals(10, stats.getBytesIn());
+        assertEquals(20, stats.getBytesOut());
+    }
+
+    private static void assertCalls(EndpointStats endpoint) throws Exception {
+        assertEquals(3, endpoint.getMethods().size());
+        MethodStats echo = method(endpoint, "echo", String.class);
+        assertEquals(2, echo.getCalls());
+        assertEquals(0, echo.getErrors());
+        assertTrue(echo.getBytesIn() > 0);
+        assertTrue(echo.getBytesOut() > 0);
+        assertTrue(echo.getMaxLatency() >= echo.getMeanLatency());
+        MethodStats exception = method(endpoint, "callException");
+        assertEquals(1, exception.getCalls());
+        assertEquals(1, exception.getErrors());
+        assertEquals(0, endpoint.getActiveCalls());
+        assertEquals(0, endpoint.getQueuedCalls());
+    }
+
+    private static MethodStats method(EndpointStats endpoint, String name, Class<?>... types) throws Exception {
+        String key = MethodInvoker.getMethodKey(MyService.class.getMethod(name, types));
+        for (MethodStats method : endpoint.getMethods()) {
+            if (method.getMethod().equals(key)) {
+                return method;
+            }
+        }
+        throw new AssertionError("No metrics of " + key + " in " + endpoint);
+    }
+
+    private static <T> T single(List<T> list) {
+        assertNotNull(list);
+        assertEquals(1, list.size());
+        return list.get(0);
+    }
+
+    @AfterClass
+    public static void close() throws IOException {
+        ep.close();
+        provider.deactivate();
+    }
+}
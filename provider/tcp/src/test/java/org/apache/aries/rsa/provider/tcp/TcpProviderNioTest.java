@@ -0,0 +1,205 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.aries.rsa.provider.tcp.myservice.ExpectedTestException;
+import org.apache.aries.rsa.provider.tcp.myservice.MyService;
+import org.apache.aries.rsa.provider.tcp.myservice.MyServiceImpl;
+import org.apache.aries.rsa.spi.Endpoint;
+import org.apache.aries.rsa.util.EndpointHelper;
+import org.easymock.EasyMock;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+import org.osgi.util.promise.Promise;
+
+public class TcpProviderNioTest {
+
+    private static final int NUM_CALLS = 100;
+    private static TcpProvider provider;
+    private static MyService pooledProxy;
+    private static MyService oneShotProxy;
+    private static Endpoint ep;
+    private static Endpoint ep2;
+
+    @BeforeClass
+    public static void createServerAndProxy() throws IOException {
+        Class<?>[] exportedInterfaces = new Class[] {MyService.class};
+        provider = new TcpProvider();
+        Map<String, Object> props = new HashMap<>();
+        EndpointHelper.addObjectClass(props, exportedInterfaces);
+        props.put("aries.rsa.hostname", "localhost");
+        props.put("aries.rsa.port", TcpProviderTest.getFreePort());
+        props.put("aries.rsa.numThreads", "2");
+        props.put("aries.rsa.ioThreads", "2");
+        props.put("aries.rsa.connections", "2");
+        BundleContext bc = EasyMock.mock(BundleContext.class);
+        props.put("aries.rsa.id", "pooled");
+        ep = provider.exportService(new MyServiceImpl("pooled"), bc, props, exportedInterfaces);
+        props.put("aries.rsa.id", "oneShot");
+        props.remove("aries.rsa.connections");
+        ep2 = provider.exportService(new MyServiceImpl("oneShot"), bc, props, exportedInterfaces);
+        pooledProxy = (MyService)provider.importEndpoint(
+            MyService.class.getClassLoader(), bc, exportedInterfaces, ep.description());
+        oneShotProxy = (MyService)provider.importEndpoint(
+            MyService.class.getClassLoader(), bc, exportedInterfaces, ep2.description());
+    }
+
+    @Test
+    public void testPooledCall() {
+        assertEquals("pooled", pooledProxy.getId());
+        assertEquals("test", pooledProxy.echo("test"));
+    }
+
+    @Test
+    public void testOneShotCall() {
+        assertEquals("oneShot", oneShotProxy.getId());
+        assertEquals("test", oneShotProxy.echo("test"));
+    }
+
+    @Test(expected=ExpectedTestException.class)
+    public void testCallException() {
+        pooledProxy.callException();
+    }
+
+    @Test
+    public void testLargePayload() {
+        StringBuilder msg = new StringBuilder();
+        for (int c = 0; c < 100000; c++) {
+            msg.append("testing123");
+        }
+        assertEquals(msg.toString(), pooledProxy.echo(msg.toString()));
+    }
+
+    @Test
+    public void testIdleConnectionsDoNotUseWorkers() throws Exception {
+        int port = (Integer)ep.description().getProperties().get("aries.rsa.port");
+        List<Socket> idle = new ArrayList<>();
+        try {
+            for (int c = 0; c < 10; c++) {
+                Socket socket = new Socket("localhost", port);
+                DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                out.writeInt(Frame.MAGIC);
+                out.flush();
+                idle.add(socket);
+            }
+            assertEquals("test", pooledProxy.echo("test"));
+            assertEquals("test", oneShotProxy.echo("test"));
+        } finally {
+            for (Socket socket : idle) {
+                socket.close();
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidFrameLengthClosesConnection() throws Exception {
+        int port = (Integer)ep.description().getProperties().get("aries.rsa.port");
+        for (int length : new int[] {-1, Integer.MAX_VALUE}) {
+            try (Socket socket = new Socket("localhost", port)) {
+                socket.setSoTimeout(5000);
+                DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                out.writeInt(Frame.MAGIC);
+                out.writeInt(length); // an incomplete header
+                out.flush();
+                assertEquals(-1, socket.getInputStream().read());
+            }
+        }
+        assertEquals("test", pooledProxy.echo("test"));
+    }
+
+    @Test
+    public void testConcurrentCalls() throws InterruptedException {
+        AtomicInteger errors = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(10);
+        for (int c = 0; c < NUM_CALLS; c++) {
+            final String msg = "msg" + c;
+            final MyService proxy = c % 2 == 0 ? pooledProxy : oneShotProxy;
+            executor.execute(() -> {
+                if (!msg.equals(proxy.echo(msg))) {
+                    errors.incrementAndGet();
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        assertEquals(0, errors.get());
+    }
+
+    @Test
+    public void testAsyncResultsDoNotBlockWorkers() throws Exception {
+        int delay = 200;
+        long start = System.currentTimeMillis();
+        List<Promise<String>> results = new ArrayList<>();
+        for (int c = 0; c < 10; c++) {
+            results.add(pooledProxy.callAsyncPromise(delay));
+        }
+        for (Promise<String> result : results) {
+            assertEquals("Finished", result.getValue());
+        }
+        long duration = System.currentTimeMillis() - start;
+        assertTrue("Calls took " + duration + " ms", duration < 5 * delay); // 2 blocked workers would take 5 rounds
+    }
+
+    @Test(expected = ExpectedTestException.class)
+    public void testAsyncPromiseException() throws Throwable {
+        Promise<String> result = pooledProxy.callAsyncPromise(-1);
+        try {
+            result.getValue();
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Test(expected = ExpectedTestException.class)
+    public void testAsyncCompletionStageException() throws Throwable {
+        CompletionStage<String> result = pooledProxy.callAsyncCompletionStage(-1);
+        try {
+            result.toCompletableFuture().get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    @AfterClass
+    public static void close() throws IOException {
+        ep.close();
+        ep2.close();
+        provider.deactivate();
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.aries.rsa.provider.tcp.myservice.ExpectedTestException;
+import org.apache.aries.rsa.provider.tcp.myservice.MyService;
+import org.apache.aries.rsa.provider.tcp.myservice.MyServiceImpl;
+import org.apache.aries.rsa.spi.Endpoint;
+import org.apache.aries.rsa.util.EndpointHelper;
+import org.easymock.EasyMock;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+import org.osgi.framework.ServiceException;
+import org.osgi.service.remoteserviceadmin.EndpointDescription;
+
+public class TcpProviderPooledTest {
+
+    private static final int TIMEOUT = 200;
+    private static final int NUM_CALLS = 100;
+    private static TcpProvider provider;
+    private static MyService myServiceProxy;
+    private static MyService myServiceProxy2;
+    private static MyService boundedProxy;
+    private static Endpoint ep;
+    private static Endpoint ep2;
+    private static Endpoint ep3;
+
+    @BeforeClass
+    public static void createServerAndProxy() throws IOException {
+        Class<?>[] exportedInterfaces = new Class[] {MyService.class};
+        provider = new TcpProvider();
+        Map<String, Object> props = new HashMap<>();
+        EndpointHelper.addObjectClass(props, exportedInterfaces);
+        props.put("aries.rsa.hostname", "localhost");
+        props.put("aries.rsa.port", TcpProviderTest.getFreePort());
+        props.put("aries.rsa.numThreads", "10");
+        props.put("aries.rsa.connections", "1");
+        props.put("osgi.basic.timeout", TIMEOUT);
+        BundleContext bc = EasyMock.mock(BundleContext.class);
+        props.put("aries.rsa.id", "service1");
+        ep = provider.exportService(new MyServiceImpl("service1"), bc, props, exportedInterfaces);
+        props.put("aries.rsa.id", "service2");
+        ep2 = provider.exportService(new MyServiceImpl("service2"), bc, props, exportedInterfaces);
+        props.put("aries.rsa.id", "bounded");
+        props.put("aries.rsa.asyncThreads", "1");
+        props.put("aries.rsa.asyncQueueSize", "1");
+        ep3 = provider.exportService(new MyServiceImpl("bounded"), bc, props, exportedInterfaces);
+        myServiceProxy = (MyService)provider.importEndpoint(
+            MyService.class.getClassLoader(), bc, exportedInterfaces, ep.description());
+        myServiceProxy2 = (MyService)provider.importEndpoint(
+            MyService.class.getClassLoader(), bc, exportedInterfaces, ep2.description());
+        boundedProxy = (MyService)provider.importEndpoint(
+            MyService.class.getClassLoader(), bc, exportedInterfaces, ep3.description());
+    }
+
+    @Test
+    public void testCall() {
+        assertEquals("test", myServiceProxy.echo("test"));
+    }
+
+    @Test
+    public void testCallSharedConnection() {
+        assertEquals("service1", myServiceProxy.getId());
+        assertEquals("service2", myServiceProxy2.getId());
+    }
+
+    @Test(expected=ExpectedTestException.class)
+    public void testCallException() {
+        myServiceProxy.callException();
+    }
+
+    @Test
+    public void testCallTimeoutKeepsConnection() {
+        try {
+            myServiceProxy.callSlow(TIMEOUT + 100);
+            Assert.fail("Expecting timeout");
+        } catch (ServiceException e) {
+            assertThat(e.getCause().getClass().getName(), equalTo(SocketTimeoutException.class.getName()));
+            assertThat(e.getType(), equalTo(ServiceException.REMOTE));
+        }
+        assertEquals("after timeout", myServiceProxy.echo("after timeout"));
+    }
+
+    @Test
+    public void testAsyncFuture() throws Exception {
+        Future<String> result = myServiceProxy.callAsyncFuture(100);
+        assertEquals("Finished", result.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test(expected = ExpectedTestException.class)
+    public void testAsyncFutureException() throws Throwable {
+        Future<String> result = myServiceProxy.callAsyncFuture(-1);
+        try {
+            result.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    @Test
+    public void testAsyncCallsAreBounded() throws Exception {
+        Future<String> first = boundedProxy.callAsyncFuture(100);
+        Future<String> second = boundedProxy.callAsyncFuture(100);
+        Future<String> rejected = boundedProxy.callAsyncFuture(100);
+        try {
+            rejected.get(1, TimeUnit.SECONDS);
+            Assert.fail("Expecting rejection");
+        } catch (ExecutionException e) {
+            ServiceException se = (ServiceException)e.getCause();
+            assertThat(se.getType(), equalTo(ServiceException.ASYNC_ERROR));
+        }
+        assertEquals("Finished", first.get(1, TimeUnit.SECONDS));
+        assertEquals("Finished", second.get(1, TimeUnit.SECONDS));
+        assertEquals("Finished", boundedProxy.callAsyncFuture(100).get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testReleasedImportAppliesNewSettings() throws Exception {
+        Map<String, Object> props = new HashMap<>(ep3.description().getProperties());
+        props.put("aries.rsa.asyncQueueSize", "2");
+        provider.releaseProxy(boundedProxy);
+        boundedProxy = importEndpoint(new EndpointDescription(props));
+        try {
+            Future<String> first = boundedProxy.callAsyncFuture(100);
+            Future<String> second = boundedProxy.callAsyncFuture(100);
+            Future<String> third = boundedProxy.callAsyncFuture(100);
+            assertEquals("Finished", first.get(1, TimeUnit.SECONDS));
+            assertEquals("Finished", second.get(1, TimeUnit.SECONDS));
+            assertEquals("Finished", third.get(1, TimeUnit.SECONDS));
+        } finally {
+            provider.releaseProxy(boundedProxy);
+            boundedProxy = importEndpoint(ep3.description());
+        }
+    }
+
+    private static MyService importEndpoint(EndpointDescription description) {
+        return (MyService)provider.importEndpoint(MyService.class.getClassLoader(), EasyMock.mock(BundleContext.class),
+            new Class[] {MyService.class}, description);
+    }
+
+    @Test
+    public void testConcurrentCallsOnOneConnection() throws InterruptedException {
+        AtomicInteger errors = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(10);
+        for (int c = 0; c < NUM_CALLS; c++) {
+            final String msg = "msg" + c;
+            executor.execute(() -> {
+                if (!msg.equals(myServiceProxy.echo(msg))) {
+                    errors.incrementAndGet();
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        assertEquals(0, errors.get());
+    }
+
+    @AfterClass
+    public static void close() throws IOException {
+        ep.close();
+        ep2.close();
+        ep3.close();
+        provider.deactivate();
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.apache.aries.rsa.spi.Endpoint;
+import org.apache.aries.rsa.util.EndpointHelper;
+import org.easymock.EasyMock;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+
+public class TcpProviderStreamTest {
+    private static final int SIZE = 10 * 1024 * 1024 + 123;
+
+    private static TcpProvider provider;
+    private static StreamService proxy;
+    private static Endpoint ep;
+
+    public interface StreamService {
+        long checksum(InputStream in) throws IOException;
+
+        Future<Long> checksumAsync(InputStream in);
+
+        int readSome(InputStream in, int count) throws IOException;
+
+        InputStream download(int size);
+
+        void upload(int size, OutputStream out) throws IOException;
+    }
+
+    public static class StreamServiceImpl implements StreamService {
+
+        @Override
+        public long checksum(InputStream in) throws IOException {
+            return TcpProviderStreamTest.checksum(in);
+        }
+
+        @Override
+        public Future<Long> checksumAsync(InputStream in) {
+            try {
+                return CompletableFuture.completedFuture(checksum(in));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public int readSome(InputStream in, int count) throws IOException {
+            return in.read(new byte[count]);
+        }
+
+        @Override
+        public InputStream download(int size) {
+            return new GeneratedInputStream(size);
+        }
+
+        @Override
+        public void upload(int size, OutputStream out) throws IOException {
+            byte[] buf = new byte[8000];
+            try (InputStream in = new GeneratedInputStream(size)) {
+                int n;
+                while ((n = in.read(buf)) >= 0) {
+                    out.write(buf, 0, n);
+                }
+            }
+        }
+    }
+
+    /**
+     * Generates data without holding it in memory.
+     */
+    static class GeneratedInputStream extends InputStream {
+        private final int size;
+        private int pos;
+        final CountDownLatch closed = new CountDownLatch(1);
+
+        GeneratedInputStream(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public int read() {
+            return pos < size ? (pos++ * 31) & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (pos == size) {
+                return -1;
+            }
+            int count = Math.min(len, size - pos);
+            for (int i = 0; i < count; i++) {
+                b[off + i] = (byte)read();
+            }
+            return count;
+        }
+
+        @Override
+        public void close() {
+            closed.countDown();
+        }
+    }
+
+    static long checksum(InputStream in) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buf = new byte[10000];
+        int n;
+        while ((n = in.read(buf)) >= 0) {
+            crc.update(buf, 0, n);
+        }
+        return crc.getValue();
+    }
+
+    @BeforeClass
+    public static void createServerAndProxy() throws IOException {
+        Class<?>[] exportedInterfaces = new Class[] {StreamService.class};
+        provider = new TcpProvider();
+        Map<String, Object> props = new HashMap<>();
+        EndpointHelper.addObjectClass(props, exportedInterfaces);
+        props.put("aries.rsa.hostname", "localhost");
+        props.put("aries.rsa.port", TcpProviderTest.getFreePort());
+        props.put("aries.rsa.connections", "1");
+        props.put("aries.rsa.id", "stream");
+        BundleContext bc = EasyMock.mock(BundleContext.class);
+        ep = provider.exportService(new StreamServiceImpl(), bc, props, exportedInterfaces);
+        proxy = (StreamService)provider.importEndpoint(
+            StreamService.class.getClassLoader(), bc, exportedInterfaces, ep.description());
+    }
+
+    @Test
+    public void testInputStreamArgument() throws Exception {
+        GeneratedInputStream in = new GeneratedInputStream(SIZE);
+        assertEquals(checksum(new GeneratedInputStream(SIZE)), proxy.checksum(in));
+        assertTrue(in.closed.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFileArgument() throws Exception {
+        File file = File.createTempFile("stream", ".bin");
+        try {
+            try (OutputStream out = new FileOutputStream(file)) {
+                GeneratedInputStream in = new GeneratedInputStream(SIZE);
+                byte[] buf = new byte[8192];
+                int n;
+                while ((n = in.read(buf)) >= 0) {
+                    out.write(buf, 0, n);
+                }
+            }
+            assertEquals(checksum(new GeneratedInputStream(SIZE)), proxy.checksum(new FileInputStream(file)));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testInputStreamArgumentAsync() throws Exception {
+        long expected = checksum(new GeneratedInputStream(SIZE));
+        assertEquals(expected, proxy.checksumAsync(new GeneratedInputStream(SIZE)).get(10, TimeUnit.SECONDS).longValue());
+    }
+
+    @Test
+    public void testArgumentNotReadToEnd() throws Exception {
+        GeneratedInputStream in = new GeneratedInputStream(SIZE);
+        assertTrue(proxy.readSome(in, 10) > 0);
+        assertTrue(in.closed.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testInputStreamResult() throws Exception {
+        try (InputStream in = proxy.download(SIZE)) {
+            assertEquals(checksum(new GeneratedInputStream(SIZE)), checksum(in));
+        }
+    }
+
+    @Test
+    public void testInputStreamResultClosedEarly() throws Exception {
+        try (InputStream in = proxy.download(SIZE)) {
+            assertTrue(in.read(new byte[100]) > 0);
+        }
+        // the server stops sending, so the connection is still usable
+        try (InputStream in = proxy.download(1000)) {
+            assertEquals(checksum(new GeneratedInputStream(1000)), checksum(in));
+        }
+    }
+
+    @Test
+    public void testOutputStreamArgument() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        proxy.upload(SIZE, out);
+        assertEquals(SIZE, out.size());
+        assertEquals(checksum(new GeneratedInputStream(SIZE)), checksum(new ByteArrayInputStream(out.toByteArray())));
+    }
+
+    @AfterClass
+    public static void close() throws IOException {
+        ep.close();
+        provider.deactivate();
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.aries.rsa.provider.tcp.myservice.MyService;
+import org.apache.aries.rsa.provider.tcp.myservice.MyServiceImpl;
+import org.apache.aries.rsa.spi.Endpoint;
+import org.apache.aries.rsa.util.EndpointHelper;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.remoteserviceadmin.EndpointDescription;
+
+public class TcpProviderUnixSocketTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Class<?>[] exportedInterfaces = new Class[] {MyService.class};
+    private BundleContext bc = EasyMock.mock(BundleContext.class);
+    private TcpProvider provider;
+    private File socket;
+    private Endpoint ep;
+
+    @Before
+    public void export() throws IOException {
+        Assume.assumeTrue(UnixSockets.isSupported());
+        provider = new TcpProvider();
+        socket = new File(folder.getRoot(), "rsa.sock");
+        Map<String, Object> props = new HashMap<>();
+        EndpointHelper.addObjectClass(props, exportedInterfaces);
+        props.put("aries.rsa.hostname", "localhost");
+        props.put("aries.rsa.port", TcpProviderTest.getFreePort());
+        props.put("aries.rsa.connections", "1");
+        props.put("aries.rsa.unixSocket", socket.getPath());
+        props.put("aries.rsa.id", "unix");
+        ep = provider.exportService(new MyServiceImpl("unix"), bc, props, exportedInterfaces);
+    }
+
+    @After
+    public void close() throws IOException {
+        if (provider != null) {
+            ep.close();
+            provider.deactivate();
+            assertFalse(socket.exists());
+        }
+    }
+
+    @Test
+    public void testSocketIsAdvertised() {
+        Map<String, Object> props = ep.description().getProperties();
+        assertEquals(socket.getPath(), props.get("aries.rsa.unixSocket"));
+        assertEquals(UnixSockets.getHostId(), props.get("aries.rsa.hostId"));
+        assertTrue(socket.exists());
+    }
+
+    @Test
+    public void testLocalImportUsesSocket() {
+        MyService proxy = importEndpoint(ep.description());
+        assertEquals("unix", proxy.getId());
+        assertTrue(hasClientThread(socket.getPath()));
+    }
+
+    @Test
+    public void testRemoteImportUsesPort() {
+        Map<String, Object> props = new HashMap<>(ep.description().getProperties());
+        props.put("aries.rsa.hostId", "some other host");
+        MyService proxy = importEndpoint(new EndpointDescription(props));
+        assertEquals("unix", proxy.getId());
+        assertFalse(hasClientThread(socket.getPath()));
+    }
+
+    @Test
+    public void testServicesOnSamePortShareSocket() throws IOException {
+        Map<String, Object> props = new HashMap<>();
+        EndpointHelper.addObjectClass(props, exportedInterfaces);
+        props.put("aries.rsa.hostname", "localhost");
+        props.put("aries.rsa.port", ep.description().getProperties().get("aries.rsa.port"));
+        props.put("aries.rsa.connections", "1");
+        props.put("aries.rsa.id", "shared");
+        Endpoint ep2 = provider.exportService(new MyServiceImpl("shared"), bc, props, exportedInterfaces);
+        try {
+            assertEquals(socket.getPath(), ep2.description().getProperties().get("aries.rsa.unixSocket"));
+            assertEquals("shared", importEndpoint(ep2.description()).getId());
+        } finally {
+            ep2.close();
+        }
+        assertTrue(socket.exists()); // still used by the first service
+    }
+
+    private MyService importEndpoint(EndpointDescription description) {
+        return (MyService)provider.importEndpoint(MyService.class.getClassLoader(), bc, exportedInterfaces, description);
+    }
+
+    private static boolean hasClientThread(String address) {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("aries-rsa-tcp-client-" + address)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
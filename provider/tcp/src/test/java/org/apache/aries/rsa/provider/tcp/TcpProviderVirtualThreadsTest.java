@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.aries.rsa.provider.tcp.myservice.MyService;
+import org.apache.aries.rsa.provider.tcp.myservice.MyServiceImpl;
+import org.apache.aries.rsa.spi.Endpoint;
+import org.apache.aries.rsa.util.EndpointHelper;
+import org.easymock.EasyMock;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+import org.osgi.util.promise.Promise;
+
+public class TcpProviderVirtualThreadsTest {
+
+    private static final int NUM_CALLS = 20;
+    private static final int DELAY = 200;
+    private static TcpProvider provider;
+    private static MyService myServiceProxy;
+    private static Endpoint ep;
+
+    @BeforeClass
+    public static void createServerAndProxy() throws IOException {
+        Class<?>[] exportedInterfaces = new Class[] {MyService.class};
+        provider = new TcpProvider();
+        Map<String, Object> props = new HashMap<>();
+        EndpointHelper.addObjectClass(props, exportedInterfaces);
+        props.put("aries.rsa.hostname", "localhost");
+        props.put("aries.rsa.numThreads", "1");
+        props.put("aries.rsa.virtualThreads", "true");
+        BundleContext bc = EasyMock.mock(BundleContext.class);
+        ep = provider.exportService(new MyServiceImpl("service1"), bc, props, exportedInterfaces);
+        myServiceProxy = (MyService)provider.importEndpoint(
+            MyService.class.getClassLoader(), bc, exportedInterfaces, ep.description());
+    }
+
+    @Test
+    public void testCall() {
+        assertEquals("test", myServiceProxy.echo("test"));
+    }
+
+    @Test
+    public void testConcurrentCallsNotLimitedByNumThreads() throws Exception {
+        long start = System.currentTimeMillis();
+        List<Future<String>> results = new ArrayList<>();
+        for (int c = 0; c < NUM_CALLS; c++) {
+            results.add(myServiceProxy.callAsyncCompletionStage(DELAY).toCompletableFuture());
+        }
+        for (Future<String> result : results) {
+            assertEquals("Finished", result.get(10, TimeUnit.SECONDS));
+        }
+        long duration = System.currentTimeMillis() - start;
+        assertTrue("Calls took " + duration + " ms", duration < NUM_CALLS * DELAY / 2);
+    }
+
+    @Test
+    public void testAsyncPromise() throws Exception {
+        Promise<String> result = myServiceProxy.callAsyncPromise(10);
+        assertEquals("Finished", result.timeout(1000).getValue());
+    }
+
+    @AfterClass
+    public static void close() throws IOException {
+        ep.close();
+        provider.deactivate();
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.apache.aries.rsa.provider.tcp.metrics.EndpointStats;
+import org.apache.aries.rsa.provider.tcp.myservice.MyService;
+import org.apache.aries.rsa.provider.tcp.myservice.MyServiceImpl;
+import org.apache.aries.rsa.spi.Endpoint;
+import org.apache.aries.rsa.util.EndpointHelper;
+import org.easymock.EasyMock;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.osgi.framework.BundleContext;
+import org.osgi.service.remoteserviceadmin.EndpointDescription;
+import org.osgi.service.remoteserviceadmin.RemoteConstants;
+
+public class TcpProviderWarmUpTest {
+
+    private static TcpProvider provider;
+    private static Endpoint ep;
+    private static BundleContext bc = EasyMock.mock(BundleContext.class);
+
+    @BeforeClass
+    public static void createServer() throws IOException {
+        Class<?>[] exportedInterfaces = new Class[] {MyService.class};
+        provider = new TcpProvider();
+        Map<String, Object> props = new HashMap<>();
+        EndpointHelper.addObjectClass(props, exportedInterfaces);
+        props.put("aries.rsa.hostname", "localhost");
+        props.put("aries.rsa.port", TcpProviderTest.getFreePort());
+        props.put("aries.rsa.connections", "2");
+        props.put("aries.rsa.warmUp", "true");
+        props.put("aries.rsa.id", "warmup");
+        ep = provider.exportService(new MyServiceImpl("warmup"), bc, props, exportedInterfaces);
+    }
+
+    @Test
+    public void testWarmUpConnectsBeforeFirstCall() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            server.setSoTimeout(5000);
+            Map<String, Object> props = new HashMap<>(ep.description().getProperties());
+            props.put(RemoteConstants.ENDPOINT_ID, "tcp://localhost:" + server.getLocalPort() + "/warmup");
+            props.remove("aries.rsa.protocolVersion"); // not a real server, so don't ping it
+            importEndpoint(new EndpointDescription(props));
+            List<Socket> accepted = new ArrayList<>();
+            try {
+                accepted.add(server.accept());
+                accepted.add(server.accept());
+            } finally {
+                for (Socket socket : accepted) {
+                    socket.close();
+                }
+            }
+            assertEquals(2, accepted.size());
+        }
+    }
+
+    @Test
+    public void testWarmUpCountsAsPendingAsyncCall() throws Exception {
+        try (ServerSocket server = new ServerSocket(0)) {
+            server.setSoTimeout(5000);
+            String endpointId = "tcp://localhost:" + server.getLocalPort() + "/pending";
+            Map<String, Object> props = new HashMap<>(ep.description().getProperties());
+            props.put(RemoteConstants.ENDPOINT_ID, endpointId);
+            props.put("aries.rsa.connections", "1");
+            importEndpoint(new EndpointDescription(props));
+            try (Socket socket = server.accept()) {
+                // the warm-up waits for the pong, which never comes
+                assertEquals(1, importedEndpoint(endpointId).getActiveCalls());
+            }
+            long end = System.currentTimeMillis() + 5000;
+            while (importedEndpoint(endpointId).getActiveCalls() > 0 && System.currentTimeMillis() < end) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, importedEndpoint(endpointId).getActiveCalls());
+        }
+    }
+
+    private static EndpointStats importedEndpoint(String endpointId) {
+        for (EndpointStats stats : provider.getMetrics().getImportedEndpoints()) {
+            if (stats.getEndpointId().equals(endpointId)) {
+                return stats;
+            }
+        }
+        throw new AssertionError("No metrics of " + endpointId);
+    }
+
+    @Test
+    public void testProxyWorksAfterWarmUp() {
+        MyService proxy = importEndpoint(ep.description());
+        assertEquals("test", proxy.echo("test"));
+    }
+
+    @Test
+    public void testPing() throws Exception {
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+        try (TcpConnection connection = new TcpConnection(
+                new Socket("localhost", (Integer)ep.description().getProperties().get("aries.rsa.port")), timer, timer)) {
+            Frame pong = connection.call(new Frame(Frame.PING, 0, new byte[0]), 5000, Batching.NONE);
+            assertEquals(Frame.PING, pong.getType());
+        } finally {
+            timer.shutdown();
+        }
+    }
+
+    private MyService importEndpoint(EndpointDescription description) {
+        return (MyService)provider.importEndpoint(MyService.class.getClassLoader(), bc,
+            new Class[] {MyService.class}, description);
+    }
+
+    @AfterClass
+    public static void close() throws IOException {
+        ep.close();
+        provider.deactivate();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp.ser;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.StreamCorruptedException;
+import java.lang.annotation.RetentionPolicy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+import org.osgi.framework.Version;
+
+public class BinarySerializerTest {
+
+    public static class SampleDTO {
+        public String name;
+        public int count;
+        public List<String> tags;
+        public SampleDTO child;
+    }
+
+    private final Serializer serializer = new BinarySerializer();
+
+    private byte[] encode(Serializer serializer, Object... values) throws IOException {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try (ObjectOutput out = serializer.newOutput(bout)) {
+            for (Object value : values) {
+                out.writeObject(value);
+            }
+        }
+        return bout.toByteArray();
+    }
+
+    private Object roundTrip(Object value) throws Exception {
+        try (ObjectInput in = serializer.newInput(new ByteArrayInputStream(encode(serializer, value)),
+                getClass().getClassLoader())) {
+            return in.readObject();
+        }
+    }
+
+    @Test
+    public void testScalars() throws Exception {
+        for (Object value : Arrays.asList(null, true, false, (byte)-3, (short)300, 'x', 0, -1, Integer.MAX_VALUE,
+                Integer.MIN_VALUE, Long.MIN_VALUE, 12345678901L, 1.5f, -2.5d, "", "héllo ☃",
+                RetentionPolicy.RUNTIME, new Version(1, 2, 3, "q"), new BigDecimal("1.23"))) {
+            assertEquals(value, roundTrip(value));
+        }
+    }
+
+    @Test
+    public void testArrays() throws Exception {
+        assertArrayEquals(new byte[] {1, -1}, (byte[])roundTrip(new byte[] {1, -1}));
+        assertArrayEquals(new int[] {1, -100000}, (int[])roundTrip(new int[] {1, -100000}));
+        assertArrayEquals(new long[] {Long.MAX_VALUE}, (long[])roundTrip(new long[] {Long.MAX_VALUE}));
+        assertArrayEquals(new double[] {0.5}, (double[])roundTrip(new double[] {0.5}), 0);
+        assertArrayEquals(new float[] {0.5f}, (float[])roundTrip(new float[] {0.5f}), 0);
+        assertArrayEquals(new boolean[] {true, false}, (boolean[])roundTrip(new boolean[] {true, false}));
+        assertArrayEquals(new short[] {7}, (short[])roundTrip(new short[] {7}));
+        assertArrayEquals(new char[] {'a'}, (char[])roundTrip(new char[] {'a'}));
+        assertArrayEquals(new String[] {"a", null}, (String[])roundTrip(new String[] {"a", null}));
+        assertArrayEquals(new int[][] {{1}, {2, 3}}, (int[][])roundTrip(new int[][] {{1}, {2, 3}}));
+        assertArrayEquals(new Object[] {"a", 1}, (Object[])roundTrip(new Object[] {"a", 1}));
+    }
+
+    @Test
+    public void testCollections() throws Exception {
+        Map<String, Object> map = new HashMap<>();
+        map.put("list", Arrays.asList(1, 2));
+        map.put("set", Collections.singleton("x"));
+        map.put("empty", Collections.emptyList());
+        assertEquals(map, roundTrip(map));
+        assertThat(roundTrip(new ArrayList<>(Arrays.asList("a"))), instanceOf(ArrayList.class));
+        // types which could not be decoded as another implementation keep their own
+        assertThat(roundTrip(new LinkedList<>(Arrays.asList("a"))), instanceOf(LinkedList.class));
+        assertThat(roundTrip(new TreeMap<>(map)), instanceOf(TreeMap.class));
+    }
+
+    @Test
+    public void testDTO() throws Exception {
+        SampleDTO dto = new SampleDTO();
+        dto.name = "parent";
+        dto.count = 2;
+        dto.tags = Arrays.asList("a", "b");
+        dto.child = new SampleDTO();
+        dto.child.name = "child";
+        SampleDTO result = (SampleDTO)roundTrip(dto);
+        assertEquals("parent", result.name);
+        assertEquals(2, result.count);
+        assertEquals(dto.tags, result.tags);
+        assertEquals("child", result.child.name);
+    }
+
+    @Test
+    public void testException() throws Exception {
+        Exception result = (Exception)roundTrip(new IllegalStateException("failed"));
+        assertThat(result, instanceOf(IllegalStateException.class));
+        assertEquals("failed", result.getMessage());
+    }
+
+    @Test
+    public void testSmallerThanJavaSerialization() throws Exception {
+        Object[] args = {"echo", 42, Arrays.asList("a", "b", "c"), new int[] {1, 2, 3}};
+        int binary = encode(serializer, "echo(java.lang.String)", args).length;
+        int java = encode(new JavaSerializer(), "echo(java.lang.String)", args).length;
+        assertThat(binary, lessThan(java / 2));
+    }
+
+    @Test(expected = StreamCorruptedException.class)
+    public void testCorruptLength() throws Exception {
+        byte[] bytes = {11, (byte)0xFF, (byte)0xFF, 0x7F}; // byte array with a huge length
+        try (ObjectInput in = serializer.newInput(new ByteArrayInputStream(bytes), null)) {
+            in.readObject();
+        }
+    }
+}
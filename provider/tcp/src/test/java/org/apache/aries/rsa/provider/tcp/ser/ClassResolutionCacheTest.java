@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp.ser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class ClassResolutionCacheTest {
+
+    private static class CountingLoader extends URLClassLoader {
+        final AtomicInteger loads = new AtomicInteger();
+
+        CountingLoader() {
+            super(new URL[0], ClassResolutionCacheTest.class.getClassLoader());
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            loads.incrementAndGet();
+            return super.loadClass(name, resolve);
+        }
+    }
+
+    @Test
+    public void testResolvesOnce() {
+        ClassResolutionCache cache = new ClassResolutionCache(10);
+        CountingLoader loader = new CountingLoader();
+        ClassLoader[] loaders = {loader};
+        assertSame(DTOMarker.class, cache.resolve(DTOMarker.class.getName(), loaders));
+        assertSame(DTOMarker.class, cache.resolve(DTOMarker.class.getName(), loaders.clone()));
+        assertEquals(1, loader.loads.get());
+    }
+
+    @Test
+    public void testNegativeCaching() {
+        ClassResolutionCache cache = new ClassResolutionCache(10);
+        CountingLoader loader = new CountingLoader();
+        ClassLoader[] loaders = {loader};
+        assertNull(cache.resolve("org.example.Missing", loaders));
+        assertNull(cache.resolve("org.example.Missing", loaders));
+        assertEquals(1, loader.loads.get());
+        cache.clear();
+        assertNull(cache.resolve("org.example.Missing", loaders));
+        assertEquals(2, loader.loads.get());
+    }
+
+    @Test
+    public void testKeyedByLoaders() {
+        ClassResolutionCache cache = new ClassResolutionCache(10);
+        CountingLoader loader1 = new CountingLoader();
+        CountingLoader loader2 = new CountingLoader();
+        cache.resolve(DTOMarker.class.getName(), new ClassLoader[] {loader1});
+        cache.resolve(DTOMarker.class.getName(), new ClassLoader[] {loader2});
+        assertEquals(1, loader1.loads.get());
+        assertEquals(1, loader2.loads.get());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testBounded() {
+        ClassResolutionCache cache = new ClassResolutionCache(2);
+        ClassLoader[] loaders = {getClass().getClassLoader()};
+        cache.resolve(String.class.getName(), loaders);
+        cache.resolve(Integer.class.getName(), loaders);
+        cache.resolve(Long.class.getName(), loaders);
+        assertEquals(2, cache.size());
+    }
+}
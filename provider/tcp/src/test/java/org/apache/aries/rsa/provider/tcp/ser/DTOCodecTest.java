@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.provider.tcp.ser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class DTOCodecTest {
+
+    public static class PrimitivesDTO {
+        public boolean flag;
+        public byte b;
+        public short s;
+        public char c;
+        public int i;
+        public long l;
+        public float f;
+        public double d;
+        public String text;
+    }
+
+    public static class SameFieldsDTO {
+        public String text;
+        public int i;
+    }
+
+    public static class OtherTypesDTO {
+        public String text;
+        public long i;
+    }
+
+    public static class NotADTO {
+        public String text;
+
+        public String getText() {
+            return text;
+        }
+    }
+
+    @Test
+    public void testPrimitiveFields() throws Exception {
+        PrimitivesDTO dto = new PrimitivesDTO();
+        dto.flag = true;
+        dto.b = -1;
+        dto.s = 1000;
+        dto.c = 'z';
+        dto.i = -42;
+        dto.l = Long.MIN_VALUE;
+        dto.f = 1.5f;
+        dto.d = Math.PI;
+        dto.text = "text";
+        PrimitivesDTO result = (PrimitivesDTO)roundTrip(dto, PrimitivesDTO.class.getClassLoader());
+        assertTrue(result.flag);
+        assertEquals(-1, result.b);
+        assertEquals(1000, result.s);
+        assertEquals('z', result.c);
+        assertEquals(-42, result.i);
+        assertEquals(Long.MIN_VALUE, result.l);
+        assertEquals(1.5f, result.f, 0);
+        assertEquals(Math.PI, result.d, 0);
+        assertEquals("text", result.text);
+    }
+
+    @Test
+    public void testSchemaHash() {
+        assertEquals(DTOCodec.forClass(SameFieldsDTO.class).getSchemaHash(),
+            DTOCodec.forClass(SameFieldsDTO.class).getSchemaHash());
+        assertNotEquals(DTOCodec.forClass(SameFieldsDTO.class).getSchemaHash(),
+            DTOCodec.forClass(OtherTypesDTO.class).getSchemaHash());
+    }
+
+    @Test(expected = InvalidClassException.class)
+    public void testSchemaMismatch() throws Exception {
+        // simulate a peer with a different version of the DTO class
+        SameFieldsDTO dto = new SameFieldsDTO();
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try (ObjectOutput out = new BinarySerializer().newOutput(bout)) {
+            out.writeObject(dto);
+        }
+        byte[] bytes = bout.toByteArray();
+        int hashOffset = bytes.length - 4 - 2; // followed by a null text and a zero int
+        bytes[hashOffset] ^= 1;
+        try (ObjectInput in = new BinarySerializer().newInput(new ByteArrayInputStream(bytes), null)) {
+            in.readObject();
+        }
+    }
+
+    @Test
+    public void testDTOTypes() {
+        assertTrue(DTOCodec.isDTOType(SameFieldsDTO.class));
+        assertFalse(DTOCodec.isDTOType(NotADTO.class));
+        assertNotNull(DTOCodec.forClass(SameFieldsDTO.class));
+        assertNull(DTOCodec.forClass(NotADTO.class));
+        assertNull(DTOCodec.forClass(String.class));
+    }
+
+    @Test
+    public void testMap() {
+        SameFieldsDTO dto = new SameFieldsDTO();
+        dto.text = "a";
+        dto.i = 1;
+        DTOCodec codec = DTOCodec.forClass(SameFieldsDTO.class);
+        Map<String, Object> map = codec.toMap(dto);
+        SameFieldsDTO result = (SameFieldsDTO)codec.fromMap(map);
+        assertEquals("a", result.text);
+        assertEquals(1, result.i);
+        assertNull(codec.fromMap(Collections.singletonMap("text", 1)));
+    }
+
+    @Test
+    public void testJavaSerialization() throws Exception {
+        SameFieldsDTO dto = new SameFieldsDTO();
+        dto.text = "java";
+        dto.i = 7;
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try (ObjectOutput out = new JavaSerializer().newOutput(bout)) {
+            out.writeObject(dto);
+        }
+        try (ObjectInput in = new JavaSerializer().newInput(new ByteArrayInputStream(bout.toByteArray()),
+                SameFieldsDTO.class.getClassLoader())) {
+            SameFieldsDTO result = (SameFieldsDTO)in.readObject();
+            assertEquals("java", result.text);
+            assertEquals(7, result.i);
+        }
+    }
+
+    private Object roundTrip(Object value, ClassLoader loader) throws Exception {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        try (ObjectOutput out = new BinarySerializer().newOutput(bout)) {
+            out.writeObject(value);
+        }
+        try (ObjectInput in = new BinarySerializer().newInput(new ByteArrayInputStream(bout.toByteArray()), loader)) {
+            return in.readObject();
+        }
+    }
+}
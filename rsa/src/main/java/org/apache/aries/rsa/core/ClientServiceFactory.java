@@ -84,6 +84,11 @@ public class ClientServiceFactory implements ServiceFactory {
     }
 
     public void ungetService(Bundle requestingBundle, ServiceRegistration sreg, Object serviceObject) {
+        try {
+            handler.releaseProxy(serviceObject);
+        } catch (Exception e) {
+            LOG.warn("Problem releasing the remote proxy for {}", endpoint.getInterfaces(), e);
+        }
         synchronized (this) {
             serviceCounter--;
             LOG.debug("Services still provided by this ServiceFactory: {}", serviceCounter);
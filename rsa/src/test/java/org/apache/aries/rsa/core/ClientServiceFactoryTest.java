@@ -63,6 +63,23 @@ public class ClientServiceFactoryTest {
         assertSame(myTestProxyObject, csf.getService(consumerBundle, sreg));
     }
 
+    @Test
+    @SuppressWarnings("rawtypes")
+    public void testUngetServiceReleasesProxy() {
+        final Object myTestProxyObject = new Object();
+        EndpointDescription endpoint = createTestEndpointDesc();
+        ImportRegistrationImpl iri = new ImportRegistrationImpl(endpoint, null, null);
+        DistributionProvider handler = EasyMock.createMock(DistributionProvider.class);
+        handler.releaseProxy(myTestProxyObject);
+        EasyMock.expectLastCall();
+        EasyMock.replay(handler);
+
+        ClientServiceFactory csf = new ClientServiceFactory(endpoint, handler, iri);
+        csf.ungetService(EasyMock.createMock(Bundle.class), EasyMock.createMock(ServiceRegistration.class),
+            myTestProxyObject);
+        EasyMock.verify(handler);
+    }
+
     /**
      * Creating dummy class as I was not able to really mock it
      * @param proxy
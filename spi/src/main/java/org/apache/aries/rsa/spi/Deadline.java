@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.spi;
+
+/**
+ * The deadline of the remote call being invoked by the current thread.
+ * <p>
+ * Distribution providers which know how long the caller is willing to wait
+ * set the deadline while invoking the exported service, so that the service
+ * can give up on work whose result would arrive too late anyway.
+ */
+public final class Deadline {
+    private static final ThreadLocal<Long> CURRENT = new ThreadLocal<>();
+
+    private Deadline() {
+        // Util Class
+    }
+
+    /**
+     * Returns whether the current call has a deadline.
+     */
+    public static boolean isSet() {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     * Returns the number of milliseconds left until the deadline of the current call,
+     * which is zero or negative once it has expired, or {@link Long#MAX_VALUE} if there is none.
+     */
+    public static long remainingMillis() {
+        Long deadline = CURRENT.get();
+        if (deadline == null) {
+            return Long.MAX_VALUE;
+        }
+        return (deadline - System.nanoTime()) / 1000000L;
+    }
+
+    /**
+     * Returns whether the deadline of the current call has expired.
+     */
+    public static boolean isExpired() {
+        Long deadline = CURRENT.get();
+        return deadline != null && deadline - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Sets the deadline of the call about to be invoked by the current thread.
+     * Distribution providers must {@link #clear()} it once the invocation returns.
+     *
+     * @param nanoTime the deadline in terms of {@link System#nanoTime()}
+     */
+    public static void set(long nanoTime) {
+        CURRENT.set(nanoTime);
+    }
+
+    /**
+     * Clears the deadline of the current thread.
+     */
+    public static void clear() {
+        CURRENT.remove();
+    }
+}
@@ -56,4 +56,14 @@ public interface DistributionProvider {
                           BundleContext consumerContext,
                           Class[] interfaces,
                           EndpointDescription endpoint);
+
+    /**
+     * Called by RemoteServiceAdmin once a proxy returned by
+     * {@link #importEndpoint(ClassLoader, BundleContext, Class[], EndpointDescription)}
+     * is no longer used, so that the provider can release the resources held for it.
+     *
+     * @param proxy the service proxy
+     */
+    default void releaseProxy(Object proxy) {
+    }
 }
@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.aries.rsa.spi;
+
+import org.osgi.framework.ServiceException;
+
+/**
+ * Thrown by the proxy of an imported service when the remote endpoint rejected
+ * a call because it has reached its limit of concurrent and queued calls.
+ * The call was not invoked, so it is safe to retry it later or on another endpoint.
+ * <p>
+ * As a subclass of ServiceException, its type is {@link ServiceException#SUBCLASSED}.
+ */
+public class ServiceOverloadedException extends ServiceException {
+
+    private static final long serialVersionUID = 1L;
+
+    public ServiceOverloadedException(String msg) {
+        super(msg, SUBCLASSED);
+    }
+
+    public ServiceOverloadedException(String msg, Throwable cause) {
+        super(msg, SUBCLASSED, cause);
+    }
+}
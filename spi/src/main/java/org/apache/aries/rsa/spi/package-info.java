@@ -18,5 +18,5 @@
  */
 
 @org.osgi.annotation.bundle.Export
-@org.osgi.annotation.versioning.Version("1.1.0")
+@org.osgi.annotation.versioning.Version("1.4.0")
 package org.apache.aries.rsa.spi;
\ No newline at end of file